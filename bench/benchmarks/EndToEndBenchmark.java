@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks ImageEditor.main from a P3 input file to a P3 output file
+ * @author Amelia Saldino
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g", "--add-modules=jdk.incubator.vector"})
+public class EndToEndBenchmark {
+    /** Size of the image */
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    /** Transformation flag */
+    @Param({"-I", "-H", "-G"})
+    public String flag;
+
+    /** Input file */
+    private Path infile;
+
+    /** Output file */
+    private Path outfile;
+
+    /**
+     * Writes the input file
+     * @throws Throwable if the file can not be written
+     */
+    @Setup(Level.Trial)
+    public void createFile() throws Throwable {
+        infile = SyntheticImages.writeP3(megapixels);
+        outfile = infile.resolveSibling("out-" + infile.getFileName());
+    }
+
+    /**
+     * Removes the output file so main never asks before overwriting it
+     * @throws IOException if the file can not be deleted
+     */
+    @Setup(Level.Invocation)
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(outfile);
+    }
+
+    /**
+     * Deletes the files
+     * @throws IOException if a file can not be deleted
+     */
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(infile);
+        Files.deleteIfExists(outfile);
+    }
+
+    /**
+     * Benchmarks main
+     * @throws Throwable if main fails
+     */
+    @Benchmark
+    public void main() throws Throwable {
+        Editor.MAIN.invokeExact(new String[] {flag, infile.toString(), outfile.toString()});
+    }
+}
@@ -0,0 +1,79 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks invert, highContrast and greyScale on random images
+ * Each invocation first restores the original samples, so highContrast
+ * always sees random data rather than its own 0 and 255 output
+ * @author Amelia Saldino
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g", "--add-modules=jdk.incubator.vector"})
+public class FilterBenchmark {
+    /** Size of the image */
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    /** Original samples */
+    private int[][] original;
+
+    /** Samples the filters run on */
+    private int[][] pixels;
+
+    /**
+     * Creates the image
+     */
+    @Setup(Level.Trial)
+    public void createImage() {
+        original = SyntheticImages.pixels(megapixels);
+        pixels = SyntheticImages.pixels(megapixels);
+    }
+
+    /**
+     * Restores the original samples
+     */
+    @Setup(Level.Invocation)
+    public void restore() {
+        SyntheticImages.copy(original, pixels);
+    }
+
+    /**
+     * Benchmarks invert
+     * @return the filtered pixels
+     * @throws Throwable if the filter fails
+     */
+    @Benchmark
+    public int[][] invert() throws Throwable {
+        Editor.INVERT.invokeExact(pixels);
+        return pixels;
+    }
+
+    /**
+     * Benchmarks highContrast
+     * @return the filtered pixels
+     * @throws Throwable if the filter fails
+     */
+    @Benchmark
+    public int[][] highContrast() throws Throwable {
+        Editor.HIGH_CONTRAST.invokeExact(pixels);
+        return pixels;
+    }
+
+    /**
+     * Benchmarks greyScale
+     * @return the filtered pixels
+     * @throws Throwable if the filter fails
+     */
+    @Benchmark
+    public int[][] greyScale() throws Throwable {
+        Editor.GREY_SCALE.invokeExact(pixels);
+        return pixels;
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks getPixelValues reading a random P3 file
+ * @author Amelia Saldino
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g", "--add-modules=jdk.incubator.vector"})
+public class ParseBenchmark {
+    /** Size of the image */
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    /** P3 file to parse */
+    private Path file;
+
+    /**
+     * Writes the P3 file
+     * @throws Throwable if the file can not be written
+     */
+    @Setup(Level.Trial)
+    public void createFile() throws Throwable {
+        file = SyntheticImages.writeP3(megapixels);
+    }
+
+    /**
+     * Deletes the P3 file
+     * @throws IOException if the file can not be deleted
+     */
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Benchmarks getPixelValues
+     * @return the parsed pixels
+     * @throws Throwable if the file can not be parsed
+     */
+    @Benchmark
+    public int[][] getPixelValues() throws Throwable {
+        try (Scanner in = new Scanner(new BufferedInputStream(
+                 new FileInputStream(file.toFile())))) {
+            return (int[][]) Editor.GET_PIXEL_VALUES.invokeExact(in);
+        }
+    }
+}
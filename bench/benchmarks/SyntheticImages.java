@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Random;
+
+/**
+ * SyntheticImages creates repeatable random images for the benchmarks
+ * @author Amelia Saldino
+ */
+final class SyntheticImages {
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Number of pixels in a megapixel */
+    private static final int MEGAPIXEL = 1_000_000;
+
+    /** Seed so every run sees the same samples */
+    private static final long SEED = 116L;
+
+    /**
+     * Prevents instantiation
+     */
+    private SyntheticImages() {
+    }
+
+    /**
+     * Returns the number of pixel columns of a square-ish image
+     * @param megapixels size of the image
+     * @return number of columns
+     */
+    static int cols(int megapixels) {
+        return (int) Math.sqrt((double) megapixels * MEGAPIXEL);
+    }
+
+    /**
+     * Returns the number of pixel rows of a square-ish image
+     * @param megapixels size of the image
+     * @return number of rows
+     */
+    static int rows(int megapixels) {
+        return (int) ((long) megapixels * MEGAPIXEL / cols(megapixels));
+    }
+
+    /**
+     * Creates a random image
+     * @param megapixels size of the image
+     * @return The 2D array of pixel values
+     */
+    static int[][] pixels(int megapixels) {
+        Random random = new Random(SEED);
+        int[][] pixels = new int[rows(megapixels)][cols(megapixels) * NUM_VAL_RGB];
+        for (int[] row : pixels) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = random.nextInt(256);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Copies an image into another of the same size
+     * @param from source pixels
+     * @param to destination pixels
+     */
+    static void copy(int[][] from, int[][] to) {
+        for (int i = 0; i < from.length; i++) {
+            System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+        }
+    }
+
+    /**
+     * Writes a random P3 image to a temporary file
+     * @param megapixels size of the image
+     * @return the file
+     * @throws Throwable if the file can not be written
+     */
+    static Path writeP3(int megapixels) throws Throwable {
+        Path file = Files.createTempFile("bench", ".ppm");
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(
+                 new FileWriter(file.toFile()), 1 << 20))) {
+            Editor.OUTPUT_PPM.invokeExact(out, pixels(megapixels));
+        }
+        return file;
+    }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks outputPPM formatting a random image, with the bytes discarded
+ * so only formatting is measured
+ * @author Amelia Saldino
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g", "--add-modules=jdk.incubator.vector"})
+public class WriteBenchmark {
+    /** Size of the image */
+    @Param({"1", "10", "100"})
+    public int megapixels;
+
+    /** Pixels to write */
+    private int[][] pixels;
+
+    /**
+     * Creates the image
+     */
+    @Setup(Level.Trial)
+    public void createImage() {
+        pixels = SyntheticImages.pixels(megapixels);
+    }
+
+    /**
+     * Benchmarks outputPPM
+     * @throws Throwable if the image can not be written
+     */
+    @Benchmark
+    public void outputPPM() throws Throwable {
+        PrintWriter out = new PrintWriter(OutputStream.nullOutputStream());
+        Editor.OUTPUT_PPM.invokeExact(out, pixels);
+        out.close();
+    }
+}
@@ -0,0 +1,211 @@
+import java.util.*;
+
+/**
+ * AdaptiveContrast applies a transformation chain in which every high
+ * contrast step picks its threshold from the image with Otsu's method
+ * instead of the fixed midpoint
+ * The histogram for each threshold is counted in the same pass that applies
+ * the steps before it, and the thresholds are applied in the pass after,
+ * so the image is read once and crossed once more per high contrast step
+ * @author Amelia Saldino
+ */
+public class AdaptiveContrast {
+    /** Mode that picks one threshold for all three channels */
+    public static final String GLOBAL = "global";
+
+    /** Mode that picks a separate threshold for each channel */
+    public static final String CHANNEL = "channel";
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Threshold used when the histogram has a single value */
+    private static final int DEFAULT_THRESHOLD = 128;
+
+    /** Maximum color value for PPM files. */
+    private static final int MAX_COLOR_VALUE = 255;
+
+    /** Constructor kept private, the class only has static methods */
+    private AdaptiveContrast() {
+    }
+
+    /**
+     * Transforms an image in place, every -H using Otsu thresholds
+     * @param image image to transform
+     * @param flags transformations in order, per-pixel or neighborhood flags
+     * @param luma 601 or 709 for weighted greyscale, null for an average
+     * @param mode GLOBAL or CHANNEL
+     * @param threads number of threads, 1 to work sequentially
+     * @param cutoff number of pixels below which work stays sequential
+     * @return the thresholds picked, one red, green, blue triple per -H
+     * @throws IllegalArgumentException if image, flags or mode is null or
+     * invalid, or threads or cutoff is not positive
+     */
+    public static List<int[]> apply(PixelBuffer image, List<String> flags, String luma,
+                                    String mode, int threads, int cutoff) {
+        if (image == null) {
+            throw new IllegalArgumentException("Null image");
+        }
+        if (flags == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        if (!GLOBAL.equals(mode) && !CHANNEL.equals(mode)) {
+            throw new IllegalArgumentException("Invalid mode");
+        }
+        List<int[]> picked = new ArrayList<>();
+        SampleFilter pending = null;
+        List<String> segment = new ArrayList<>();
+        for (String flag : flags) {
+            if (!flag.equals("-H")) {
+                segment.add(flag);
+                continue;
+            }
+            SampleFilter filter = prepare(image, pending, segment, luma, threads, cutoff);
+            long[] counts = Histogram.count(image, filter == null ? (data, from, to) -> { }
+                                            : filter, threads, cutoff);
+            int[] thresholds = thresholds(counts, CHANNEL.equals(mode));
+            picked.add(thresholds);
+            pending = thresholdFilter(thresholds);
+            segment.clear();
+        }
+        SampleFilter filter = prepare(image, pending, segment, luma, threads, cutoff);
+        if (filter != null) {
+            ParallelFilter.apply(image, filter, threads, cutoff);
+        }
+        return picked;
+    }
+
+    /**
+     * Picks thresholds from a histogram
+     * @param counts counts indexed by channel * 256 + value
+     * @param perChannel true for one threshold per channel, false for one
+     * threshold from all samples
+     * @return red, green and blue thresholds; samples below one become 0,
+     * the rest 255
+     * @throws IllegalArgumentException if counts is null or the wrong length
+     */
+    public static int[] thresholds(long[] counts, boolean perChannel) {
+        if (counts == null || counts.length != NUM_VAL_RGB * Histogram.LEVELS) {
+            throw new IllegalArgumentException("Invalid histogram");
+        }
+        int[] thresholds = new int[NUM_VAL_RGB];
+        if (perChannel) {
+            for (int c = 0; c < NUM_VAL_RGB; c++) {
+                thresholds[c] = otsu(Arrays.copyOfRange(counts, c * Histogram.LEVELS,
+                                                        (c + 1) * Histogram.LEVELS));
+            }
+        }
+        else {
+            long[] all = new long[Histogram.LEVELS];
+            for (int i = 0; i < counts.length; i++) {
+                all[i % Histogram.LEVELS] += counts[i];
+            }
+            Arrays.fill(thresholds, otsu(all));
+        }
+        return thresholds;
+    }
+
+    /**
+     * Finds the threshold that maximizes the variance between the samples
+     * below it and the rest, Otsu's method
+     * @param histogram count of each sample value
+     * @return the threshold, 1 to 255, or 128 if every sample has one value
+     */
+    static int otsu(long[] histogram) {
+        long total = 0;
+        double sum = 0;
+        for (int v = 0; v < histogram.length; v++) {
+            total += histogram[v];
+            sum += (double) v * histogram[v];
+        }
+        int best = DEFAULT_THRESHOLD;
+        double bestVariance = 0;
+        long below = 0;
+        double sumBelow = 0;
+        for (int t = 1; t < histogram.length; t++) {
+            below += histogram[t - 1];
+            sumBelow += (double) (t - 1) * histogram[t - 1];
+            long above = total - below;
+            if (below == 0 || above == 0) {
+                continue;
+            }
+            double difference = sumBelow / below - (sum - sumBelow) / above;
+            double variance = (double) below * above * difference * difference;
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Runs the steps of a segment up to its last neighborhood filter and
+     * returns the per-pixel steps left, to be fused into the next pass
+     * @param image image being transformed
+     * @param pending per-pixel filter still to apply before the segment, or null
+     * @param segment flags between two high contrast steps
+     * @param luma 601 or 709 for weighted greyscale, null for an average
+     * @param threads number of threads
+     * @param cutoff number of pixels below which work stays sequential
+     * @return the per-pixel steps left, null if there are none
+     */
+    private static SampleFilter prepare(PixelBuffer image, SampleFilter pending,
+                                        List<String> segment, String luma, int threads,
+                                        int cutoff) {
+        int last = -1;
+        for (int i = 0; i < segment.size(); i++) {
+            if (Convolution.isFlag(segment.get(i))) {
+                last = i;
+            }
+        }
+        if (last >= 0) {
+            if (pending != null) {
+                ParallelFilter.apply(image, pending, threads, cutoff);
+            }
+            FilterChain chain = FilterChain.compile(segment.subList(0, last + 1), luma);
+            chain.applyParallel(image, threads, cutoff);
+            pending = null;
+        }
+        Pipeline rest = Pipeline.compile(segment.subList(last + 1, segment.size()), luma);
+        return rest.isIdentity() ? pending : then(pending, rest);
+    }
+
+    /**
+     * Creates a filter that applies a threshold to each channel
+     * @param thresholds red, green and blue thresholds
+     * @return the filter
+     */
+    private static SampleFilter thresholdFilter(int[] thresholds) {
+        byte[][] tables = new byte[NUM_VAL_RGB][Histogram.LEVELS];
+        for (int c = 0; c < NUM_VAL_RGB; c++) {
+            Arrays.fill(tables[c], thresholds[c], Histogram.LEVELS, (byte) MAX_COLOR_VALUE);
+        }
+        byte[] red = tables[0];
+        byte[] green = tables[1];
+        byte[] blue = tables[2];
+        return (data, from, to) -> {
+            for (int i = from; i < to; i += NUM_VAL_RGB) {
+                data[i] = red[data[i] & MAX_COLOR_VALUE];
+                data[i + 1] = green[data[i + 1] & MAX_COLOR_VALUE];
+                data[i + 2] = blue[data[i + 2] & MAX_COLOR_VALUE];
+            }
+        };
+    }
+
+    /**
+     * Chains two filters over the same range
+     * @param first filter applied first, null for none
+     * @param second filter applied second
+     * @return the chained filter
+     */
+    private static SampleFilter then(SampleFilter first, SampleFilter second) {
+        if (first == null) {
+            return second;
+        }
+        return (data, from, to) -> {
+            first.apply(data, from, to);
+            second.apply(data, from, to);
+        };
+    }
+}
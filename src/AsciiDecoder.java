@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * AsciiDecoder decodes the samples of an ASCII P3 file on several threads
+ * The body is cut into chunks that start and end on whitespace, so no token
+ * is split. Chunks are mapped a window at a time, a few per thread, so the
+ * mapped bytes stay bounded however large the file is. Every chunk of a
+ * window counts its tokens, a running sum of the counts gives the index of
+ * each chunk's first sample, and then every chunk decodes its tokens
+ * straight into place
+ * @author Amelia Saldino
+ */
+public class AsciiDecoder {
+    /** Default number of bytes in one chunk */
+    public static final long DEFAULT_CHUNK = 1 << 22;
+
+    /** Largest number of bytes in one chunk, so a chunk can be mapped at once */
+    private static final long MAX_CHUNK = 1 << 26;
+
+    /** Number of chunks mapped at a time for each thread */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Number of bytes of a chunk copied out of the mapping at a time */
+    private static final int BLOCK_BYTES = 1 << 16;
+
+    /** Number of bytes read at a time while moving a cut to whitespace */
+    private static final int ALIGN_BUFFER = 64;
+
+    /** Largest integer token accepted, matching PpmReader */
+    private static final int MAX_TOKEN = 1 << 24;
+
+    /**
+     * Decodes the samples of a P3 body
+     * Tokens after the last sample needed are not checked, as when the
+     * samples are read one row at a time
+     * @param file channel of the input file
+     * @param start file offset of the first byte after the header
+     * @param data array to fill, one byte per sample
+     * @param maxColorValue largest valid sample
+     * @param threads number of threads, 1 to decode sequentially
+     * @param chunkBytes number of bytes in one chunk before it is moved to whitespace
+     * @return true if every sample was present and valid, false otherwise
+     * @throws IOException if the file can not be read or mapped
+     * @throws IllegalArgumentException if file or data is null, threads is
+     * not positive, or chunkBytes is not 1 to 64 MB
+     */
+    public static boolean decode(FileChannel file, long start, byte[] data, int maxColorValue,
+                                 int threads, long chunkBytes) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (data == null) {
+            throw new IllegalArgumentException("Null image");
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        if (chunkBytes <= 0 || chunkBytes > MAX_CHUNK) {
+            throw new IllegalArgumentException("Invalid chunk size");
+        }
+        long end = file.size();
+        int window = threads * CHUNKS_PER_THREAD;
+        long from = start;
+        long first = 0;
+        while (from < end && first < data.length) {
+            List<MappedByteBuffer> chunks = new ArrayList<>();
+            while (from < end && chunks.size() < window) {
+                long to = align(file, Math.min(end, from + chunkBytes), end);
+                chunks.add(file.map(FileChannel.MapMode.READ_ONLY, from, to - from));
+                from = to;
+            }
+
+            List<Callable<Integer>> counts = new ArrayList<>();
+            for (MappedByteBuffer chunk : chunks) {
+                counts.add(() -> count(chunk));
+            }
+            List<Integer> tokens = run(counts, threads);
+
+            List<Callable<Integer>> decodes = new ArrayList<>();
+            for (int k = 0; k < chunks.size() && first < data.length; k++) {
+                MappedByteBuffer chunk = chunks.get(k);
+                int index = (int) first;
+                decodes.add(() -> decode(chunk, data, index, maxColorValue) ? 1 : 0);
+                first += tokens.get(k);
+            }
+            if (run(decodes, threads).contains(0)) {
+                return false;
+            }
+        }
+        return first >= data.length;
+    }
+
+    /**
+     * Moves a cut forward to the next whitespace byte, so it does not split a token
+     * @param file channel of the input file
+     * @param cut file offset of the cut
+     * @param end size of the file
+     * @return offset of the first whitespace byte at or after cut, end if there is none
+     * @throws IOException if the file can not be read
+     */
+    private static long align(FileChannel file, long cut, long end) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(ALIGN_BUFFER);
+        while (cut < end) {
+            bytes.clear();
+            int read = file.read(bytes, cut);
+            if (read <= 0) {
+                return end;
+            }
+            for (int i = 0; i < read; i++) {
+                if (PpmReader.isWhitespace(bytes.get(i))) {
+                    return cut + i;
+                }
+            }
+            cut += read;
+        }
+        return end;
+    }
+
+    /**
+     * Counts the whitespace separated tokens of a chunk
+     * @param chunk bytes of the chunk
+     * @return number of tokens
+     */
+    private static int count(ByteBuffer chunk) {
+        byte[] block = new byte[Math.min(BLOCK_BYTES, chunk.limit())];
+        int tokens = 0;
+        boolean inToken = false;
+        for (int from = 0; from < chunk.limit(); from += block.length) {
+            int length = Math.min(block.length, chunk.limit() - from);
+            chunk.get(from, block, 0, length);
+            for (int i = 0; i < length; i++) {
+                boolean space = PpmReader.isWhitespace(block[i]);
+                if (!space && !inToken) {
+                    tokens++;
+                }
+                inToken = !space;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Decodes the tokens of a chunk into samples, stopping once the image is full
+     * @param chunk bytes of the chunk
+     * @param data array to fill
+     * @param index index in data of the chunk's first token
+     * @param maxColorValue largest valid sample
+     * @return true if every token decoded was a valid sample, false otherwise
+     */
+    private static boolean decode(ByteBuffer chunk, byte[] data, int index, int maxColorValue) {
+        byte[] block = new byte[Math.min(BLOCK_BYTES, chunk.limit())];
+        int value = 0;
+        boolean valid = true;
+        boolean inToken = false;
+        for (int from = 0; from < chunk.limit() && index < data.length; from += block.length) {
+            int length = Math.min(block.length, chunk.limit() - from);
+            chunk.get(from, block, 0, length);
+            for (int i = 0; i < length; i++) {
+                int b = block[i];
+                if (PpmReader.isWhitespace(b)) {
+                    if (inToken) {
+                        if (!valid || value > maxColorValue) {
+                            return false;
+                        }
+                        data[index++] = (byte) value;
+                        if (index == data.length) {
+                            return true;
+                        }
+                        inToken = false;
+                    }
+                    continue;
+                }
+                if (!inToken) {
+                    inToken = true;
+                    value = 0;
+                    valid = true;
+                }
+                int digit = b - '0';
+                if (digit < 0 || digit > 9 || value > MAX_TOKEN) {
+                    valid = false;
+                }
+                else {
+                    value = value * 10 + digit;
+                }
+            }
+        }
+        if (inToken && index < data.length) {
+            if (!valid || value > maxColorValue) {
+                return false;
+            }
+            data[index] = (byte) value;
+        }
+        return true;
+    }
+
+    /**
+     * Runs tasks, on a fork-join pool when there is more than one thread and task
+     * @param tasks tasks to run
+     * @param threads number of threads
+     * @return results in the order of the tasks
+     */
+    private static List<Integer> run(List<Callable<Integer>> tasks, int threads) {
+        List<Integer> results = new ArrayList<>();
+        if (threads == 1 || tasks.size() <= 1) {
+            for (Callable<Integer> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException("Decoding failed", e);
+                }
+            }
+            return results;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Integer> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while decoding", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Decoding failed", e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * BandFilter transforms a band of whole rows of an image in place
+ * Neighborhood filters read up to getHalo() rows of context above and
+ * below the rows they transform; a band always holds that context
+ * unless the band edge is the image edge
+ * @author Amelia Saldino
+ */
+public interface BandFilter {
+    /**
+     * Returns how many rows of context above and below each row are read
+     * @return number of context rows, 0 for per-pixel filters
+     */
+    int getHalo();
+
+    /**
+     * Transforms rows of a band
+     * @param band rows of the image, including context rows
+     * @param fromRow first row of the band to transform
+     * @param toRow row just past the last row of the band to transform
+     */
+    void apply(PixelBuffer band, int fromRow, int toRow);
+
+    /**
+     * Wraps a per-pixel filter, which needs no context rows
+     * @param filter per-pixel filter
+     * @return band filter for it
+     * @throws IllegalArgumentException if filter is null
+     */
+    static BandFilter pointwise(SampleFilter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        return new BandFilter() {
+            @Override
+            public int getHalo() {
+                return 0;
+            }
+
+            @Override
+            public void apply(PixelBuffer band, int fromRow, int toRow) {
+                filter.apply(band.getData(), band.getOffset(fromRow), band.getOffset(toRow));
+            }
+        };
+    }
+}
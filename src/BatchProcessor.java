@@ -0,0 +1,447 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * BatchProcessor transforms many files in one JVM on a bounded pool
+ * Inputs come from a directory, a file name glob, or a manifest file whose
+ * lines hold optional flags, an input file and an output file, or -S and
+ * an input file whose statistics are reported instead
+ * Errors are reported per file and never stop the rest of the batch
+ * @author Amelia Saldino
+ */
+public class BatchProcessor {
+    /** Usage message printed for invalid batch command lines */
+    public static final String USAGE =
+        "Usage: java -cp bin ImageEditor -batch {dir|glob|manifest} [-outdir dir]"
+        + " [-exists skip|overwrite|fail] [-jobs n]"
+        + " [{-I|-H|-G|-blur|-gauss|-sharpen|-edge}... settings]";
+
+    /** Policy that leaves existing output files alone */
+    public static final String SKIP = "skip";
+
+    /** Policy that replaces existing output files */
+    public static final String OVERWRITE = "overwrite";
+
+    /** Policy that reports existing output files as errors */
+    public static final String FAIL = "fail";
+
+    /** Message for a file that was transformed */
+    private static final String OK = "OK";
+
+    /** Characters that make a source a file name glob */
+    private static final String GLOB_CHARS = "*?[{";
+
+    /** Command line of each entry, flags followed by input and output file */
+    private final List<String[]> entries;
+
+    /** What to do when an output file exists */
+    private final String policy;
+
+    /** Largest number of files transformed at once */
+    private final int jobs;
+
+    /**
+     * Result of one batch entry
+     */
+    static class Result {
+        /** Entry description, input and output file */
+        private final String label;
+
+        /** OK, or the message reported for the entry */
+        private final String message;
+
+        /** Whether the entry was skipped because its output exists */
+        private final boolean skipped;
+
+        /** Plan of a dry run entry, null otherwise */
+        private final Plan plan;
+
+        /**
+         * Creates a result
+         * @param label entry description
+         * @param message OK or the message reported for the entry
+         * @param skipped whether the entry was skipped
+         */
+        Result(String label, String message, boolean skipped) {
+            this(label, message, skipped, null);
+        }
+
+        /**
+         * Creates a result
+         * @param label entry description
+         * @param message OK or the message reported for the entry
+         * @param skipped whether the entry was skipped
+         * @param plan plan of a dry run entry, null otherwise
+         */
+        Result(String label, String message, boolean skipped, Plan plan) {
+            this.label = label;
+            this.message = message;
+            this.skipped = skipped;
+            this.plan = plan;
+        }
+
+        /**
+         * Checks if the entry was transformed
+         * @return true if the entry succeeded
+         */
+        boolean isOk() {
+            return OK.equals(message);
+        }
+
+        /**
+         * Checks if the entry was skipped
+         * @return true if the output existed and was left alone
+         */
+        boolean isSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns the message reported for the entry
+         * @return OK or an error message
+         */
+        String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the plan a dry run entry would run with
+         * @return the plan, null if the entry was not a successful dry run
+         */
+        Plan getPlan() {
+            return plan;
+        }
+
+        /**
+         * Describes the result
+         * @return label and message
+         */
+        @Override
+        public String toString() {
+            return label + ": " + message;
+        }
+    }
+
+    /**
+     * Creates a batch
+     * @param entries command line of each entry
+     * @param policy skip, overwrite or fail
+     * @param jobs largest number of files transformed at once, which share
+     * the processors and the memory budget
+     * @throws IllegalArgumentException if entries is null, the policy
+     * is unknown or jobs is not positive
+     */
+    public BatchProcessor(List<String[]> entries, String policy, int jobs) {
+        if (entries == null) {
+            throw new IllegalArgumentException("Null entries");
+        }
+        if (!SKIP.equals(policy) && !OVERWRITE.equals(policy) && !FAIL.equals(policy)) {
+            throw new IllegalArgumentException("Invalid policy");
+        }
+        if (jobs <= 0) {
+            throw new IllegalArgumentException("Invalid job count");
+        }
+        this.entries = new ArrayList<>(entries);
+        this.policy = policy;
+        this.jobs = jobs;
+    }
+
+    /**
+     * Runs a batch from the command line and prints one line per file
+     * @param args Command line arguments, starting with -batch
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        String source = args[1];
+        String outdir = null;
+        String policy = FAIL;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        List<String> defaults = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            if ((arg.equals("-outdir") || arg.equals("-exists") || arg.equals("-jobs"))
+                && i + 1 < args.length) {
+                String value = args[++i];
+                if (arg.equals("-outdir")) {
+                    outdir = value;
+                }
+                else if (arg.equals("-exists")) {
+                    policy = value;
+                }
+                else {
+                    try {
+                        jobs = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        jobs = 0;
+                    }
+                }
+            }
+            else {
+                defaults.add(arg);
+            }
+        }
+
+        List<String[]> entries;
+        try {
+            entries = entries(source, outdir, defaults);
+        } catch (IOException e) {
+            System.out.println("Unable to access batch source: " + source);
+            return;
+        }
+        if (entries == null) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        BatchProcessor batch;
+        try {
+            batch = new BatchProcessor(entries, policy, jobs);
+        } catch (IllegalArgumentException e) {
+            System.out.println(USAGE);
+            return;
+        }
+        int failed = 0;
+        int skipped = 0;
+        List<Result> results = batch.run();
+        for (Result result : results) {
+            System.out.println(result);
+            if (result.isSkipped()) {
+                skipped++;
+            }
+            else if (!result.isOk()) {
+                failed++;
+            }
+        }
+        System.out.println(results.size() + " files, " + failed + " failed, "
+                           + skipped + " skipped");
+    }
+
+    /**
+     * Lists the entries of a batch source
+     * @param source directory, file name glob or manifest file
+     * @param outdir directory for outputs of a directory or glob, null for a manifest
+     * @param defaults flags and settings for entries that do not give their own
+     * @return command line of each entry, null if a directory or glob has no outdir
+     * @throws IOException if the source can not be read
+     */
+    static List<String[]> entries(String source, String outdir, List<String> defaults)
+        throws IOException {
+        Path path = Paths.get(source);
+        String name = path.getFileName() == null ? source : path.getFileName().toString();
+        boolean glob = false;
+        for (char c : GLOB_CHARS.toCharArray()) {
+            glob = glob || name.indexOf(c) >= 0;
+        }
+
+        List<String[]> entries = new ArrayList<>();
+        if (!glob && !Files.isDirectory(path)) {
+            int number = 0;
+            for (String line : Files.readAllLines(path)) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split("\\s+");
+                if (tokens.length == 2 && !tokens[0].startsWith("-")) {
+                    List<String> args = new ArrayList<>(defaults);
+                    args.addAll(Arrays.asList(tokens));
+                    tokens = args.toArray(new String[0]);
+                }
+                entries.add(tokens);
+            }
+            return entries;
+        }
+
+        if (outdir == null) {
+            return null;
+        }
+        Path dir = glob ? path.getParent() : path;
+        if (dir == null) {
+            dir = Paths.get(".");
+        }
+        Files.createDirectories(Paths.get(outdir));
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = glob ? Files.newDirectoryStream(dir, name)
+                                                 : Files.newDirectoryStream(dir, "*.{ppm,ppm.gz}")) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            List<String> args = new ArrayList<>(defaults);
+            args.add(file.toString());
+            args.add(Paths.get(outdir, file.getFileName().toString()).toString());
+            entries.add(args.toArray(new String[0]));
+        }
+        return entries;
+    }
+
+    /**
+     * Transforms every entry, at most jobs at a time
+     * @return one result per entry, in entry order
+     */
+    public List<Result> run() {
+        ExecutorService executor = newExecutor(jobs);
+        Semaphore permits = new Semaphore(jobs);
+        List<Future<Result>> futures = new ArrayList<>();
+        try {
+            for (String[] entry : entries) {
+                permits.acquireUninterruptibly();
+                try {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            return runEntry(entry);
+                        }
+                        finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(await(futures.get(i), entries.get(i)));
+            }
+            return results;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Transforms one entry
+     * @param entry command line of the entry
+     * @return result of the entry
+     */
+    private Result runEntry(String[] entry) {
+        Options options = Options.parse(entry);
+        if (options == null) {
+            return new Result(String.join(" ", entry), "Invalid batch entry", false);
+        }
+        // Entries running at once share the processors and the heap
+        options.setJobs(Math.min(jobs, entries.size()));
+        if (options.isStatsOnly()) {
+            return runStats(options);
+        }
+        String label = options.getInfile() + " -> " + options.getOutfile();
+        if (isSameFile(options.getInfile(), options.getOutfile())) {
+            // Writing the output would truncate the input while it is still being read
+            return new Result(label, "Input and output are the same file", false);
+        }
+        if (Files.exists(Paths.get(options.getOutfile()))) {
+            if (SKIP.equals(policy)) {
+                return new Result(label, "Skipped, output file exists", true);
+            }
+            if (FAIL.equals(policy)) {
+                return new Result(label, "Output file exists", false);
+            }
+        }
+        try {
+            Stats stats = new Stats(false);
+            String message = ImageEditor.process(options, false, stats);
+            if (message == null && options.isDryRun()) {
+                // Nothing is written, so the entry reports the plan it would run with
+                label += " (" + stats.getPlan() + ")";
+                return new Result(label, OK, false, stats.getPlan());
+            }
+            return new Result(label, message == null ? OK : message, false);
+        } catch (RuntimeException e) {
+            return new Result(label, "Failed: " + e, false);
+        }
+    }
+
+    /**
+     * Computes the statistics of a -S entry, which has no output file to check
+     * @param options parsed entry
+     * @return result labelled with the input file and its statistics as JSON
+     */
+    private static Result runStats(Options options) {
+        String label = options.getInfile();
+        try {
+            Stats stats = new Stats(false);
+            String message = ImageEditor.process(options, false, stats);
+            if (message == null) {
+                label += " " + stats.getChannelStats().toJson();
+            }
+            return new Result(label, message == null ? OK : message, false);
+        } catch (RuntimeException e) {
+            return new Result(label, "Failed: " + e, false);
+        }
+    }
+
+    /**
+     * Checks if two file names refer to the same file, such as an -outdir
+     * that is the source directory
+     * @param infile name of the input file
+     * @param outfile name of the output file
+     * @return true if both names resolve to one file
+     */
+    static boolean isSameFile(String infile, String outfile) {
+        Path in = Paths.get(infile);
+        Path out = Paths.get(outfile);
+        try {
+            if (Files.exists(in) && Files.exists(out)) {
+                return Files.isSameFile(in, out);
+            }
+        } catch (IOException e) {
+            // Fall back to comparing the names
+        }
+        return in.toAbsolutePath().normalize().equals(out.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Waits for the result of an entry
+     * @param future pending result
+     * @param entry command line of the entry
+     * @return result of the entry
+     */
+    private static Result await(Future<Result> future, String[] entry) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    return new Result(String.join(" ", entry), "Failed: " + e.getCause(), false);
+                }
+            }
+        }
+        finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates the executor for entries, one virtual thread per entry when
+     * the JVM has them, since most of the time goes to file I/O, and a
+     * fixed pool of platform threads otherwise
+     * @param jobs largest number of files transformed at once
+     * @return the executor
+     */
+    private static ExecutorService newExecutor(int jobs) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newFixedThreadPool(jobs);
+        }
+    }
+}
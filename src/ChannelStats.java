@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * ChannelStats holds the minimum, maximum, mean, standard deviation and
+ * histogram of each channel of an image
+ * The image is read in blocks of rows through two buffers, so memory stays
+ * the same however large the image is. Each block is counted by a
+ * Histogram on a fork-join pool while the next block is read, and all the
+ * figures come from the summed counts
+ * @author Amelia Saldino
+ */
+public class ChannelStats {
+    /** Target size of one block of rows, in bytes */
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Names of the channels, in sample order */
+    private static final String[] CHANNELS = {"red", "green", "blue"};
+
+    /** Number of pixel columns */
+    private final int width;
+
+    /** Number of pixel rows */
+    private final int height;
+
+    /** Counts indexed by channel * 256 + value */
+    private final long[] counts;
+
+    /**
+     * Creates statistics from sample counts
+     * @param width number of pixel columns
+     * @param height number of pixel rows
+     * @param counts counts indexed by channel * 256 + value
+     */
+    ChannelStats(int width, int height, long[] counts) {
+        this.width = width;
+        this.height = height;
+        this.counts = counts;
+    }
+
+    /**
+     * Reads the samples of an image and counts them
+     * @param in reader for the input file, its header already read
+     * @param threads number of threads counting blocks, 1 to count on this thread
+     * @param cutoff number of pixels below which a block is counted sequentially
+     * @param stats receives the read and count measurements, counting as the filter stage
+     * @return the statistics, null if a row is invalid
+     * @throws IOException if the input file can not be read
+     * @throws IllegalArgumentException if in or stats is null, threads or
+     * cutoff is not positive, or the max color value is not 255
+     */
+    public static ChannelStats read(PpmReader in, int threads, int cutoff, Stats stats)
+        throws IOException {
+        return read(in, threads, cutoff, BLOCK_BYTES, stats);
+    }
+
+    /**
+     * Reads the samples of an image and counts them in blocks of a given size
+     * @param in reader for the input file, its header already read
+     * @param threads number of threads counting blocks, 1 to count on this thread
+     * @param cutoff number of pixels below which a block is counted sequentially
+     * @param blockBytes target size of one block, at least one row
+     * @param stats receives the read and count measurements
+     * @return the statistics, null if a row is invalid
+     * @throws IOException if the input file can not be read
+     * @throws IllegalArgumentException if in or stats is null, threads or
+     * cutoff is not positive, or the max color value is not 255
+     */
+    static ChannelStats read(PpmReader in, int threads, int cutoff, int blockBytes, Stats stats)
+        throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        if (threads <= 0 || cutoff <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        if (in.isWide()) {
+            throw new IllegalArgumentException("Invalid max color value");
+        }
+        int cols = in.getCols();
+        int rows = in.getRows();
+        int blockRows = Math.max(1, Math.min(rows, blockBytes / in.getRowLength()));
+        PixelBuffer[] blocks = {new PixelBuffer(cols, blockRows),
+                                new PixelBuffer(cols, blockRows)};
+        long[] counts = new long[NUM_VAL_RGB * Histogram.LEVELS];
+        ForkJoinPool pool = threads == 1 ? null : new ForkJoinPool(threads);
+        try {
+            ForkJoinTask<long[]> pending = null;
+            for (int first = 0; first < rows; first += blockRows) {
+                // The block counted last is in the other buffer, so this one is free
+                PixelBuffer block = blocks[first / blockRows % 2];
+                int blockEnd = Math.min(blockRows, rows - first);
+                long read = in.getBytesRead();
+                stats.begin();
+                boolean valid = true;
+                for (int i = 0; i < blockEnd && valid; i++) {
+                    valid = in.readRow(block.getData(), block.getOffset(i));
+                }
+                stats.end(Stats.READ, in.getBytesRead() - read,
+                          valid ? (long) cols * blockEnd : 0);
+                if (!valid) {
+                    return null;
+                }
+                stats.begin();
+                if (pending != null) {
+                    add(counts, pending.join());
+                }
+                Histogram task = Histogram.rows(block, blockEnd, cutoff);
+                if (pool == null) {
+                    add(counts, task.compute());
+                    pending = null;
+                }
+                else {
+                    pending = pool.submit(task);
+                }
+                stats.end(Stats.FILTER, (long) block.getRowLength() * blockEnd,
+                          (long) cols * blockEnd);
+            }
+            if (pending != null) {
+                stats.begin();
+                add(counts, pending.join());
+                stats.end(Stats.FILTER, 0, 0);
+            }
+        }
+        finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return new ChannelStats(cols, rows, counts);
+    }
+
+    /**
+     * Adds one block's counts to the running counts
+     * @param counts running counts
+     * @param block counts of one block
+     */
+    private static void add(long[] counts, long[] block) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += block[i];
+        }
+    }
+
+    /**
+     * Returns the histogram of a channel
+     * @param channel 0 for red, 1 for green and 2 for blue
+     * @return number of samples of each value, 256 entries
+     */
+    public long[] getHistogram(int channel) {
+        return Arrays.copyOfRange(counts, channel * Histogram.LEVELS,
+                                  (channel + 1) * Histogram.LEVELS);
+    }
+
+    /**
+     * Returns the smallest sample of a channel
+     * @param channel 0 for red, 1 for green and 2 for blue
+     * @return the minimum
+     */
+    public int getMin(int channel) {
+        int value = 0;
+        while (value < Histogram.LEVELS - 1 && counts[channel * Histogram.LEVELS + value] == 0) {
+            value++;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the largest sample of a channel
+     * @param channel 0 for red, 1 for green and 2 for blue
+     * @return the maximum
+     */
+    public int getMax(int channel) {
+        int value = Histogram.LEVELS - 1;
+        while (value > 0 && counts[channel * Histogram.LEVELS + value] == 0) {
+            value--;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the mean sample of a channel
+     * @param channel 0 for red, 1 for green and 2 for blue
+     * @return the mean
+     */
+    public double getMean(int channel) {
+        double sum = 0;
+        for (int value = 0; value < Histogram.LEVELS; value++) {
+            sum += (double) value * counts[channel * Histogram.LEVELS + value];
+        }
+        return sum / ((long) width * height);
+    }
+
+    /**
+     * Returns the standard deviation of a channel's samples over the whole image
+     * @param channel 0 for red, 1 for green and 2 for blue
+     * @return the population standard deviation
+     */
+    public double getStdDev(int channel) {
+        double mean = getMean(channel);
+        double sum = 0;
+        for (int value = 0; value < Histogram.LEVELS; value++) {
+            sum += (value - mean) * (value - mean) * counts[channel * Histogram.LEVELS + value];
+        }
+        return Math.sqrt(sum / ((long) width * height));
+    }
+
+    /**
+     * Formats the statistics as one line of JSON
+     * @return object with the width, height and one object per channel
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"width\":").append(width).append(",\"height\":").append(height);
+        for (int c = 0; c < NUM_VAL_RGB; c++) {
+            json.append(",\"").append(CHANNELS[c]).append("\":{\"min\":").append(getMin(c))
+                .append(",\"max\":").append(getMax(c))
+                .append(String.format(Locale.ROOT, ",\"mean\":%.4f,\"stddev\":%.4f",
+                                      getMean(c), getStdDev(c)))
+                .append(",\"histogram\":[");
+            for (int value = 0; value < Histogram.LEVELS; value++) {
+                if (value > 0) {
+                    json.append(',');
+                }
+                json.append(counts[c * Histogram.LEVELS + value]);
+            }
+            json.append("]}");
+        }
+        return json.append('}').toString();
+    }
+}
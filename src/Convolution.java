@@ -0,0 +1,441 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Convolution applies a neighborhood filter built from separable kernels
+ * Each input row is filtered horizontally once into a ring of 2 * halo + 1
+ * rows, and each output row is combined vertically from the ring, so every
+ * sample is read from memory once while the ring stays in cache. Rows are
+ * written in place once no later row reads them. Pixels past the image
+ * edges repeat the edge pixels
+ * @author Amelia Saldino
+ */
+public class Convolution implements BandFilter {
+    /** Flag of the 3x3 box blur */
+    public static final String BLUR = "-blur";
+
+    /** Flag of the 5x5 Gaussian blur */
+    public static final String GAUSS = "-gauss";
+
+    /** Flag of the sharpen filter, twice the pixel less its 3x3 box blur */
+    public static final String SHARPEN = "-sharpen";
+
+    /** Flag of the Sobel edge filter */
+    public static final String EDGE = "-edge";
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Maximum color value for PPM files. */
+    private static final int MAX_COLOR_VALUE = 255;
+
+    /** Bits of the fixed point reciprocal of the divisor */
+    private static final int SCALE_BITS = 16;
+
+    /** Half of one in the fixed point reciprocal, for rounding */
+    private static final int SCALE_HALF = 1 << (SCALE_BITS - 1);
+
+    /** Combines by dividing the first sum by the divisor */
+    private static final int AVERAGE = 0;
+
+    /** Combines as twice the second sum less the first sum over the divisor */
+    private static final int UNSHARP = 1;
+
+    /** Combines as the sum of the magnitudes of both sums */
+    private static final int MAGNITUDE = 2;
+
+    /** The 3x3 box blur */
+    private static final Convolution BOX_3 = new Convolution(BLUR, new int[] {1, 1, 1},
+        new int[] {1, 1, 1}, null, null, 9, AVERAGE);
+
+    /** The 5x5 Gaussian blur */
+    private static final Convolution GAUSS_5 = new Convolution(GAUSS,
+        new int[] {1, 4, 6, 4, 1}, new int[] {1, 4, 6, 4, 1}, null, null, 256, AVERAGE);
+
+    /** The sharpen filter */
+    private static final Convolution UNSHARP_3 = new Convolution(SHARPEN, new int[] {1, 1, 1},
+        new int[] {1, 1, 1}, new int[] {0, 1, 0}, new int[] {0, 1, 0}, 9, UNSHARP);
+
+    /** The Sobel edge filter, the first sum across and the second down */
+    private static final Convolution SOBEL = new Convolution(EDGE, new int[] {-1, 0, 1},
+        new int[] {1, 2, 1}, new int[] {1, 2, 1}, new int[] {-1, 0, 1}, 1, MAGNITUDE);
+
+    /** Flag of the filter */
+    private final String flag;
+
+    /** Number of rows and columns of context on each side */
+    private final int halo;
+
+    /** Horizontal weights of the first kernel */
+    private final int[] across;
+
+    /** Vertical weights of the first kernel */
+    private final int[] down;
+
+    /** Horizontal weights of the second kernel, null for none */
+    private final int[] secondAcross;
+
+    /** Vertical weights of the second kernel, null for none */
+    private final int[] secondDown;
+
+    /** Fixed point reciprocal of the divisor */
+    private final int scale;
+
+    /** Number the sums are divided by */
+    private final int divisor;
+
+    /** How the sums are combined into a sample, AVERAGE, UNSHARP or MAGNITUDE */
+    private final int combine;
+
+    /**
+     * Creates a filter
+     * @param flag flag of the filter
+     * @param across horizontal weights of the first kernel
+     * @param down vertical weights of the first kernel
+     * @param secondAcross horizontal weights of the second kernel, null for none
+     * @param secondDown vertical weights of the second kernel, null for none
+     * @param divisor number the sums are divided by
+     * @param combine how the sums are combined into a sample
+     */
+    private Convolution(String flag, int[] across, int[] down, int[] secondAcross,
+                        int[] secondDown, int divisor, int combine) {
+        this.flag = flag;
+        this.halo = across.length / 2;
+        this.across = across;
+        this.down = down;
+        this.secondAcross = secondAcross;
+        this.secondDown = secondDown;
+        this.divisor = divisor;
+        this.scale = ((1 << SCALE_BITS) + divisor / 2) / divisor;
+        this.combine = combine;
+    }
+
+    /**
+     * Checks if a flag names a neighborhood filter
+     * @param flag the flag
+     * @return true for -blur, -gauss, -sharpen and -edge
+     */
+    public static boolean isFlag(String flag) {
+        return BLUR.equals(flag) || GAUSS.equals(flag) || SHARPEN.equals(flag)
+            || EDGE.equals(flag);
+    }
+
+    /**
+     * Returns the filter for a flag
+     * @param flag -blur, -gauss, -sharpen or -edge
+     * @return the filter
+     * @throws IllegalArgumentException if flag is null or unknown
+     */
+    public static Convolution forFlag(String flag) {
+        if (flag == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        switch (flag) {
+            case BLUR:
+                return BOX_3;
+            case GAUSS:
+                return GAUSS_5;
+            case SHARPEN:
+                return UNSHARP_3;
+            case EDGE:
+                return SOBEL;
+            default:
+                throw new IllegalArgumentException("Invalid flag");
+        }
+    }
+
+    /**
+     * Returns how many rows of context above and below each row are read
+     * @return number of context rows
+     */
+    @Override
+    public int getHalo() {
+        return halo;
+    }
+
+    /**
+     * Filters rows of a band in place, repeating the band's edge rows
+     * @param band rows of the image, including context rows
+     * @param fromRow first row of the band to transform
+     * @param toRow row just past the last row of the band to transform
+     */
+    @Override
+    public void apply(PixelBuffer band, int fromRow, int toRow) {
+        filterBand(band, fromRow, toRow, null, null);
+    }
+
+    /**
+     * Filters a whole image in place in bands of rows on several threads
+     * The context rows at each band edge are copied before any band starts,
+     * so no band reads rows another band has already filtered
+     * @param image image to filter
+     * @param threads number of threads, 1 to filter sequentially
+     * @param cutoff number of pixels below which the image or a band
+     * of it is filtered sequentially
+     * @throws IllegalArgumentException if image is null, or threads or cutoff is not positive
+     */
+    public void applyParallel(PixelBuffer image, int threads, int cutoff) {
+        if (image == null) {
+            throw new IllegalArgumentException("Null image");
+        }
+        if (threads <= 0 || cutoff <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        int height = image.getHeight();
+        if (threads == 1 || (long) image.getWidth() * height <= cutoff) {
+            filterBand(image, 0, height, null, null);
+            return;
+        }
+        int bandRows = Math.max(1, cutoff / image.getWidth());
+        List<Callable<Void>> bands = new ArrayList<>();
+        for (int from = 0; from < height; from += bandRows) {
+            int first = from;
+            int last = Math.min(height, from + bandRows);
+            byte[] above = copyRows(image, Math.max(0, first - halo), first);
+            byte[] below = copyRows(image, last, Math.min(height, last + halo));
+            bands.add(() -> {
+                filterBand(image, first, last, above, below);
+                return null;
+            });
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Future<Void> band : pool.invokeAll(bands)) {
+                band.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while filtering", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Filtering failed", e.getCause());
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates the ring of rows for filtering rows of one width
+     * @param rowLength number of samples in one row
+     * @return an empty window
+     */
+    Window newWindow(int rowLength) {
+        return new Window(rowLength);
+    }
+
+    /**
+     * Returns the flag of the filter
+     * @return -blur, -gauss, -sharpen or -edge
+     */
+    @Override
+    public String toString() {
+        return flag;
+    }
+
+    /**
+     * Filters rows of an image in place
+     * @param image image holding the rows
+     * @param fromRow first row to filter
+     * @param toRow row just past the last row to filter
+     * @param above copy of the context rows above fromRow, null to read them
+     * from the image
+     * @param below copy of the context rows from toRow on, null to read them
+     * from the image
+     */
+    private void filterBand(PixelBuffer image, int fromRow, int toRow, byte[] above,
+                            byte[] below) {
+        if (fromRow >= toRow) {
+            return;
+        }
+        Window window = new Window(image.getRowLength());
+        for (int y = fromRow - halo; y < fromRow + halo; y++) {
+            push(window, image, y, fromRow, toRow, above, below);
+        }
+        for (int y = fromRow; y < toRow; y++) {
+            push(window, image, y + halo, fromRow, toRow, above, below);
+            window.emit(image.getData(), image.getOffset(y));
+        }
+    }
+
+    /**
+     * Adds one row to the window, repeating the edge rows past the image
+     * @param window the window
+     * @param image image holding the rows
+     * @param y row to add
+     * @param fromRow first row being filtered
+     * @param toRow row just past the last row being filtered
+     * @param above copy of the context rows above fromRow, or null
+     * @param below copy of the context rows from toRow on, or null
+     */
+    private void push(Window window, PixelBuffer image, int y, int fromRow, int toRow,
+                      byte[] above, byte[] below) {
+        int row = Math.max(0, Math.min(image.getHeight() - 1, y));
+        int length = image.getRowLength();
+        if (row < fromRow && above != null) {
+            window.push(above, above.length - (fromRow - row) * length);
+        }
+        else if (row >= toRow && below != null) {
+            window.push(below, (row - toRow) * length);
+        }
+        else {
+            window.push(image.getData(), image.getOffset(row));
+        }
+    }
+
+    /**
+     * Copies rows of an image
+     * @param image the image
+     * @param fromRow first row to copy
+     * @param toRow row just past the last row to copy
+     * @return the rows, packed
+     */
+    private static byte[] copyRows(PixelBuffer image, int fromRow, int toRow) {
+        int length = image.getRowLength();
+        byte[] rows = new byte[Math.max(0, toRow - fromRow) * length];
+        for (int row = fromRow; row < toRow; row++) {
+            System.arraycopy(image.getData(), image.getOffset(row), rows,
+                             (row - fromRow) * length, length);
+        }
+        return rows;
+    }
+
+    /**
+     * Filters a row horizontally, repeating the edge pixels
+     * @param data packed samples
+     * @param offset index of the first sample of the row
+     * @param weights horizontal weights
+     * @param length number of samples in the row
+     * @param sums receives the weighted sums
+     */
+    private void across(byte[] data, int offset, int[] weights, int length, int[] sums) {
+        Arrays.fill(sums, 0);
+        for (int k = 0; k < weights.length; k++) {
+            int weight = weights[k];
+            if (weight == 0) {
+                continue;
+            }
+            int shift = (k - halo) * NUM_VAL_RGB;
+            int low = Math.min(length, Math.max(0, -shift));
+            int high = Math.max(low, Math.min(length, length - shift));
+            for (int i = low; i < high; i++) {
+                sums[i] += weight * (data[offset + i + shift] & MAX_COLOR_VALUE);
+            }
+            for (int i = 0; i < low; i++) {
+                sums[i] += weight * (data[offset + i % NUM_VAL_RGB] & MAX_COLOR_VALUE);
+            }
+            int last = offset + length - NUM_VAL_RGB;
+            for (int i = high; i < length; i++) {
+                sums[i] += weight * (data[last + i % NUM_VAL_RGB] & MAX_COLOR_VALUE);
+            }
+        }
+    }
+
+    /**
+     * Window is the ring of horizontally filtered rows around the row being
+     * filtered
+     */
+    final class Window {
+        /** Horizontal sums of the first kernel, one ring entry per row */
+        private final int[][] ring;
+
+        /** Horizontal sums of the second kernel, null for none */
+        private final int[][] secondRing;
+
+        /** Vertical sums of the first kernel */
+        private final int[] sums;
+
+        /** Vertical sums of the second kernel, null for none */
+        private final int[] secondSums;
+
+        /** Ring entry of the newest row */
+        private int newest = -1;
+
+        /**
+         * Creates an empty window
+         * @param rowLength number of samples in one row
+         */
+        private Window(int rowLength) {
+            ring = new int[2 * halo + 1][rowLength];
+            sums = new int[rowLength];
+            secondRing = secondAcross == null ? null : new int[2 * halo + 1][rowLength];
+            secondSums = secondAcross == null ? null : new int[rowLength];
+        }
+
+        /**
+         * Adds the next row, dropping the oldest
+         * @param data packed samples
+         * @param offset index of the first sample of the row
+         */
+        void push(byte[] data, int offset) {
+            newest = (newest + 1) % ring.length;
+            across(data, offset, across, sums.length, ring[newest]);
+            if (secondRing != null) {
+                across(data, offset, secondAcross, sums.length, secondRing[newest]);
+            }
+        }
+
+        /**
+         * Adds the newest row again, for rows past the bottom edge
+         */
+        void repeat() {
+            int previous = newest;
+            newest = (newest + 1) % ring.length;
+            System.arraycopy(ring[previous], 0, ring[newest], 0, sums.length);
+            if (secondRing != null) {
+                System.arraycopy(secondRing[previous], 0, secondRing[newest], 0, sums.length);
+            }
+        }
+
+        /**
+         * Writes the filtered middle row of the window
+         * @param data packed samples receiving the row
+         * @param offset index of the first sample of the row
+         */
+        void emit(byte[] data, int offset) {
+            down(ring, down, sums);
+            if (secondRing != null) {
+                down(secondRing, secondDown, secondSums);
+            }
+            int length = sums.length;
+            if (combine == AVERAGE) {
+                for (int i = 0; i < length; i++) {
+                    data[offset + i] = (byte) ((sums[i] * scale + SCALE_HALF) >> SCALE_BITS);
+                }
+            }
+            else if (combine == UNSHARP) {
+                int twice = 2 * divisor;
+                for (int i = 0; i < length; i++) {
+                    int value = ((twice * secondSums[i] - sums[i]) * scale + SCALE_HALF)
+                        >> SCALE_BITS;
+                    data[offset + i] = (byte) Math.max(0, Math.min(MAX_COLOR_VALUE, value));
+                }
+            }
+            else {
+                for (int i = 0; i < length; i++) {
+                    int value = Math.abs(sums[i]) + Math.abs(secondSums[i]);
+                    data[offset + i] = (byte) Math.min(MAX_COLOR_VALUE, value);
+                }
+            }
+        }
+
+        /**
+         * Combines the ring vertically, oldest row first
+         * @param rows ring of horizontal sums
+         * @param weights vertical weights
+         * @param result receives the vertical sums
+         */
+        private void down(int[][] rows, int[] weights, int[] result) {
+            Arrays.fill(result, 0);
+            for (int k = 0; k < weights.length; k++) {
+                int weight = weights[k];
+                if (weight == 0) {
+                    continue;
+                }
+                int[] row = rows[(newest + 1 + k) % rows.length];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] += weight * row[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Downscaler shrinks an image by an integer factor as its rows are written,
+ * averaging each factor x factor block of pixels into one
+ * Blocks at the right and bottom edges average the pixels they have, so
+ * any image size works. A pyramid is built by attaching a half size
+ * Downscaler to the writer of another, so each level reads only the rows
+ * of the level above it
+ * @author Amelia Saldino
+ */
+public class Downscaler implements Closeable {
+    /** Largest factor, so the sums of a block fit in an int */
+    public static final int MAX_FACTOR = 1 << 10;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Writer of the smaller image */
+    private final PpmWriter out;
+
+    /** Number of pixel columns of the full size image */
+    private final int cols;
+
+    /** Number of pixel rows of the full size image */
+    private final int rows;
+
+    /** Number of full size pixels across and down in one block */
+    private final int factor;
+
+    /** Sums of the samples of each block in the current row of blocks */
+    private final int[] sums;
+
+    /** Averaged row of the smaller image */
+    private final byte[] row;
+
+    /** Number of full size rows added */
+    private int added;
+
+    /**
+     * Creates a downscaler writing to a writer
+     * @param out writer of the smaller image, its header already written
+     * for the size from scaledSize
+     * @param cols number of pixel columns of the full size image
+     * @param rows number of pixel rows of the full size image
+     * @param factor number of full size pixels across and down in one block
+     * @throws IllegalArgumentException if out is null or factor is not 2 to MAX_FACTOR
+     */
+    public Downscaler(PpmWriter out, int cols, int rows, int factor) {
+        if (out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (factor < 2 || factor > MAX_FACTOR) {
+            throw new IllegalArgumentException("Invalid factor");
+        }
+        this.out = out;
+        this.cols = cols;
+        this.rows = rows;
+        this.factor = factor;
+        this.sums = new int[scaledSize(cols, factor) * NUM_VAL_RGB];
+        this.row = new byte[sums.length];
+    }
+
+    /**
+     * Returns the size of a dimension after scaling
+     * @param size number of full size pixels
+     * @param factor number of full size pixels in one block
+     * @return number of blocks, rounded up
+     */
+    public static int scaledSize(int size, int factor) {
+        return (size + factor - 1) / factor;
+    }
+
+    /**
+     * Returns the file name of a scaled copy of an output file
+     * @param filename name of the full size output file
+     * @param factor scale factor
+     * @return the name with -factor before the extension, such as out-4.ppm
+     */
+    public static String scaledName(String filename, int factor) {
+        String suffix = "";
+        String base = filename;
+        if (base.endsWith(GzipBlockChannel.EXTENSION)) {
+            suffix = GzipBlockChannel.EXTENSION;
+            base = base.substring(0, base.length() - suffix.length());
+        }
+        int dot = base.lastIndexOf('.');
+        if (dot > base.lastIndexOf(File.separatorChar)) {
+            suffix = base.substring(dot) + suffix;
+            base = base.substring(0, dot);
+        }
+        return base + "-" + factor + suffix;
+    }
+
+    /**
+     * Opens scaled copies of an output file and attaches them to its writer
+     * A factor twice the one before it is taken from that smaller copy,
+     * which builds a pyramid in one pass
+     * @param writer writer of the full size output file
+     * @param filename name of the full size output file
+     * @param format output format
+     * @param cols number of pixel columns of the full size image
+     * @param rows number of pixel rows of the full size image
+     * @param factors scale factors in order
+     * @throws IOException if a scaled file can not be created
+     */
+    public static void attach(PpmWriter writer, String filename, String format, int cols,
+                              int rows, List<Integer> factors) throws IOException {
+        PpmWriter previous = null;
+        int previousFactor = 0;
+        for (int factor : factors) {
+            PpmWriter scaled = PpmWriter.open(scaledName(filename, factor), format,
+                                              scaledSize(cols, factor), scaledSize(rows, factor));
+            if (previous != null && factor == 2 * previousFactor) {
+                previous.addDownscaler(new Downscaler(scaled, scaledSize(cols, previousFactor),
+                                                      scaledSize(rows, previousFactor), 2));
+            }
+            else {
+                writer.addDownscaler(new Downscaler(scaled, cols, rows, factor));
+            }
+            previous = scaled;
+            previousFactor = factor;
+        }
+    }
+
+    /**
+     * Adds the next full size row, writing a row of blocks once it is complete
+     * @param data packed samples
+     * @param offset index in data of the first sample of the row
+     * @throws IOException if the smaller image can not be written
+     */
+    public void addRow(byte[] data, int offset) throws IOException {
+        int end = offset + cols * NUM_VAL_RGB;
+        int block = 0;
+        for (int start = offset; start < end; start += factor * NUM_VAL_RGB, block += NUM_VAL_RGB) {
+            int stop = Math.min(end, start + factor * NUM_VAL_RGB);
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int i = start; i < stop; i += NUM_VAL_RGB) {
+                red += data[i] & 0xFF;
+                green += data[i + 1] & 0xFF;
+                blue += data[i + 2] & 0xFF;
+            }
+            sums[block] += red;
+            sums[block + 1] += green;
+            sums[block + 2] += blue;
+        }
+        added++;
+        if (added % factor == 0 || added == rows) {
+            writeBlocks();
+        }
+    }
+
+    /**
+     * Writes the last partial row of blocks if any and closes the smaller image
+     * @throws IOException if the smaller image can not be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (added % factor != 0 && added != rows) {
+                writeBlocks();
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Averages the sums into a row of the smaller image and starts a new row of blocks
+     * @throws IOException if the smaller image can not be written
+     */
+    private void writeBlocks() throws IOException {
+        int down = (added - 1) % factor + 1;
+        for (int block = 0; block < sums.length; block += NUM_VAL_RGB) {
+            int across = Math.min(factor, cols - block / NUM_VAL_RGB * factor);
+            int pixels = across * down;
+            for (int c = 0; c < NUM_VAL_RGB; c++) {
+                row[block + c] = (byte) ((sums[block + c] + pixels / 2) / pixels);
+            }
+        }
+        Arrays.fill(sums, 0);
+        out.writeRow(row, 0);
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.*;
+import java.net.SocketAddress;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+/**
+ * EditorClient forwards an ImageEditor command line to a running EditorServer
+ * @author Amelia Saldino
+ */
+public class EditorClient {
+    /** Usage message printed for invalid client command lines */
+    public static final String USAGE =
+        "Usage: java -cp bin ImageEditor -client socket"
+        + " {-I|-H|-G|-blur|-gauss|-sharpen|-edge}... [settings] infile outfile";
+
+    /**
+     * Forwards a command line from the command line and prints the result
+     * @param args Command line arguments, starting with -client and the address
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        String[] command = new String[args.length - 2];
+        System.arraycopy(args, 2, command, 0, command.length);
+        Options options = Options.parse(command);
+        if (options == null) {
+            System.out.println(USAGE);
+            return;
+        }
+        if (!options.isDryRun() && !options.isStatsOnly()
+            && !ImageEditor.confirmOverwrite(options.getOutfile())) {
+            return;
+        }
+
+        String reply;
+        try {
+            reply = send(EditorServer.address(args[1]), command);
+        } catch (IllegalArgumentException e) {
+            System.out.println(USAGE);
+            return;
+        } catch (IOException e) {
+            System.out.println("Unable to reach server: " + args[1]);
+            return;
+        }
+        if (reply.startsWith(EditorServer.ERROR + " ")) {
+            System.out.println(reply.substring(EditorServer.ERROR.length() + 1));
+        }
+        else if (reply.equals(EditorServer.BUSY)) {
+            System.out.println("Server busy, try again later");
+        }
+        else {
+            System.out.println(reply);
+        }
+    }
+
+    /**
+     * Sends one command line to a server and waits for the reply
+     * Relative file names are resolved by the server against this
+     * process's working directory
+     * A busy server replies and hangs up without reading the request, so
+     * the reply is still read when sending the request fails
+     * @param address address the server listens on
+     * @param command ImageEditor command line
+     * @return the reply line, OK, ERROR or BUSY followed by details
+     * @throws IOException if the server can not be reached or hangs up
+     */
+    public static String send(SocketAddress address, String[] command) throws IOException {
+        try (SocketChannel channel = EditorServer.openChannel()) {
+            channel.connect(address);
+            IOException sendFailure = null;
+            try {
+                Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+                out.write(Paths.get("").toAbsolutePath().toString());
+                for (String arg : command) {
+                    out.write(EditorServer.SEPARATOR + arg);
+                }
+                out.write("\n");
+                out.flush();
+            } catch (IOException e) {
+                sendFailure = e;
+            }
+            String reply;
+            try {
+                BufferedReader in = new BufferedReader(Channels.newReader(channel,
+                                                       StandardCharsets.UTF_8));
+                reply = in.readLine();
+            } catch (IOException e) {
+                if (sendFailure == null) {
+                    throw e;
+                }
+                reply = null;
+            }
+            if (reply == null) {
+                throw sendFailure != null ? sendFailure : new EOFException("No reply");
+            }
+            return reply;
+        }
+    }
+}
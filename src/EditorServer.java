@@ -0,0 +1,401 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * EditorServer keeps one JVM running and transforms files for EditorClient
+ * requests, so each request runs on warm, JIT compiled code instead of
+ * paying for JVM startup
+ * It listens only on a Unix domain socket. A request names any file the
+ * server's user can read or write, so the socket file is made readable
+ * and writable by that user alone, and only the same user can connect;
+ * there is no TCP listener, which any local user could reach
+ * Each connection carries one request line: the
+ * client's working directory and its command line, separated by tabs. The
+ * reply is one line, "OK" with the time taken, the plan of a dry run or the
+ * JSON statistics of -S, "ERROR" with a message, or "BUSY" when every worker
+ * and queue slot is taken
+ * @author Amelia Saldino
+ */
+public class EditorServer implements Closeable {
+    /** Usage message printed for invalid server command lines */
+    public static final String USAGE =
+        "Usage: java -cp bin ImageEditor -server socket [-jobs n] [-queue n]";
+
+    /** Reply to a request that was transformed */
+    public static final String OK = "OK";
+
+    /** Reply to a request that failed */
+    public static final String ERROR = "ERROR";
+
+    /** Reply to a request turned away because the server is full */
+    public static final String BUSY = "BUSY";
+
+    /** Separator between the fields of a request */
+    static final String SEPARATOR = "\t";
+
+    /** Number of samples the filters are warmed up on */
+    private static final int WARM_UP_SAMPLES = 3 << 20;
+
+    /** Width and height of the image the neighborhood filters are warmed up on */
+    private static final int WARM_UP_WIDTH = 256;
+
+    /** Number of passes the filters are warmed up with */
+    private static final int WARM_UP_PASSES = 20;
+
+    /** Nanoseconds in a millisecond */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Permissions of the socket file, so only the server's user can connect */
+    private static final String SOCKET_PERMISSIONS = "rw-------";
+
+    /** Permissions of the directory the socket is bound in before it is moved into place */
+    private static final String DIRECTORY_PERMISSIONS = "rwx------";
+
+    /** File type bits of a Unix file mode */
+    private static final int TYPE_MASK = 0170000;
+
+    /** File type bits of a socket */
+    private static final int SOCKET_TYPE = 0140000;
+
+    /** Address the server listens on */
+    private final UnixDomainSocketAddress address;
+
+    /** Runs requests, with a bounded queue for backpressure */
+    private final ThreadPoolExecutor executor;
+
+    /** Listening channel, null until started */
+    private ServerSocketChannel server;
+
+    /** Thread accepting connections, null until started */
+    private Thread acceptor;
+
+    /**
+     * Creates a server
+     * @param address Unix domain socket to listen on
+     * @param jobs largest number of requests transformed at once, which
+     * share the processors and the memory budget
+     * @param queue largest number of requests waiting for a worker
+     * @throws IllegalArgumentException if address is null or not a Unix
+     * domain socket, jobs is not positive or queue is negative
+     */
+    public EditorServer(SocketAddress address, int jobs, int queue) {
+        if (address == null) {
+            throw new IllegalArgumentException("Null address");
+        }
+        if (!(address instanceof UnixDomainSocketAddress)) {
+            throw new IllegalArgumentException("Invalid address");
+        }
+        if (jobs <= 0) {
+            throw new IllegalArgumentException("Invalid job count");
+        }
+        if (queue < 0) {
+            throw new IllegalArgumentException("Invalid queue length");
+        }
+        this.address = (UnixDomainSocketAddress) address;
+        BlockingQueue<Runnable> waiting = queue == 0 ? new SynchronousQueue<>()
+                                                     : new ArrayBlockingQueue<>(queue);
+        this.executor = new ThreadPoolExecutor(jobs, jobs, 0, TimeUnit.MILLISECONDS, waiting);
+    }
+
+    /**
+     * Runs a server from the command line until the process is stopped
+     * @param args Command line arguments, starting with -server
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println(USAGE);
+            return;
+        }
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int queue = jobs * 2;
+        for (int i = 2; i < args.length; i++) {
+            if (i + 1 >= args.length || !(args[i].equals("-jobs") || args[i].equals("-queue"))) {
+                System.out.println(USAGE);
+                return;
+            }
+            int value;
+            try {
+                value = Integer.parseInt(args[++i]);
+            } catch (NumberFormatException e) {
+                value = -1;
+            }
+            if (args[i - 1].equals("-jobs")) {
+                jobs = value;
+            }
+            else {
+                queue = value;
+            }
+        }
+
+        EditorServer editorServer;
+        try {
+            editorServer = new EditorServer(address(args[1]), jobs, queue);
+        } catch (IllegalArgumentException e) {
+            System.out.println(USAGE);
+            return;
+        }
+        warmUp();
+        try {
+            editorServer.start();
+        } catch (IOException e) {
+            System.out.println("Unable to listen on " + args[1] + ": " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(editorServer::close));
+        System.out.println("Listening on " + args[1]);
+        try {
+            editorServer.acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Converts a command line address
+     * @param text socket file name
+     * @return the socket address
+     * @throws IllegalArgumentException if text is null or empty
+     */
+    static SocketAddress address(String text) {
+        if (text == null) {
+            throw new IllegalArgumentException("Null address");
+        }
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("Invalid address");
+        }
+        return UnixDomainSocketAddress.of(text);
+    }
+
+    /**
+     * Opens a channel for a server's Unix domain socket
+     * @return an unconnected channel
+     * @throws IOException if the channel can not be opened
+     */
+    static SocketChannel openChannel() throws IOException {
+        return SocketChannel.open(StandardProtocolFamily.UNIX);
+    }
+
+    /**
+     * Starts listening and accepting connections on a background thread
+     * A socket file left behind by a server that did not shut down cleanly
+     * is replaced, but any other file, or the socket of a server that is
+     * still listening, is left alone. The new socket is bound in a
+     * directory only the server's user can enter, made private to that
+     * user, and only then moved into place
+     * @throws IOException if the address is taken by another file or
+     * server, or can not be bound or made private
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("Already started");
+        }
+        Path socket = address.getPath().toAbsolutePath();
+        removeStale(socket);
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            if (socket.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Path directory = Files.createTempDirectory(socket.getParent(), ".editor",
+                    PosixFilePermissions.asFileAttribute(
+                        PosixFilePermissions.fromString(DIRECTORY_PERMISSIONS)));
+                Path bound = directory.resolve("socket");
+                try {
+                    server.bind(UnixDomainSocketAddress.of(bound));
+                    Files.setPosixFilePermissions(bound,
+                        PosixFilePermissions.fromString(SOCKET_PERMISSIONS));
+                    Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+                }
+                finally {
+                    Files.deleteIfExists(bound);
+                    Files.deleteIfExists(directory);
+                }
+            }
+            else {
+                server.bind(address);
+            }
+        } catch (IOException e) {
+            server.close();
+            server = null;
+            throw e;
+        }
+        acceptor = new Thread(this::accept, "EditorServer acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * Removes a socket file left behind by a server that is no longer listening
+     * @param socket path of the socket file
+     * @throws IOException if the path holds another kind of file or a server
+     * is listening on it
+     */
+    private static void removeStale(Path socket) throws IOException {
+        if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        boolean isSocket;
+        try {
+            int mode = (Integer) Files.getAttribute(socket, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+            isSocket = (mode & TYPE_MASK) == SOCKET_TYPE;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            isSocket = Files.readAttributes(socket, BasicFileAttributes.class,
+                                            LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+        if (!isSocket) {
+            throw new IOException("Not a socket file");
+        }
+        try (SocketChannel probe = openChannel()) {
+            probe.connect(UnixDomainSocketAddress.of(socket));
+        } catch (ConnectException e) {
+            // Nothing is listening, so the socket was left behind
+            Files.deleteIfExists(socket);
+            return;
+        }
+        throw new IOException("Another server is listening");
+    }
+
+    /**
+     * Returns the address the server listens on
+     * @return the socket address
+     */
+    public SocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Stops accepting connections, lets requests in progress finish, and
+     * removes the socket file
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (server != null) {
+                server.close();
+            }
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+            if (acceptor != null) {
+                // Only a socket this server bound is removed
+                Files.deleteIfExists(address.getPath());
+            }
+        } catch (IOException e) {
+            // Nothing is left to clean up that a new server would not replace
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Accepts connections until the server is closed, handing each to a
+     * worker, and replies BUSY itself when the queue is full
+     */
+    private void accept() {
+        while (server.isOpen()) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                executor.execute(() -> serve(connection));
+            } catch (RejectedExecutionException e) {
+                try (SocketChannel busy = connection) {
+                    reply(busy, BUSY);
+                } catch (IOException ignored) {
+                    // The client went away before hearing it was turned away
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads one request from a connection, runs it and replies
+     * @param connection connected client
+     */
+    private void serve(SocketChannel connection) {
+        try (SocketChannel channel = connection) {
+            BufferedReader in = new BufferedReader(Channels.newReader(channel,
+                                                   StandardCharsets.UTF_8));
+            String line = in.readLine();
+            reply(channel, line == null ? ERROR + " Empty request" : handle(line, executor.getMaximumPoolSize()));
+        } catch (IOException e) {
+            // The client went away; the request, if any, has already run
+        }
+    }
+
+    /**
+     * Runs one request line
+     * @param line working directory and command line, separated by tabs
+     * @param jobs number of requests that can run at once, sharing the
+     * processors and the heap
+     * @return the reply line
+     */
+    static String handle(String line, int jobs) {
+        String[] fields = line.split(SEPARATOR, -1);
+        Options options = Options.parse(Arrays.copyOfRange(fields, 1, fields.length));
+        if (options == null) {
+            return ERROR + " " + Options.USAGE;
+        }
+        options.resolve(fields[0]);
+        options.setJobs(jobs);
+        long start = System.nanoTime();
+        Stats stats = new Stats(false);
+        String message;
+        try {
+            message = ImageEditor.process(options, false, stats);
+        } catch (RuntimeException e) {
+            message = "Failed: " + e;
+        }
+        if (message != null) {
+            return ERROR + " " + message;
+        }
+        if (options.isDryRun()) {
+            return OK + " " + stats.getPlan();
+        }
+        if (options.isStatsOnly()) {
+            return OK + " " + stats.getChannelStats().toJson();
+        }
+        return String.format(Locale.ROOT, "%s %.1f ms", OK, (System.nanoTime() - start) / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Writes a reply line
+     * @param channel connected client
+     * @param line the reply
+     * @throws IOException if the reply can not be written
+     */
+    private static void reply(SocketChannel channel, String line) throws IOException {
+        Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+        out.write(line + "\n");
+        out.flush();
+    }
+
+    /**
+     * Runs every filter over a synthetic image until the JIT compiles it,
+     * so the first requests are not slower than the rest
+     */
+    private static void warmUp() {
+        byte[] data = new byte[WARM_UP_SAMPLES];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        for (int pass = 0; pass < WARM_UP_PASSES; pass++) {
+            for (String flag : new String[] {"-I", "-H", "-G"}) {
+                Pipeline.compile(flag).apply(data, 0, data.length);
+            }
+            Pipeline.compile(List.of("-I", "-G", "-H")).apply(data, 0, data.length);
+            PixelBuffer image = new PixelBuffer(WARM_UP_WIDTH, WARM_UP_WIDTH);
+            System.arraycopy(data, 0, image.getData(), 0, image.getData().length);
+            for (String flag : new String[] {Convolution.BLUR, Convolution.GAUSS,
+                                             Convolution.SHARPEN, Convolution.EDGE}) {
+                Convolution.forFlag(flag).apply(image, 0, image.getHeight());
+            }
+        }
+    }
+}
@@ -0,0 +1,317 @@
+import java.util.*;
+
+/**
+ * FilterChain runs a sequence of transformations that may mix per-pixel
+ * flags with neighborhood filters
+ * Runs of per-pixel flags are compiled into one Pipeline each, so the chain
+ * alternates pipelines and convolutions and only crosses the image once
+ * per neighborhood filter
+ * @author Amelia Saldino
+ */
+public class FilterChain implements BandFilter {
+    /** Pipelines before each convolution and after the last, one more than kernels */
+    private final List<Pipeline> pipelines;
+
+    /** Convolutions in order */
+    private final List<Convolution> kernels;
+
+    /**
+     * Creates a chain
+     * @param pipelines pipelines before each convolution and after the last
+     * @param kernels convolutions in order
+     */
+    private FilterChain(List<Pipeline> pipelines, List<Convolution> kernels) {
+        this.pipelines = pipelines;
+        this.kernels = kernels;
+    }
+
+    /**
+     * Compiles a sequence of transformation flags
+     * @param flags transformations in order, each -I, -H, -G, -blur,
+     * -gauss, -sharpen or -edge
+     * @param luma 601 or 709 for weighted greyscale, null for an average
+     * @return the compiled chain
+     * @throws IllegalArgumentException if flags is null or holds an unknown
+     * flag, or luma is unknown
+     */
+    public static FilterChain compile(List<String> flags, String luma) {
+        if (flags == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        List<Pipeline> pipelines = new ArrayList<>();
+        List<Convolution> kernels = new ArrayList<>();
+        List<String> segment = new ArrayList<>();
+        for (String flag : flags) {
+            if (Convolution.isFlag(flag)) {
+                pipelines.add(Pipeline.compile(segment, luma));
+                kernels.add(Convolution.forFlag(flag));
+                segment.clear();
+            }
+            else {
+                segment.add(flag);
+            }
+        }
+        pipelines.add(Pipeline.compile(segment, luma));
+        return new FilterChain(pipelines, kernels);
+    }
+
+    /**
+     * Returns the chain as a single pipeline if it has no neighborhood filter
+     * @return the pipeline, null if the chain has a convolution
+     */
+    public Pipeline asPipeline() {
+        return kernels.isEmpty() ? pipelines.get(0) : null;
+    }
+
+    /**
+     * Returns how many rows of context above and below each row are read
+     * @return total context rows of every convolution
+     */
+    @Override
+    public int getHalo() {
+        return reach(0);
+    }
+
+    /**
+     * Transforms rows of a band, running each step over as many extra rows
+     * as the steps after it read as context
+     * @param band rows of the image, including context rows
+     * @param fromRow first row of the band to transform
+     * @param toRow row just past the last row of the band to transform
+     */
+    @Override
+    public void apply(PixelBuffer band, int fromRow, int toRow) {
+        for (int i = 0; i < pipelines.size(); i++) {
+            int extra = reach(i);
+            int first = Math.max(0, fromRow - extra);
+            int last = Math.min(band.getHeight(), toRow + extra);
+            Pipeline pipeline = pipelines.get(i);
+            if (!pipeline.isIdentity()) {
+                pipeline.apply(band.getData(), band.getOffset(first), band.getOffset(last));
+            }
+            if (i < kernels.size()) {
+                extra = reach(i + 1);
+                kernels.get(i).apply(band, Math.max(0, fromRow - extra),
+                                     Math.min(band.getHeight(), toRow + extra));
+            }
+        }
+    }
+
+    /**
+     * Transforms a whole image in place, each step in bands of rows on several threads
+     * @param image image to transform
+     * @param threads number of threads, 1 to transform sequentially
+     * @param cutoff number of pixels below which a step stays sequential
+     * @throws IllegalArgumentException if image is null, or threads or cutoff is not positive
+     */
+    public void applyParallel(PixelBuffer image, int threads, int cutoff) {
+        for (int i = 0; i < pipelines.size(); i++) {
+            Pipeline pipeline = pipelines.get(i);
+            if (!pipeline.isIdentity()) {
+                ParallelFilter.apply(image, pipeline, threads, cutoff);
+            }
+            if (i < kernels.size()) {
+                kernels.get(i).applyParallel(image, threads, cutoff);
+            }
+        }
+    }
+
+    /**
+     * Starts transforming an image that arrives one row at a time
+     * @param rowLength number of samples in one row
+     * @return the stream to push rows into
+     */
+    public RowStream stream(int rowLength) {
+        return new RowStream(rowLength);
+    }
+
+    /**
+     * Estimates the memory a row stream holds in its convolution windows
+     * @param rowLength number of samples in one row
+     * @return bytes of the windows, 0 for a chain without convolutions
+     */
+    long getStreamBytes(long rowLength) {
+        long bytes = 0;
+        for (Convolution kernel : kernels) {
+            // A ring of 2 * halo + 1 rows and a row of sums, for each of two passes
+            bytes += 2 * (2L * kernel.getHalo() + 2) * rowLength * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the flags of the chain
+     * @return flags in order
+     */
+    @Override
+    public String toString() {
+        List<String> steps = new ArrayList<>();
+        for (int i = 0; i < pipelines.size(); i++) {
+            steps.addAll(pipelines.get(i).getFlags());
+            if (i < kernels.size()) {
+                steps.add(kernels.get(i).toString());
+            }
+        }
+        return String.join(" ", steps);
+    }
+
+    /**
+     * Returns the context rows read by the convolutions from one on
+     * @param first index of the first convolution counted
+     * @return sum of their halos
+     */
+    private int reach(int first) {
+        int rows = 0;
+        for (int i = first; i < kernels.size(); i++) {
+            rows += kernels.get(i).getHalo();
+        }
+        return rows;
+    }
+
+    /**
+     * RowStream transforms rows as they are read, holding only a window of
+     * rows for each convolution
+     * Each convolution returns its rows halo rows after it receives them,
+     * and the last rows come out of finish()
+     */
+    public final class RowStream {
+        /** Window of each convolution */
+        private final Convolution.Window[] windows;
+
+        /** Number of rows each convolution has received */
+        private final int[] received;
+
+        /** Number of rows each convolution has returned */
+        private final int[] emitted;
+
+        /** Index of the newest row in each window, counting repeated edge rows */
+        private final int[] newest;
+
+        /** Row each convolution returns into */
+        private final byte[][] scratch;
+
+        /** Transformed rows waiting to be taken */
+        private final Deque<byte[]> ready = new ArrayDeque<>();
+
+        /** Rows taken since the last push, reused once the next row arrives */
+        private final List<byte[]> taken = new ArrayList<>();
+
+        /** Rows free for reuse */
+        private final Deque<byte[]> free = new ArrayDeque<>();
+
+        /** Number of samples in one row */
+        private final int rowLength;
+
+        /**
+         * Creates an empty stream
+         * @param rowLength number of samples in one row
+         */
+        private RowStream(int rowLength) {
+            this.rowLength = rowLength;
+            windows = new Convolution.Window[kernels.size()];
+            scratch = new byte[kernels.size()][];
+            for (int k = 0; k < windows.length; k++) {
+                windows[k] = kernels.get(k).newWindow(rowLength);
+                scratch[k] = new byte[rowLength];
+            }
+            received = new int[windows.length];
+            emitted = new int[windows.length];
+            newest = new int[windows.length];
+        }
+
+        /**
+         * Transforms the next row of the image
+         * The row is changed in place and can be reused once this returns
+         * @param row samples of the row
+         */
+        public void push(byte[] row) {
+            recycle();
+            Pipeline pipeline = pipelines.get(0);
+            if (!pipeline.isIdentity()) {
+                pipeline.apply(row, 0, rowLength);
+            }
+            feed(0, row);
+        }
+
+        /**
+         * Returns the rows still held once the last row has been pushed
+         */
+        public void finish() {
+            recycle();
+            for (int k = 0; k < windows.length; k++) {
+                int halo = kernels.get(k).getHalo();
+                while (emitted[k] < received[k]) {
+                    windows[k].repeat();
+                    newest[k]++;
+                    if (newest[k] - halo >= emitted[k]) {
+                        emit(k);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes the next transformed row
+         * The row is valid until the next push or finish
+         * @return the row, null if none is ready
+         */
+        public byte[] poll() {
+            byte[] row = ready.pollFirst();
+            if (row != null) {
+                taken.add(row);
+            }
+            return row;
+        }
+
+        /**
+         * Hands a row to a convolution, or to the ready rows after the last one
+         * @param k index of the convolution
+         * @param row samples of the row, already through the pipeline before it
+         */
+        private void feed(int k, byte[] row) {
+            if (k == windows.length) {
+                byte[] copy = free.isEmpty() ? new byte[rowLength] : free.pollFirst();
+                System.arraycopy(row, 0, copy, 0, rowLength);
+                ready.addLast(copy);
+                return;
+            }
+            int halo = kernels.get(k).getHalo();
+            windows[k].push(row, 0);
+            if (received[k] == 0) {
+                for (int i = 0; i < halo; i++) {
+                    windows[k].repeat();
+                }
+                newest[k] = 0;
+            }
+            else {
+                newest[k]++;
+            }
+            received[k]++;
+            if (newest[k] - halo >= emitted[k]) {
+                emit(k);
+            }
+        }
+
+        /**
+         * Returns the middle row of a convolution's window to the next step
+         * @param k index of the convolution
+         */
+        private void emit(int k) {
+            windows[k].emit(scratch[k], 0);
+            emitted[k]++;
+            Pipeline pipeline = pipelines.get(k + 1);
+            if (!pipeline.isIdentity()) {
+                pipeline.apply(scratch[k], 0, rowLength);
+            }
+            feed(k + 1, scratch[k]);
+        }
+
+        /**
+         * Makes the rows taken since the last call free for reuse
+         */
+        private void recycle() {
+            free.addAll(taken);
+            taken.clear();
+        }
+    }
+}
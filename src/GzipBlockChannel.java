@@ -0,0 +1,187 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GzipBlockChannel compresses everything written to it as gzip, splitting
+ * the data into fixed size blocks that are compressed in parallel
+ * Each block becomes a complete gzip member and members are written in
+ * order, so the output is a standard concatenated gzip stream that gzip
+ * and GZIPInputStream read as one file
+ * @author Amelia Saldino
+ */
+public class GzipBlockChannel implements WritableByteChannel {
+    /** Extension of gzip compressed files */
+    public static final String EXTENSION = ".gz";
+
+    /** Number of uncompressed bytes in one block */
+    static final int BLOCK_SIZE = 1 << 18;
+
+    /** Size of the deflate buffer for one block */
+    private static final int DEFLATE_BUFFER = 1 << 16;
+
+    /** Threads that compress blocks, shared by every channel */
+    private static final ExecutorService COMPRESSORS = compressors();
+
+    /** Channel the compressed members are written to */
+    private final WritableByteChannel out;
+
+    /** Largest number of blocks compressing at once */
+    private final int maxPending;
+
+    /** Blocks being compressed, oldest first */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    /** Block being filled */
+    private byte[] block = new byte[BLOCK_SIZE];
+
+    /** Number of bytes in the block being filled */
+    private int count;
+
+    /** Whether any member has been started */
+    private boolean started;
+
+    /** Whether the channel is open */
+    private boolean open = true;
+
+    /**
+     * Creates a compressing channel
+     * @param out channel the compressed stream is written to
+     * @throws IllegalArgumentException if out is null
+     */
+    public GzipBlockChannel(WritableByteChannel out) {
+        if (out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        this.out = out;
+        this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Copies bytes into the current block, handing each full block to the
+     * compressors
+     * @param src bytes to write
+     * @return number of bytes written, all of them
+     * @throws IOException if a compressed block can not be written
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            int copied = Math.min(src.remaining(), BLOCK_SIZE - count);
+            src.get(block, count, copied);
+            count += copied;
+            if (count == BLOCK_SIZE) {
+                submit();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Checks if the channel is open
+     * @return true until closed
+     */
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Compresses the last block, writes every member and closes the file
+     * @throws IOException if the output can not be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            if (count > 0 || !started) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                drain();
+            }
+        }
+        finally {
+            block = null;
+            pending.forEach(future -> future.cancel(false));
+            out.close();
+        }
+    }
+
+    /**
+     * Hands the current block to the compressors and starts a new one,
+     * first writing the oldest members if too many are pending
+     * @throws IOException if a compressed block can not be written
+     */
+    private void submit() throws IOException {
+        while (pending.size() >= maxPending) {
+            drain();
+        }
+        byte[] data = block;
+        int length = count;
+        pending.addLast(COMPRESSORS.submit(() -> compress(data, length)));
+        started = true;
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+    }
+
+    /**
+     * Waits for the oldest block and writes its member
+     * @throws IOException if the block failed or can not be written
+     */
+    private void drain() throws IOException {
+        byte[] member;
+        try {
+            member = pending.peekFirst().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot compress output", e.getCause());
+        }
+        pending.removeFirst();
+        ByteBuffer bytes = ByteBuffer.wrap(member);
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Compresses one block into a complete gzip member
+     * @param data uncompressed bytes
+     * @param length number of bytes in data
+     * @return the gzip member
+     * @throws IOException if the block can not be compressed
+     */
+    static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + DEFLATE_BUFFER);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, DEFLATE_BUFFER)) {
+            gzip.write(data, 0, length);
+        }
+        return member.toByteArray();
+    }
+
+    /**
+     * Creates the shared compressor threads, daemons so an unclosed channel
+     * never keeps the JVM running
+     * @return the executor
+     */
+    private static ExecutorService compressors() {
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "GzipBlockChannel compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
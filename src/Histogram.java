@@ -0,0 +1,143 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Histogram counts the samples of each channel of an image on a fork-join pool
+ * Each band of rows is counted into its own primitive counters, optionally
+ * right after a filter is applied to it while the band is still in cache,
+ * and the counters are added together as the bands join
+ * @author Amelia Saldino
+ */
+public class Histogram extends RecursiveTask<long[]> {
+    /** Number of distinct sample values */
+    public static final int LEVELS = 256;
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 1L;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Image being counted */
+    private final PixelBuffer image;
+
+    /** Filter applied to each band before it is counted */
+    private final SampleFilter filter;
+
+    /** Number of pixels below which a band is counted sequentially */
+    private final int cutoff;
+
+    /** First row of the band */
+    private final int fromRow;
+
+    /** Row just past the end of the band */
+    private final int toRow;
+
+    /**
+     * Creates a task for a band of rows
+     * @param image image being counted
+     * @param filter filter applied to each band before it is counted
+     * @param cutoff number of pixels below which a band is counted sequentially
+     * @param fromRow first row of the band
+     * @param toRow row just past the end of the band
+     */
+    private Histogram(PixelBuffer image, SampleFilter filter, int cutoff, int fromRow, int toRow) {
+        this.image = image;
+        this.filter = filter;
+        this.cutoff = cutoff;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+    }
+
+    /**
+     * Filters an image in place and counts the filtered samples in the same pass
+     * @param image image to filter and count
+     * @param filter filter to apply first
+     * @param threads number of threads, 1 to count sequentially
+     * @param cutoff number of pixels below which the image or a band
+     * of it is counted sequentially
+     * @return counts indexed by channel * 256 + value, channel 0 for red,
+     * 1 for green and 2 for blue
+     * @throws IllegalArgumentException if image or filter is null,
+     * or threads or cutoff is not positive
+     */
+    public static long[] count(PixelBuffer image, SampleFilter filter, int threads, int cutoff) {
+        if (image == null || filter == null) {
+            throw new IllegalArgumentException("Null image");
+        }
+        if (threads <= 0 || cutoff <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        Histogram task = new Histogram(image, filter, cutoff, 0, image.getHeight());
+        if (threads == 1 || (long) image.getWidth() * image.getHeight() <= cutoff) {
+            return task.compute();
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(task);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Creates a task that counts the first rows of an image as they are,
+     * to fork on a pool or to compute on the calling thread
+     * @param image image holding the rows
+     * @param rows number of rows to count
+     * @param cutoff number of pixels below which a band is counted sequentially
+     * @return the task, whose counts are indexed as count's are
+     */
+    static Histogram rows(PixelBuffer image, int rows, int cutoff) {
+        return new Histogram(image, (data, from, to) -> { }, cutoff, 0, rows);
+    }
+
+    /**
+     * Filters and counts the band, splitting it in half while it is above the cutoff
+     * @return counts of the band
+     */
+    @Override
+    protected long[] compute() {
+        int rows = toRow - fromRow;
+        if (rows <= 1 || (long) rows * image.getWidth() <= cutoff || getPool() == null) {
+            return countBand();
+        }
+        int middle = fromRow + rows / 2;
+        Histogram top = new Histogram(image, filter, cutoff, fromRow, middle);
+        Histogram bottom = new Histogram(image, filter, cutoff, middle, toRow);
+        bottom.fork();
+        long[] counts = top.compute();
+        long[] other = bottom.join();
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other[i];
+        }
+        return counts;
+    }
+
+    /**
+     * Filters and counts the band on this thread
+     * @return counts of the band
+     */
+    private long[] countBand() {
+        byte[] data = image.getData();
+        int from = image.getOffset(fromRow);
+        int to = image.getOffset(toRow);
+        filter.apply(data, from, to);
+        int[] red = new int[LEVELS];
+        int[] green = new int[LEVELS];
+        int[] blue = new int[LEVELS];
+        for (int i = from; i < to; i += NUM_VAL_RGB) {
+            red[data[i] & 0xFF]++;
+            green[data[i + 1] & 0xFF]++;
+            blue[data[i + 2] & 0xFF]++;
+        }
+        long[] counts = new long[NUM_VAL_RGB * LEVELS];
+        for (int v = 0; v < LEVELS; v++) {
+            counts[v] = red[v];
+            counts[LEVELS + v] = green[v];
+            counts[2 * LEVELS + v] = blue[v];
+        }
+        return counts;
+    }
+}
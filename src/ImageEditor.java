@@ -1,5 +1,8 @@
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * ImageEditor class changes images
@@ -16,161 +19,373 @@ public class ImageEditor {
     /** Number of Values in RGB */
     private static final int NUM_VAL_RGB = 3;
 
-    /** Number of correct cmd line args */
-    private static final int VALID_CMD = 3;
+    /** Whether the Vector API kernels are available and enabled */
+    private static final boolean SIMD = simdAvailable();
 
     /**
      * Main method
-     * Expects three command-line arguments: flag, input file, and output file.
+     * Expects one or more flags, optional settings, an input file and an output file,
+     * or -batch followed by batch settings, or -server or -client followed by
+     * an address.
      *
      * @param args Command line arguments
      */
     public static void main(String[] args) {
-        if(args.length != VALID_CMD) {
-            System.out.println("Usage: java -cp bin ImageEditor {-I|-H|-G} infile outfile");
+        if (args.length > 0 && args[0].equals("-batch")) {
+            BatchProcessor.main(args);
             return;
         }
-
-        String flag = args[0];
-        String infile = args[1];
-        String outfile = args[2];
-
-        if (!flag.equals("-I") && !flag.equals("-H") && !flag.equals("-G")) {
-            System.out.println("Usage: java -cp bin ImageEditor {-I|-H|-G} infile outfile");
+        if (args.length > 0 && args[0].equals("-server")) {
+            EditorServer.main(args);
             return;
         }
-
-        if(!infile.endsWith(".ppm")) {
-            System.out.println("Invalid input file extension");
+        if (args.length > 0 && args[0].equals("-client")) {
+            EditorClient.main(args);
             return;
         }
 
-        if(!outfile.endsWith(".ppm")) {
-            System.out.println("Invalid output file extension");
+        Options options = Options.parse(args);
+        if(options == null) {
+            System.out.println(Options.USAGE);
             return;
         }
-        
-        Scanner scanner = new Scanner(System.in);
-        
 
+        Stats stats = new Stats(options.isStats());
+        String message = process(options, true, stats);
+        if (message != null) {
+            System.out.println(message);
+        }
+        else if (options.isDryRun()) {
+            System.out.println(stats.getPlan());
+        }
+        else {
+            if (options.isStatsOnly()) {
+                System.out.println(stats.getChannelStats().toJson());
+            }
+            if (options.isStats()) {
+                System.out.println(stats);
+            }
+        }
+    }
+
+    /**
+     * Transforms one input file into one output file
+     * @param options parsed command line for the file
+     * @param prompt true to ask before overwriting an existing output file,
+     * false to overwrite it
+     * @return null if the file was transformed or the user declined
+     * to overwrite, otherwise the message to report
+     * @throws IllegalArgumentException if options is null
+     */
+    public static String process(Options options, boolean prompt) {
+        return process(options, prompt, new Stats(false));
+    }
+
+    /**
+     * Transforms one input file into one output file, measuring each stage
+     * The strategy is planned from the header, and a dry run stops there
+     * without writing the output file. When only statistics are asked for,
+     * they are counted into stats and nothing is written
+     * @param options parsed command line for the file
+     * @param prompt true to ask before overwriting an existing output file,
+     * false to overwrite it
+     * @param stats receives the plan or the channel statistics, and the
+     * header, read, filter and write measurements
+     * @return null if the file was transformed or planned, or the user declined
+     * to overwrite, otherwise the message to report
+     * @throws IllegalArgumentException if options or stats is null
+     */
+    public static String process(Options options, boolean prompt, Stats stats) {
+        if (options == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        String infile = options.getInfile();
+        String outfile = options.getOutfile();
+
+        if(!hasExtension(infile, ".ppm")) {
+            return "Invalid input file extension";
+        }
+
+        if (options.isStatsOnly()) {
+            return statistics(options, stats);
+        }
+
+        boolean pgmName = hasExtension(outfile, ".pgm");
+        if(!hasExtension(outfile, ".ppm") && !pgmName) {
+            return "Invalid output file extension";
+        }
+        
+        PpmReader reader;
         try {
-            FileInputStream file = new FileInputStream(infile);
-            file.close();
+            reader = PpmReader.open(infile);
         } catch (IOException e) {
-            System.out.println("Unable to access input file: " + infile);
-            scanner.close();
-            return;
+            return "Unable to access input file: " + infile;
         }
 
-        if (fileExists(outfile)) {
-            try (Scanner keyBoardScanner = new Scanner(System.in)) {
-                System.out.print(outfile + " exists - OK to overwrite(y,n)?: ");
-                String response = keyBoardScanner.nextLine();
-                if (!response.trim().toLowerCase().startsWith("y")) {
-                    keyBoardScanner.close();
-                    return;
-                }
+        try (PpmReader in = reader) {
+            if (prompt && !options.isDryRun() && !confirmOverwrite(outfile)) {
+                return null;
             }
-        } 
 
-        try (FileOutputStream fos = new FileOutputStream(outfile);
-             PrintWriter writer = new PrintWriter(fos)) {
-            
-            FileInputStream testFile = new FileInputStream(infile);
-        
-            Scanner inTesting = new Scanner(testFile);
-            if(!validInputFile(inTesting)) {
-                System.out.println("Invalid input file");
-                inTesting.close();
-                return;
+            ResultCache cache = null;
+            String key = null;
+            // An entry holds one file, so runs that also write scaled copies bypass the cache
+            if (options.getCacheDir() != null && options.getScales().isEmpty()
+                && !options.isDryRun()) {
+                try {
+                    cache = new ResultCache(options.getCacheDir(), options.getCacheSize());
+                    String encoding = options.getOutputFormat(pgmName ? "PGM" : null);
+                    if (outfile.endsWith(GzipBlockChannel.EXTENSION)) {
+                        encoding = (encoding == null ? "" : encoding) + GzipBlockChannel.EXTENSION;
+                    }
+                    List<String> operations = new ArrayList<>(options.getFlags());
+                    if (options.getLuma() != null) {
+                        operations.add("-luma " + options.getLuma());
+                    }
+                    if (options.getAdaptive() != null) {
+                        operations.add("-adaptive " + options.getAdaptive());
+                    }
+                    if (options.getRegion() != null) {
+                        operations.add("-region " + options.getRegion());
+                    }
+                    key = cache.keyFor(infile, operations, encoding);
+                    if (cache.fetch(key, outfile)) {
+                        return null;
+                    }
+                } catch (IOException e) {
+                    cache = null;
+                }
             }
-            inTesting.close();
 
-            FileInputStream file = new FileInputStream(infile);
-            Scanner in = new Scanner(file);
+            stats.begin();
+            boolean header = in.readHeader();
+            stats.end(Stats.HEADER, in.getBytesRead(), 0);
+            if (!header) {
+                return "Invalid input file";
+            }
 
-            int[][] pixels = getPixelValues(in);
-            
-            if(flag.equals("-I")) {
-                invert(pixels);
+            String format = options.getOutputFormat(in.getFormat());
+            if (pgmName && options.getOutputFormat(null) == null) {
+                format = in.isBinary() ? "P5" : "P2";
             }
-            if(flag.equals("-H")) {
-                highContrast(pixels);
+            List<String> flags = options.getFlags();
+            if (PpmWriter.isGrey(format) && !flags.contains("-G")) {
+                // One sample per pixel only holds the whole pixel once it is grey
+                flags = new ArrayList<>(flags);
+                flags.add("-G");
             }
-            if(flag.equals("-G")) {
-                greyScale(pixels);
+            FilterChain chain = FilterChain.compile(flags, options.getLuma());
+            Pipeline pipeline = chain.asPipeline();
+            if (in.isWide() && (pipeline == null || options.getAdaptive() != null
+                                || !options.getScales().isEmpty())) {
+                return "Only -I, -H and -G support a max color value other than 255";
             }
-            outputPPM(writer, pixels);
-            writer.close();
-        }
-        catch (FileNotFoundException e) {
-            System.out.println("Cannot create output file");
-            scanner.close();
-            return;
+            if (in.isWide() && (options.isTiled() || options.isPipelined()
+                                || (options.isThreadCountSet() && options.getThreads() > 1))) {
+                // Samples wider than a byte only stream, one row at a time on one thread
+                return "-threads, -tiled and -pipelined need a max color value of 255";
+            }
+            Region region = options.getRegion();
+            if (region != null && !region.fits(in.getCols(), in.getRows())) {
+                return "Region outside the image";
+            }
+            boolean patchable = region != null && in.isBinary() && !in.isWide()
+                && "P6".equals(format) && !infile.endsWith(GzipBlockChannel.EXTENSION)
+                && !outfile.endsWith(GzipBlockChannel.EXTENSION);
+            Plan plan = Plan.choose(options, in.getFormat(), in.getCols(), in.getRows(),
+                                    in.getMaxColorValue(), chain, patchable);
+            stats.setPlan(plan);
+            if (options.isDryRun()) {
+                return null;
+            }
+            if (plan.getMode().equals(Plan.MEMORY) && !plan.fits()) {
+                // Only adaptive thresholds need the whole image whatever its size
+                return "Image does not fit the memory budget, which -adaptive needs";
+            }
+            if (plan.getMode().equals(Plan.PATCH)) {
+                try {
+                    if (!patchPPM(in, infile, outfile, region, chain, stats)) {
+                        return "Invalid input file";
+                    }
+                }
+                catch (IOException e) {
+                    return "Cannot create output file";
+                }
+                store(cache, key, outfile);
+                return null;
+            }
+            PpmWriter output;
+            long written = 0;
+            boolean valid;
+            try (PpmWriter writer = PpmWriter.open(outfile, format, in.getCols(), in.getRows(),
+                                                   in.getMaxColorValue())) {
+                output = writer;
+                Downscaler.attach(writer, outfile, format, in.getCols(), in.getRows(),
+                                  options.getScales());
+                if (in.isWide()) {
+                    // Samples wider than a byte always stream, one char row at a time
+                    valid = streamPPM(in, writer, WidePipeline.compile(flags,
+                                          options.getLuma(), in.getMaxColorValue()),
+                                      region, stats);
+                }
+                else if (plan.getMode().equals(Plan.MEMORY) && region != null) {
+                    valid = memoryPPM(in, writer, plan.getThreads(),
+                                      image -> region.apply(image, chain), stats);
+                }
+                else if (plan.getMode().equals(Plan.MEMORY) && options.getAdaptive() != null) {
+                    List<String> adaptiveFlags = flags;
+                    valid = memoryPPM(in, writer, plan.getThreads(),
+                                      image -> AdaptiveContrast.apply(image, adaptiveFlags,
+                                          options.getLuma(), options.getAdaptive(),
+                                          plan.getThreads(), options.getCutoff()), stats);
+                }
+                else if (plan.getMode().equals(Plan.MEMORY)) {
+                    valid = memoryPPM(in, writer, plan.getThreads(),
+                                      image -> chain.applyParallel(image, plan.getThreads(),
+                                          options.getCutoff()), stats);
+                }
+                else if (plan.getMode().equals(Plan.PIPELINED)) {
+                    valid = PipelinedProcessor.process(in, writer, pipeline, plan.getThreads(),
+                                                       stats);
+                }
+                else if (plan.getMode().equals(Plan.TILED)) {
+                    valid = TiledProcessor.process(in, writer, pipeline == null ? chain
+                                                   : BandFilter.pointwise(pipeline),
+                                                   plan.getTileBytes(), stats);
+                }
+                else if (region != null || pipeline == null) {
+                    valid = streamPPM(in, writer, chain, region, stats);
+                }
+                else {
+                    valid = streamPPM(in, writer, pipeline, stats);
+                }
+                if (valid) {
+                    written = writer.getBytesWritten();
+                    // Closing the writer flushes what is still buffered, timed as writing
+                    stats.begin();
+                }
+            }
+            catch (IOException e) {
+                return "Cannot create output file";
+            }
+            if (!valid) {
+                // The header and the rows before the invalid one would still parse as an image
+                deleteOutput(outfile, options.getScales());
+                return "Invalid input file";
+            }
+            stats.end(Stats.WRITE, output.getBytesWritten() - written, 0);
+            store(cache, key, outfile);
         }
         catch (IOException e) {
-            System.out.println("Cannot create output file");
-            scanner.close();
-            return;
+            return "Unable to access input file: " + infile;
         }
-        
-        scanner.close();
+        return null;
     }
 
     /**
-     * Checks if a file exists
-     * @param filename name of the file to check
-     * @return true if the file exists, false otherwise
+     * Deletes a partly written output file and its scaled copies
+     * @param outfile name of the output file
+     * @param scales factors of the scaled copies
      */
-    private static boolean fileExists(String filename) {
-        try (FileInputStream file = new FileInputStream(filename)) {
-            file.close();
-            return true; 
+    private static void deleteOutput(String outfile, List<Integer> scales) {
+        try {
+            Files.deleteIfExists(Paths.get(outfile));
+            for (int factor : scales) {
+                Files.deleteIfExists(Paths.get(Downscaler.scaledName(outfile, factor)));
+            }
         } catch (IOException e) {
-            return false; 
+            // The message about the input is still the one to report
         }
     }
 
     /**
-     * Checks if inputfile is correctly formatted
-     * @param in scanner object to read first part of file
-     * @return true if the file is valid, false otherwise
-     * @throws IllegalArgumentException if scanner is null
+     * Counts the statistics of each channel of the input in one streaming pass
+     * @param options parsed command line for the file
+     * @param stats receives the statistics and the header, read and count measurements
+     * @return null if the statistics were counted, otherwise the message to report
      */
-    private static boolean validInputFile(Scanner in) {
-        if (in == null) {
-            throw new IllegalArgumentException("Null scanner");
+    private static String statistics(Options options, Stats stats) {
+        String infile = options.getInfile();
+        try (PpmReader in = PpmReader.open(infile)) {
+            stats.begin();
+            boolean header = in.readHeader();
+            stats.end(Stats.HEADER, in.getBytesRead(), 0);
+            if (!header) {
+                return "Invalid input file";
+            }
+            if (in.isWide()) {
+                return "Statistics need a max color value of 255";
+            }
+            ChannelStats channels = ChannelStats.read(in, options.getThreads(),
+                                                      options.getCutoff(), stats);
+            if (channels == null) {
+                return "Invalid input file";
+            }
+            stats.setChannelStats(channels);
+            return null;
         }
-
-        String format = in.next();
-        if (!format.equals("P3")) {
-            return false; 
+        catch (IOException e) {
+            return "Unable to access input file: " + infile;
         }
+    }
 
-        if(!in.hasNextInt()) {
-            return false;
-        }
-        int cols = in.nextInt();
-        if (cols <= 0) {
-            return false; 
+    /**
+     * Keeps a finished output file in the result cache
+     * @param cache the cache, null for no cache
+     * @param key key of the transformation
+     * @param outfile name of the output file
+     */
+    private static void store(ResultCache cache, String key, String outfile) {
+        if (cache != null) {
+            try {
+                cache.store(key, outfile);
+            } catch (IOException e) {
+                // The output is written, a cache that can not keep it only misses next time
+            }
         }
+    }
 
-        if(!in.hasNextInt()) {
-            return false;
-        }
-        int rows = in.nextInt();
-        if (rows <= 0) {
-            return false; 
-        }
+    /**
+     * Checks if a file name has an image extension, plain or gzip compressed
+     * @param filename name of the file
+     * @param extension the extension, such as .ppm
+     * @return true if the name ends in the extension or the extension and .gz
+     */
+    static boolean hasExtension(String filename, String extension) {
+        return filename.endsWith(extension)
+            || filename.endsWith(extension + GzipBlockChannel.EXTENSION);
+    }
 
-        if(!in.hasNextInt()) {
-            return false;
-        }
-        int maxColorVal = in.nextInt();
-        if (maxColorVal != MAX_COLOR_VALUE) {
+    /**
+     * Asks the user before an existing output file is overwritten
+     * @param outfile name of the output file
+     * @return true if the file does not exist or the user answered yes
+     */
+    static boolean confirmOverwrite(String outfile) {
+        if (!fileExists(outfile)) {
+            return true;
+        }
+        Scanner keyBoardScanner = new Scanner(System.in);
+        System.out.print(outfile + " exists - OK to overwrite(y,n)?: ");
+        String response = keyBoardScanner.hasNextLine() ? keyBoardScanner.nextLine() : "";
+        return response.trim().toLowerCase().startsWith("y");
+    }
+
+    /**
+     * Checks if a file exists
+     * @param filename name of the file to check
+     * @return true if the file exists, false otherwise
+     */
+    private static boolean fileExists(String filename) {
+        try (FileInputStream file = new FileInputStream(filename)) {
+            file.close();
+            return true; 
+        } catch (IOException e) {
             return false; 
         }
-        return true;
     }
 
     /**
@@ -184,39 +399,31 @@ public class ImageEditor {
             throw new IllegalArgumentException("Null file");
         }
 
-        String format = in.next();
-        if (!format.equals("P3")) {
-            System.out.println(format);
+        if (!in.hasNext() || !in.next().equals("P3")) {
             return null; 
         }
 
         if(!in.hasNextInt()) {
-            System.out.println("Bello20001");
             return null;
         }
         int cols = in.nextInt();
         if (cols <= 0) {
-            System.out.println("Bello5");
             return null; 
         }
 
         if(!in.hasNextInt()) {
-            System.out.println("Bello4");
             return null;
         }
         int rows = in.nextInt();
         if (rows <= 0) {
-            System.out.println("Bello3");
             return null; 
         }
 
         if(!in.hasNextInt()) {
-            System.out.println("Bello2");
             return null;
         }
         int maxColorVal = in.nextInt();
         if (maxColorVal != MAX_COLOR_VALUE) {
-            System.out.println("Bello");
             return null; 
         }
 
@@ -224,12 +431,15 @@ public class ImageEditor {
 
         for (int i = 0; i < rows; i++) {
             for(int j = 0; j < cols * NUM_VAL_RGB; j++) {
-                if (in.hasNextInt()) {
-                    int value = in.nextInt();
-                    pixelValues[i][j] = value; 
+                if (!in.hasNextInt()) {
+                    return null;
+                }
+                int value = in.nextInt();
+                if (value < 0 || value > maxColorVal) {
+                    return null;
                 }
+                pixelValues[i][j] = value; 
             }
-            
         }
 
         return pixelValues;
@@ -237,91 +447,188 @@ public class ImageEditor {
 
     /**
      * Inverts the pixel array
-     * @param pixels The 2D array of pixel values
-     * @throws IllegalArgumentException if the pixels array is null, invalid, or jagged
+     * @param pixels The 2D array of pixel values, each 0 to 255
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or a value is outside 0 to 255
      */
     public static void invert(int[][] pixels) {   
-         
-        if(pixels == null) {
-            throw new IllegalArgumentException("Null array");
-        }
-        if(pixels.length > 0 && pixels[0].length % NUM_VAL_RGB != 0) {
-            throw new IllegalArgumentException("Invalid array");
-        }
-        for(int i = 0; i < pixels.length; ++i) {
-            if(pixels[0].length != pixels[i].length) {
-                throw new IllegalArgumentException("Jagged array");
-            }
+        PixelBuffer.checkPixels(pixels);
+        if (pixels.length > 0 && pixels[0].length > 0) {
+            PixelBuffer image = PixelBuffer.fromArray(pixels);
+            image.invert();
+            image.copyTo(pixels);
         }
+    }
 
-        for(int i = 0; i < pixels.length; ++i) {
-            for(int j = 0; j < pixels[i].length; ++j) {
-                pixels[i][j] = MAX_COLOR_VALUE - pixels[i][j];
-            }
+    /**
+     * Inverts the pixel array for a max color value
+     * @param pixels The 2D array of pixel values, each 0 to the max color value
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or maxColorValue is out of range
+     */
+    public static void invert(int[][] pixels, int maxColorValue) {
+        transform(pixels, "-I", maxColorValue);
+    }
+
+    /**
+     * Inverts a range of packed samples
+     * @param data packed samples
+     * @param from index of the first sample
+     * @param to index just past the last sample
+     */
+    static void invert(byte[] data, int from, int to) {
+        if (SIMD) {
+            from = VectorKernels.invert(data, from, to);
+        }
+        for (int i = from; i < to; i++) {
+            data[i] = (byte) (MAX_COLOR_VALUE - (data[i] & MAX_COLOR_VALUE));
         }
     }
 
     /**
      * Converts to high contrast
-     * @param pixels The 2D array of pixel values
-     * @throws IllegalArgumentException if the pixels array is null, invalid, or jagged
+     * @param pixels The 2D array of pixel values, each 0 to 255
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or a value is outside 0 to 255
      */
     public static void highContrast(int[][] pixels) {
-        if(pixels == null) {
-            throw new IllegalArgumentException("Null array");
+        PixelBuffer.checkPixels(pixels);
+        if (pixels.length > 0 && pixels[0].length > 0) {
+            PixelBuffer image = PixelBuffer.fromArray(pixels);
+            image.highContrast();
+            image.copyTo(pixels);
         }
-        if(pixels.length > 0 && pixels[0].length % NUM_VAL_RGB != 0) {
-            throw new IllegalArgumentException("Invalid array");
+    }
+
+    /**
+     * Converts to high contrast for a max color value
+     * @param pixels The 2D array of pixel values, each 0 to the max color value
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or maxColorValue is out of range
+     */
+    public static void highContrast(int[][] pixels, int maxColorValue) {
+        transform(pixels, "-H", maxColorValue);
+    }
+
+    /**
+     * Converts a range of packed samples to high contrast
+     * @param data packed samples
+     * @param from index of the first sample
+     * @param to index just past the last sample
+     */
+    static void highContrast(byte[] data, int from, int to) {
+        if (SIMD) {
+            from = VectorKernels.highContrast(data, from, to);
         }
-        for(int i = 0; i < pixels.length; ++i) {
-            if(pixels[0].length != pixels[i].length) {
-                throw new IllegalArgumentException("Jagged array");
+        for (int i = from; i < to; i++) {
+            if ((data[i] & MAX_COLOR_VALUE) < HIGH_CONTRAST_THRESHOLD) {
+                data[i] = 0;
             }
-        }
-        for(int i = 0; i < pixels.length; ++i) {
-            for(int j = 0; j < pixels[i].length; ++j) {
-                if(pixels[i][j] < HIGH_CONTRAST_THRESHOLD) {
-                    pixels[i][j] = 0;
-                }
-                else {
-                    pixels[i][j] = MAX_COLOR_VALUE;
-                }
+            else {
+                data[i] = (byte) MAX_COLOR_VALUE;
             }
         }
-        
     }
 
     /**
      * Converts to greyscalez
-     * @param pixels The 2D array of pixel values
-     * @throws IllegalArgumentException if the pixels array is null, invalid, or jagged
+     * @param pixels The 2D array of pixel values, each 0 to 255
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or a value is outside 0 to 255
      */
     public static void greyScale(int[][] pixels) {
-        if(pixels == null) {
-            throw new IllegalArgumentException("Null array");
-        }
-        if(pixels.length > 0 && pixels[0].length % NUM_VAL_RGB != 0) {
-            throw new IllegalArgumentException("Invalid array");
+        PixelBuffer.checkPixels(pixels);
+        if (pixels.length > 0 && pixels[0].length > 0) {
+            PixelBuffer image = PixelBuffer.fromArray(pixels);
+            image.greyScale();
+            image.copyTo(pixels);
         }
-        for(int i = 0; i < pixels.length; ++i) {
-            if(pixels[0].length != pixels[i].length) {
-                throw new IllegalArgumentException("Jagged array");
+    }
+
+    /**
+     * Converts to greyscale for a max color value
+     * @param pixels The 2D array of pixel values, each 0 to the max color value
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or maxColorValue is out of range
+     */
+    public static void greyScale(int[][] pixels, int maxColorValue) {
+        transform(pixels, "-G", maxColorValue);
+    }
+
+    /**
+     * Applies one transformation for a max color value, on the packed byte
+     * path when the max color value is 255 and on char rows otherwise
+     * @param pixels The 2D array of pixel values, each 0 to the max color value
+     * @param flag the transformation, -I, -H or -G
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or maxColorValue is out of range
+     */
+    private static void transform(int[][] pixels, String flag, int maxColorValue) {
+        WidePipeline.checkMaxColorValue(maxColorValue);
+        if (maxColorValue == MAX_COLOR_VALUE) {
+            PixelBuffer.checkPixels(pixels);
+            if (pixels.length > 0 && pixels[0].length > 0) {
+                PixelBuffer image = PixelBuffer.fromArray(pixels);
+                filterFor(flag).apply(image.getData(), 0, image.getOffset(image.getHeight()));
+                image.copyTo(pixels);
             }
+            return;
         }
-
-        for(int i = 0; i < pixels.length; ++i) {
-            for(int j = 0; j < pixels[i].length; ++j) {
-                if (j % NUM_VAL_RGB != 0) {
-                    continue;
+        PixelBuffer.checkPixels(pixels);
+        WidePipeline pipeline = WidePipeline.compile(Collections.singletonList(flag), null,
+                                                     maxColorValue);
+        for (int[] pixelRow : pixels) {
+            char[] row = new char[pixelRow.length];
+            for (int j = 0; j < row.length; j++) {
+                if (pixelRow[j] < 0 || pixelRow[j] > maxColorValue) {
+                    throw new IllegalArgumentException("Invalid array");
                 }
-                int average = (pixels[i][j] + pixels[i][j + 1] + pixels[i][j + 2]) / 3;
-                pixels[i][j] = average;
-                pixels[i][j + 1] = average;
-                pixels[i][j + 2] = average;
+                row[j] = (char) pixelRow[j];
+            }
+            pipeline.apply(row, 0, row.length);
+            for (int j = 0; j < row.length; j++) {
+                pixelRow[j] = row[j];
             }
         }
     }
 
+    /**
+     * Applies a neighborhood filter, repeating the edge pixels past the edges
+     * @param pixels The 2D array of pixel values, each 0 to 255
+     * @param flag the filter, -blur, -gauss, -sharpen or -edge
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * jagged or holds a value outside 0 to 255, or the flag is null or unknown
+     */
+    public static void convolve(int[][] pixels, String flag) {
+        PixelBuffer.checkPixels(pixels);
+        Convolution filter = Convolution.forFlag(flag);
+        if (pixels.length > 0 && pixels[0].length > 0) {
+            PixelBuffer image = PixelBuffer.fromArray(pixels);
+            filter.apply(image, 0, image.getHeight());
+            image.copyTo(pixels);
+        }
+    }
+
+    /**
+     * Converts a range of packed samples to greyscale
+     * @param data packed samples
+     * @param from index of the first sample, the red sample of a pixel
+     * @param to index just past the last sample, the blue sample of a pixel
+     */
+    static void greyScale(byte[] data, int from, int to) {
+        for (int i = from; i < to; i += NUM_VAL_RGB) {
+            int average = ((data[i] & MAX_COLOR_VALUE) + (data[i + 1] & MAX_COLOR_VALUE)
+                + (data[i + 2] & MAX_COLOR_VALUE)) / 3;
+            data[i] = (byte) average;
+            data[i + 1] = (byte) average;
+            data[i + 2] = (byte) average;
+        }
+    }
+
     /**
      * Outputs the pixel values to file
      * @param out The PrintWriter to output
@@ -333,29 +640,380 @@ public class ImageEditor {
         if (out == null) {
             throw new IllegalArgumentException("Null file");
         }
-        if(pixels == null) {
-            throw new IllegalArgumentException("Null array");
+        PixelBuffer.checkPixels(pixels);
+        PpmWriter.printHeader(out, pixels[0].length / NUM_VAL_RGB, pixels.length);
+
+        for(int i = 0; i < pixels.length; i++) {
+            PpmWriter.printRow(out, pixels[i]);
+        }
+    }
+
+    /**
+     * Reads, transforms and writes the image one row at a time as P3 text
+     * @param in reader for the input file, its header already read
+     * @param out The PrintWriter to output
+     * @param flag the transformation to apply, -I, -H or -G
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read
+     * @throws IllegalArgumentException if the reader, writer or flag is null
+     */
+    public static boolean streamPPM(PpmReader in, PrintWriter out, String flag)
+        throws IOException {
+        if (in == null || out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        return streamPPM(in, new PpmWriter(out, in.getCols(), in.getRows()), flag);
+    }
+
+    /**
+     * Reads, transforms and writes the image one row at a time,
+     * so memory use stays the same no matter how large the image is
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param flag the transformation to apply, -I, -H or -G
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     * @throws IllegalArgumentException if the reader, writer or flag is null
+     */
+    public static boolean streamPPM(PpmReader in, PpmWriter out, String flag)
+        throws IOException {
+        return streamPPM(in, out, Pipeline.compile(flag));
+    }
+
+    /**
+     * Reads, transforms and writes the image one row at a time
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     * @throws IllegalArgumentException if the reader, writer or filter is null
+     */
+    public static boolean streamPPM(PpmReader in, PpmWriter out, SampleFilter filter)
+        throws IOException {
+        return streamPPM(in, out, filter, new Stats());
+    }
+
+    /**
+     * Reads, transforms and writes the image one row at a time, measuring each stage
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     * @throws IllegalArgumentException if the reader, writer, filter or stats is null
+     */
+    public static boolean streamPPM(PpmReader in, PpmWriter out, SampleFilter filter,
+                                    Stats stats) throws IOException {
+        if (in == null || out == null) {
+            throw new IllegalArgumentException("Null file");
         }
-        if(pixels.length > 0 && pixels[0].length % NUM_VAL_RGB != 0) {
-            throw new IllegalArgumentException("Invalid array");
+        if (filter == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        byte[] row = new byte[in.getRowLength()];
+        int cols = in.getCols();
+        long read = in.getBytesRead();
+        long written = out.getBytesWritten();
+        for (int i = 0; i < in.getRows(); i++) {
+            stats.begin();
+            boolean valid = in.readRow(row, 0);
+            stats.end(Stats.READ, in.getBytesRead() - read, valid ? cols : 0);
+            read = in.getBytesRead();
+            if (!valid) {
+                return false;
+            }
+            stats.begin();
+            filter.apply(row, 0, row.length);
+            stats.end(Stats.FILTER, row.length, cols);
+            stats.begin();
+            out.writeRow(row, 0);
+            stats.end(Stats.WRITE, out.getBytesWritten() - written, cols);
+            written = out.getBytesWritten();
         }
-        for(int i = 0; i < pixels.length; ++i) {
-            if(pixels[0].length != pixels[i].length) {
-                throw new IllegalArgumentException("Jagged array");
+        return true;
+    }
+
+    /**
+     * Reads, transforms and writes the image one row at a time through a
+     * chain with neighborhood filters, which hold back a few rows each
+     * A region keeps a copy of each row until the transformed row comes
+     * out, and only the region's span of the copy is replaced
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param chain the transformations to apply
+     * @param region rectangle the transformations are limited to, null for the whole image
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     */
+    private static boolean streamPPM(PpmReader in, PpmWriter out, FilterChain chain,
+                                     Region region, Stats stats) throws IOException {
+        byte[] row = new byte[in.getRowLength()];
+        FilterChain.RowStream rows = chain.stream(row.length);
+        Region.Rows originals = region == null ? null : region.rows(row.length);
+        int cols = in.getCols();
+        long read = in.getBytesRead();
+        for (int i = 0; i < in.getRows(); i++) {
+            stats.begin();
+            boolean valid = in.readRow(row, 0);
+            stats.end(Stats.READ, in.getBytesRead() - read, valid ? cols : 0);
+            read = in.getBytesRead();
+            if (!valid) {
+                return false;
+            }
+            stats.begin();
+            if (originals != null) {
+                originals.hold(row);
+            }
+            rows.push(row);
+            stats.end(Stats.FILTER, row.length, cols);
+            writeRows(rows, out, cols, originals, stats);
+        }
+        stats.begin();
+        rows.finish();
+        stats.end(Stats.FILTER, 0, 0);
+        writeRows(rows, out, cols, originals, stats);
+        return true;
+    }
+
+    /**
+     * Reads, transforms and writes an image whose max color value is not
+     * 255 one char row at a time
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * for the same max color value
+     * @param pipeline the transformations to apply
+     * @param region rectangle the transformations are limited to, null for the whole image
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     */
+    private static boolean streamPPM(PpmReader in, PpmWriter out, WidePipeline pipeline,
+                                     Region region, Stats stats) throws IOException {
+        char[] row = new char[in.getRowLength()];
+        int cols = in.getCols();
+        long read = in.getBytesRead();
+        long written = out.getBytesWritten();
+        for (int i = 0; i < in.getRows(); i++) {
+            stats.begin();
+            boolean valid = in.readRow(row, 0);
+            stats.end(Stats.READ, in.getBytesRead() - read, valid ? cols : 0);
+            read = in.getBytesRead();
+            if (!valid) {
+                return false;
+            }
+            stats.begin();
+            if (region == null) {
+                pipeline.apply(row, 0, row.length);
+            }
+            else {
+                region.apply(i, row, pipeline);
             }
+            stats.end(Stats.FILTER, row.length * (long) Character.BYTES, cols);
+            stats.begin();
+            out.writeRow(row, 0);
+            stats.end(Stats.WRITE, out.getBytesWritten() - written, cols);
+            written = out.getBytesWritten();
         }
-        out.println("P3");
-        out.println(pixels[0].length / NUM_VAL_RGB + " " + pixels.length);
-        out.printf("%d\n", MAX_COLOR_VALUE);
+        return true;
+    }
 
-        for(int i = 0; i < pixels.length; i++) {
-            for (int j = 0; j < pixels[i].length; j++) {
-                out.print(pixels[i][j]);
-                if (j < pixels[i].length - 1) {
-                    out.print(" "); 
+    /**
+     * Transforms a region of a P6 image by patching the output file in place
+     * The output is first made a copy of the input, inside the kernel, unless
+     * it is the input file itself, and then only the rows around the region
+     * are read and only the region's spans are written
+     * @param in reader for the input file, its header already read
+     * @param infile name of the input file
+     * @param outfile name of the output file, the same format as the input
+     * @param region rectangle to transform, inside the image
+     * @param chain the transformations to apply
+     * @param stats receives the read, filter and write measurements
+     * @return true if the input file holds every sample, false otherwise,
+     * with a copied output file deleted
+     * @throws IOException if the input file can not be read or output written
+     */
+    private static boolean patchPPM(PpmReader in, String infile, String outfile, Region region,
+                                    FilterChain chain, Stats stats) throws IOException {
+        Path source = Paths.get(infile);
+        Path target = Paths.get(outfile);
+        boolean same = Files.exists(target) && Files.isSameFile(source, target);
+        boolean patched;
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE,
+                                                StandardOpenOption.READ,
+                                                StandardOpenOption.WRITE)) {
+            if (!same) {
+                stats.begin();
+                out.truncate(0);
+                long size;
+                try (FileChannel copy = FileChannel.open(source)) {
+                    size = copy.size();
+                    long done = 0;
+                    while (done < size) {
+                        long moved = copy.transferTo(done, size - done, out);
+                        if (moved <= 0) {
+                            break;
+                        }
+                        done += moved;
+                    }
                 }
+                stats.end(Stats.WRITE, size, 0);
             }
-            out.println();
+            patched = region.patch(out, in.getBytesRead(), in.getCols(), in.getRows(), chain,
+                                   stats);
+        }
+        if (!patched && !same) {
+            // A copy of a short input would still parse as a header
+            Files.deleteIfExists(target);
+        }
+        return patched;
+    }
+
+    /**
+     * Writes every row a chain has ready
+     * @param rows the chain's row stream
+     * @param out writer for the output file
+     * @param cols number of pixels in one row
+     * @param originals held input rows the region's spans are merged into,
+     * null for the whole image
+     * @param stats receives the write measurements
+     * @throws IOException if the output can not be written
+     */
+    private static void writeRows(FilterChain.RowStream rows, PpmWriter out, int cols,
+                                  Region.Rows originals, Stats stats) throws IOException {
+        for (byte[] ready = rows.poll(); ready != null; ready = rows.poll()) {
+            long written = out.getBytesWritten();
+            stats.begin();
+            out.writeRow(originals == null ? ready : originals.merge(ready), 0);
+            stats.end(Stats.WRITE, out.getBytesWritten() - written, cols);
+        }
+    }
+
+    /**
+     * Reads the whole image, transforms it in bands of rows on
+     * several threads and writes it
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @param threads number of threads
+     * @param cutoff number of pixels below which filtering stays sequential
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     * @throws IllegalArgumentException if the reader, writer or filter is null
+     */
+    public static boolean parallelPPM(PpmReader in, PpmWriter out, SampleFilter filter,
+                                      int threads, int cutoff) throws IOException {
+        return parallelPPM(in, out, filter, threads, cutoff, new Stats());
+    }
+
+    /**
+     * Reads the whole image, transforms it in bands of rows on
+     * several threads and writes it, measuring each stage
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @param threads number of threads
+     * @param cutoff number of pixels below which filtering stays sequential
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     * @throws IllegalArgumentException if the reader, writer, filter or stats is null
+     */
+    public static boolean parallelPPM(PpmReader in, PpmWriter out, SampleFilter filter,
+                                      int threads, int cutoff, Stats stats) throws IOException {
+        if (in == null || out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        return memoryPPM(in, out, threads,
+                         image -> ParallelFilter.apply(image, filter, threads, cutoff), stats);
+    }
+
+    /**
+     * Reads the whole image, transforms it in memory and writes it,
+     * measuring each stage
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param threads number of threads to decode an ASCII input file with
+     * @param transform transforms the image in place
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     */
+    private static boolean memoryPPM(PpmReader in, PpmWriter out, int threads,
+                                     Consumer<PixelBuffer> transform, Stats stats)
+        throws IOException {
+        long pixels = (long) in.getCols() * in.getRows();
+        long read = in.getBytesRead();
+        stats.begin();
+        PixelBuffer image = in.readImage(threads);
+        stats.end(Stats.READ, in.getBytesRead() - read, image == null ? 0 : pixels);
+        if (image == null) {
+            return false;
+        }
+        stats.begin();
+        transform.accept(image);
+        stats.end(Stats.FILTER, image.getData().length, pixels);
+        long written = out.getBytesWritten();
+        stats.begin();
+        out.writeImage(image);
+        stats.end(Stats.WRITE, out.getBytesWritten() - written, pixels);
+        return true;
+    }
+
+    /**
+     * Checks if the Vector API kernels can be used; they need the JVM to
+     * run with --add-modules jdk.incubator.vector and can be turned off
+     * with -Dimageeditor.simd=false
+     * @return true if the vector kernels can be used
+     */
+    private static boolean simdAvailable() {
+        if (!Boolean.parseBoolean(System.getProperty("imageeditor.simd", "true"))) {
+            return false;
+        }
+        try {
+            Class.forName("jdk.incubator.vector.ByteVector");
+            VectorKernels.invert(new byte[NUM_VAL_RGB], 0, NUM_VAL_RGB);
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the filters use the Vector API kernels
+     * @return true if the vector kernels are in use
+     */
+    static boolean isSimd() {
+        return SIMD;
+    }
+
+    /**
+     * Returns the filter for a transformation flag
+     * @param flag the transformation, -I, -H or -G
+     * @return filter for the flag
+     * @throws IllegalArgumentException if the flag is null or unknown
+     */
+    static SampleFilter filterFor(String flag) {
+        if (flag == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        switch (flag) {
+            case "-I":
+                return ImageEditor::invert;
+            case "-H":
+                return ImageEditor::highContrast;
+            case "-G":
+                return ImageEditor::greyScale;
+            default:
+                throw new IllegalArgumentException("Invalid flag");
         }
     }
 }
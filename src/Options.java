@@ -0,0 +1,494 @@
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Options holds the parsed ImageEditor command line
+ * @author Amelia Saldino
+ */
+public class Options {
+    /** Usage message printed for invalid command lines */
+    public static final String USAGE =
+        "Usage: java -cp bin ImageEditor {-I|-H|-G|-blur|-gauss|-sharpen|-edge}..."
+        + " [-P3|-P6|-P2|-P5] [-luma 601|709] [-adaptive global|channel] [-threads n] [-cutoff pixels]"
+        + " [-tiled] [-pipelined] [-budget bytes[k|m|g]] [-memory bytes[k|m|g]] [-dryrun]"
+        + " [-cache dir] [-cachesize bytes[k|m|g]] [--stats]"
+        + " [-thumbnail factor]... [-pyramid levels] [-region x,y,w,h]"
+        + " infile outfile"
+        + ", or java -cp bin ImageEditor -S [-threads n] [-cutoff pixels] [--stats] infile";
+
+    /** Number of file names at the end of the command line */
+    private static final int NUM_FILES = 2;
+
+    /** Transformations to apply in order, per-pixel or neighborhood flags */
+    private final List<String> flags = new ArrayList<>();
+
+    /** Output encoding, P3, P6, P2 or P5, null to match the input */
+    private String outputFormat;
+
+    /** Luma weights for greyscale, 601 or 709, null for a plain average */
+    private String luma;
+
+    /** How -H picks its thresholds, global or channel, null for the fixed midpoint */
+    private String adaptive;
+
+    /** Number of threads to filter with, 0 for one per processor */
+    private int threads;
+
+    /** Number of pixels below which filtering stays sequential */
+    private int cutoff = ParallelFilter.DEFAULT_CUTOFF;
+
+    /** Whether to process the image tile by tile through a scratch file */
+    private boolean tiled;
+
+    /** Whether reading, filtering and writing run at the same time on separate threads */
+    private boolean pipelined;
+
+    /** Memory budget for one tile, in bytes */
+    private long budget = TiledProcessor.DEFAULT_BUDGET;
+
+    /** Memory budget the plan must fit, in bytes, 0 for the free heap */
+    private long memory;
+
+    /** Number of jobs running at once that share the processors and the memory budget */
+    private int jobs = 1;
+
+    /** Whether to print the plan without transforming the image */
+    private boolean dryRun;
+
+    /** Directory of the result cache, null for no cache */
+    private String cacheDir;
+
+    /** Size cap of the result cache, in bytes */
+    private long cacheSize = ResultCache.DEFAULT_SIZE;
+
+    /** Whether to print per-stage measurements */
+    private boolean stats;
+
+    /** Whether to print the statistics of each channel instead of writing an image */
+    private boolean statsOnly;
+
+    /** Rectangle the transformations are limited to, null for the whole image */
+    private Region region;
+
+    /** Factors of the scaled copies written next to the output file */
+    private final List<Integer> scales = new ArrayList<>();
+
+    /** Name of the input file */
+    private String infile;
+
+    /** Name of the output file */
+    private String outfile;
+
+    /**
+     * Parses the command line
+     * @param args Command line arguments
+     * @return the parsed options, null if the command line is invalid
+     */
+    public static Options parse(String[] args) {
+        if (args == null) {
+            return null;
+        }
+        Options options = new Options();
+        if (args.length < NUM_FILES) {
+            return null;
+        }
+        int last = args.length - 1;
+        String infile = null;
+        for (int i = 0; i < last; i++) {
+            String arg = args[i];
+            if (arg.equals("-I") || arg.equals("-H") || arg.equals("-G")
+                || Convolution.isFlag(arg)) {
+                options.flags.add(arg);
+            }
+            else if (arg.equals("-P3") || arg.equals("-P6")
+                     || arg.equals("-P2") || arg.equals("-P5")) {
+                if (options.outputFormat != null) {
+                    return null;
+                }
+                options.outputFormat = arg.substring(1);
+            }
+            else if (arg.equals("-tiled")) {
+                options.tiled = true;
+            }
+            else if (arg.equals("-pipelined")) {
+                options.pipelined = true;
+            }
+            else if (arg.equals("--stats") || arg.equals("-stats")) {
+                options.stats = true;
+            }
+            else if (arg.equals("-S")) {
+                options.statsOnly = true;
+            }
+            else if (arg.equals("-dryrun") || arg.equals("--dry-run")) {
+                options.dryRun = true;
+            }
+            else if (arg.equals("-budget") || arg.equals("-cachesize")
+                     || arg.equals("-memory")) {
+                if (i + 1 >= last) {
+                    return null;
+                }
+                long size = parseSize(args[++i]);
+                if (size <= 0) {
+                    return null;
+                }
+                if (arg.equals("-budget")) {
+                    options.budget = size;
+                }
+                else if (arg.equals("-memory")) {
+                    options.memory = size;
+                }
+                else {
+                    options.cacheSize = size;
+                }
+            }
+            else if (arg.equals("-luma")) {
+                if (i + 1 >= last || options.luma != null) {
+                    return null;
+                }
+                options.luma = args[++i];
+                if (!options.luma.equals("601") && !options.luma.equals("709")) {
+                    return null;
+                }
+            }
+            else if (arg.equals("-adaptive")) {
+                if (i + 1 >= last || options.adaptive != null) {
+                    return null;
+                }
+                options.adaptive = args[++i];
+                if (!options.adaptive.equals(AdaptiveContrast.GLOBAL)
+                    && !options.adaptive.equals(AdaptiveContrast.CHANNEL)) {
+                    return null;
+                }
+            }
+            else if (arg.equals("-region")) {
+                if (i + 1 >= last || options.region != null) {
+                    return null;
+                }
+                options.region = Region.parse(args[++i]);
+                if (options.region == null) {
+                    return null;
+                }
+            }
+            else if (arg.equals("-cache")) {
+                if (i + 1 >= last) {
+                    return null;
+                }
+                options.cacheDir = args[++i];
+            }
+            else if (arg.equals("-thumbnail") || arg.equals("-pyramid")) {
+                if (i + 1 >= last) {
+                    return null;
+                }
+                int value = parsePositive(args[++i]);
+                List<Integer> factors = new ArrayList<>();
+                if (arg.equals("-thumbnail")) {
+                    factors.add(value);
+                }
+                else if (value > 0 && 1L << value <= Downscaler.MAX_FACTOR) {
+                    for (int level = 1; level <= value; level++) {
+                        factors.add(1 << level);
+                    }
+                }
+                else {
+                    return null;
+                }
+                for (int factor : factors) {
+                    if (factor < 2 || factor > Downscaler.MAX_FACTOR
+                        || options.scales.contains(factor)) {
+                        return null;
+                    }
+                    options.scales.add(factor);
+                }
+            }
+            else if (arg.equals("-threads") || arg.equals("-cutoff")) {
+                if (i + 1 >= last) {
+                    return null;
+                }
+                int value = parsePositive(args[++i]);
+                if (value <= 0) {
+                    return null;
+                }
+                if (arg.equals("-threads")) {
+                    options.threads = value;
+                }
+                else {
+                    options.cutoff = value;
+                }
+            }
+            else if (i == last - 1) {
+                // The name before the output file; -S lines end with the input file alone
+                infile = arg;
+            }
+            else {
+                return null;
+            }
+        }
+        if (options.statsOnly) {
+            // Nothing is transformed or written, so only the threads and cutoff apply
+            if (!options.flags.isEmpty() || options.outputFormat != null || options.tiled
+                || options.pipelined || options.adaptive != null || options.region != null
+                || !options.scales.isEmpty() || options.dryRun || options.cacheDir != null
+                || infile != null) {
+                return null;
+            }
+            options.infile = args[last];
+            return options;
+        }
+        if (options.flags.isEmpty() || infile == null) {
+            return null;
+        }
+        if ((options.tiled || options.pipelined) && options.adaptive != null) {
+            // Thresholds need the whole image before the first row is written
+            return null;
+        }
+        if (options.tiled && options.pipelined) {
+            return null;
+        }
+        if (options.region != null && (options.tiled || options.pipelined
+                                       || options.adaptive != null || !options.scales.isEmpty())) {
+            // A region only reads and writes its own rows, which these whole-image modes can not
+            return null;
+        }
+        options.infile = infile;
+        options.outfile = args[last];
+        return options;
+    }
+
+    /**
+     * Resolves relative file and directory names against a directory, for
+     * command lines run somewhere other than where they were typed
+     * @param dir directory the names are relative to
+     */
+    public void resolve(String dir) {
+        Path base = Paths.get(dir);
+        infile = base.resolve(infile).toString();
+        if (outfile != null) {
+            outfile = base.resolve(outfile).toString();
+        }
+        if (cacheDir != null) {
+            cacheDir = base.resolve(cacheDir).toString();
+        }
+    }
+
+    /**
+     * Shares the processors and the memory budget with other jobs that run
+     * at the same time, as in a batch or a server
+     * @param jobs number of jobs running at once, this one included
+     * @throws IllegalArgumentException if jobs is not positive
+     */
+    public void setJobs(int jobs) {
+        if (jobs <= 0) {
+            throw new IllegalArgumentException("Invalid job count");
+        }
+        this.jobs = jobs;
+    }
+
+    /**
+     * Parses a positive integer option value
+     * @param value text of the value
+     * @return the value, -1 if it is not a positive integer
+     */
+    private static int parsePositive(String value) {
+        try {
+            int number = Integer.parseInt(value);
+            return number > 0 ? number : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses a size in bytes with an optional k, m or g suffix
+     * @param value text of the value
+     * @return the size in bytes, -1 if it is not a positive size
+     */
+    static long parseSize(String value) {
+        long unit = 1;
+        String lower = value.toLowerCase();
+        if (lower.endsWith("k")) {
+            unit = 1L << 10;
+        }
+        else if (lower.endsWith("m")) {
+            unit = 1L << 20;
+        }
+        else if (lower.endsWith("g")) {
+            unit = 1L << 30;
+        }
+        if (unit > 1) {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+        try {
+            long number = Long.parseLong(lower);
+            return number > 0 && number <= Long.MAX_VALUE / unit ? number * unit : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the transformations to apply
+     * @return flags in order, each -I, -H, -G, -blur, -gauss, -sharpen or -edge
+     */
+    public List<String> getFlags() {
+        return Collections.unmodifiableList(flags);
+    }
+
+    /**
+     * Returns the output encoding
+     * @param inputFormat format of the input file
+     * @return P3, P6, P2 or P5, the input format if none was given
+     */
+    public String getOutputFormat(String inputFormat) {
+        return outputFormat == null ? inputFormat : outputFormat;
+    }
+
+    /**
+     * Returns the luma weights for greyscale
+     * @return 601 or 709, null for a plain average
+     */
+    public String getLuma() {
+        return luma;
+    }
+
+    /**
+     * Returns how -H picks its thresholds
+     * @return global or channel for Otsu thresholds, null for the fixed midpoint
+     */
+    public String getAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Returns the number of threads to filter with
+     * @return number of threads given by -threads, otherwise this job's
+     * share of the processors
+     */
+    public int getThreads() {
+        return threads == 0 ? Math.max(1, Runtime.getRuntime().availableProcessors() / jobs)
+                            : threads;
+    }
+
+    /**
+     * Checks if the number of threads was given by -threads
+     * @return true if -threads was given
+     */
+    public boolean isThreadCountSet() {
+        return threads != 0;
+    }
+
+    /**
+     * Returns the number of pixels below which filtering stays sequential
+     * @return cutoff in pixels
+     */
+    public int getCutoff() {
+        return cutoff;
+    }
+
+    /**
+     * Checks if the image is processed tile by tile
+     * @return true for tiled processing
+     */
+    public boolean isTiled() {
+        return tiled;
+    }
+
+    /**
+     * Checks if reading, filtering and writing run at the same time
+     * @return true for pipelined processing
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Checks if per-stage measurements are printed
+     * @return true to print them after the transformation
+     */
+    public boolean isStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the memory budget for one tile
+     * @return budget in bytes
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns this job's share of the memory budget, which the plan must fit
+     * @return budget in bytes, from -memory or else the heap not in use,
+     * divided among the jobs running at once
+     */
+    public long getMemory() {
+        return (memory > 0 ? memory : Plan.availableMemory()) / jobs;
+    }
+
+    /**
+     * Checks if the statistics of each channel are printed instead of
+     * transforming the image
+     * @return true for statistics only, with no output file
+     */
+    public boolean isStatsOnly() {
+        return statsOnly;
+    }
+
+    /**
+     * Checks if only the plan is printed
+     * @return true to print the plan without reading samples or writing output
+     */
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    /**
+     * Returns the directory of the result cache
+     * @return cache directory, null for no cache
+     */
+    public String getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Returns the size cap of the result cache
+     * @return size cap in bytes
+     */
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Returns the rectangle the transformations are limited to
+     * @return the region, null for the whole image
+     */
+    public Region getRegion() {
+        return region;
+    }
+
+    /**
+     * Returns the factors of the scaled copies written next to the output
+     * file, each factor times smaller across and down
+     * @return factors in order, empty for none
+     */
+    public List<Integer> getScales() {
+        return Collections.unmodifiableList(scales);
+    }
+
+    /**
+     * Returns the name of the input file
+     * @return input file name
+     */
+    public String getInfile() {
+        return infile;
+    }
+
+    /**
+     * Returns the name of the output file
+     * @return output file name, null for statistics only
+     */
+    public String getOutfile() {
+        return outfile;
+    }
+}
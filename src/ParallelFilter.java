@@ -0,0 +1,94 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelFilter runs a SampleFilter over an image on a fork-join pool
+ * The image is split into bands of whole rows, so the result is
+ * byte-identical to running the filter over the image in one go
+ * @author Amelia Saldino
+ */
+public class ParallelFilter extends RecursiveAction {
+    /** Default number of pixels below which a band is filtered sequentially */
+    public static final int DEFAULT_CUTOFF = 1 << 16;
+
+    /** Serial version UID */
+    private static final long serialVersionUID = 1L;
+
+    /** Image being filtered */
+    private final PixelBuffer image;
+
+    /** Filter to apply */
+    private final SampleFilter filter;
+
+    /** Number of pixels below which a band is filtered sequentially */
+    private final int cutoff;
+
+    /** First row of the band */
+    private final int fromRow;
+
+    /** Row just past the end of the band */
+    private final int toRow;
+
+    /**
+     * Creates a task for a band of rows
+     * @param image image being filtered
+     * @param filter filter to apply
+     * @param cutoff number of pixels below which a band is filtered sequentially
+     * @param fromRow first row of the band
+     * @param toRow row just past the end of the band
+     */
+    private ParallelFilter(PixelBuffer image, SampleFilter filter, int cutoff,
+                           int fromRow, int toRow) {
+        this.image = image;
+        this.filter = filter;
+        this.cutoff = cutoff;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+    }
+
+    /**
+     * Filters an image in place using several threads
+     * @param image image to filter
+     * @param filter filter to apply
+     * @param threads number of threads, 1 to filter sequentially
+     * @param cutoff number of pixels below which the image or a band
+     * of it is filtered sequentially
+     * @throws IllegalArgumentException if image or filter is null,
+     * or threads or cutoff is not positive
+     */
+    public static void apply(PixelBuffer image, SampleFilter filter, int threads, int cutoff) {
+        if (image == null || filter == null) {
+            throw new IllegalArgumentException("Null image");
+        }
+        if (threads <= 0 || cutoff <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        ParallelFilter task = new ParallelFilter(image, filter, cutoff, 0, image.getHeight());
+        if (threads == 1 || (long) image.getWidth() * image.getHeight() <= cutoff) {
+            task.compute();
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(task);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Filters the band, splitting it in half while it is above the cutoff
+     */
+    @Override
+    protected void compute() {
+        int rows = toRow - fromRow;
+        if (rows <= 1 || (long) rows * image.getWidth() <= cutoff || getPool() == null) {
+            filter.apply(image.getData(), image.getOffset(fromRow), image.getOffset(toRow));
+            return;
+        }
+        int middle = fromRow + rows / 2;
+        invokeAll(new ParallelFilter(image, filter, cutoff, fromRow, middle),
+                  new ParallelFilter(image, filter, cutoff, middle, toRow));
+    }
+}
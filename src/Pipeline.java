@@ -0,0 +1,276 @@
+import java.util.*;
+
+/**
+ * Pipeline runs a sequence of transformations in a single pass
+ * Per-channel transformations are compiled into 256 entry lookup tables
+ * and redundant ones are dropped before any pixels are touched,
+ * so any sequence becomes at most one table, a greyscale, and another table
+ * @author Amelia Saldino
+ */
+public class Pipeline implements SampleFilter {
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Number of entries in a lookup table */
+    private static final int TABLE_SIZE = 256;
+
+    /** Rec. 601 luma weights of red, green and blue, in 16 bit fixed point */
+    private static final int[] REC_601 = {19595, 38470, 7471};
+
+    /** Rec. 709 luma weights of red, green and blue, in 16 bit fixed point */
+    private static final int[] REC_709 = {13933, 46871, 4732};
+
+    /** Bits after the binary point of the luma weights */
+    static final int WEIGHT_BITS = 16;
+
+    /** Half of one in luma fixed point, added to round to nearest */
+    private static final int WEIGHT_HALF = 1 << (WEIGHT_BITS - 1);
+
+    /** Table applied to every sample before greyscale, null if identity */
+    private final byte[] before;
+
+    /** Whether the samples of each pixel are averaged */
+    private final boolean grey;
+
+    /** Fixed point luma weights of red, green and blue, null for a plain average */
+    private final int[] weights;
+
+    /** Table applied to the greyscale average, null if identity */
+    private final byte[] after;
+
+    /** Transformation flags the pipeline was compiled from */
+    private final List<String> flags;
+
+    /** Kernel that computes the before table directly, null if none does */
+    private final SampleFilter kernel;
+
+    /**
+     * Creates a compiled pipeline
+     * @param before table applied before greyscale, null if identity
+     * @param grey whether the samples of each pixel are averaged
+     * @param weights luma weights for greyscale, null for a plain average
+     * @param after table applied after greyscale, null if identity
+     * @param flags transformation flags the pipeline was compiled from
+     */
+    private Pipeline(byte[] before, boolean grey, int[] weights, byte[] after,
+                     List<String> flags) {
+        this.before = before;
+        this.grey = grey;
+        this.weights = weights;
+        this.after = after;
+        this.flags = flags;
+        this.kernel = before == null || grey ? null : kernelFor(before);
+    }
+
+    /**
+     * Compiles a sequence of transformation flags
+     * @param flags transformations in the order to apply them, each -I, -H or -G
+     * @return the compiled pipeline
+     * @throws IllegalArgumentException if flags is null or holds an unknown flag
+     */
+    public static Pipeline compile(List<String> flags) {
+        return compile(flags, null);
+    }
+
+    /**
+     * Compiles a sequence of transformation flags, with greyscale computed
+     * as weighted luma instead of a plain average
+     * @param flags transformations in the order to apply them, each -I, -H or -G
+     * @param luma 601 or 709 for Rec. 601 or Rec. 709 weights, null for an average
+     * @return the compiled pipeline
+     * @throws IllegalArgumentException if flags is null or holds an unknown
+     * flag, or luma is unknown
+     */
+    public static Pipeline compile(List<String> flags, String luma) {
+        if (flags == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        int[] weights = weights(luma);
+        byte[] before = identity();
+        byte[] after = null;
+        for (String flag : flags) {
+            SampleFilter filter = ImageEditor.filterFor(flag);
+            if (flag.equals("-G")) {
+                if (after == null) {
+                    after = identity();
+                }
+                continue;
+            }
+            byte[] table = after == null ? before : after;
+            filter.apply(table, 0, TABLE_SIZE);
+        }
+        boolean grey = after != null;
+        return new Pipeline(isIdentity(before) ? null : before, grey, grey ? weights : null,
+                            grey && !isIdentity(after) ? after : null,
+                            Collections.unmodifiableList(new ArrayList<>(flags)));
+    }
+
+    /**
+     * Compiles a single transformation flag
+     * @param flag the transformation, -I, -H or -G
+     * @return the compiled pipeline
+     * @throws IllegalArgumentException if flag is null or unknown
+     */
+    public static Pipeline compile(String flag) {
+        if (flag == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        return compile(Collections.singletonList(flag));
+    }
+
+    /**
+     * Transforms a range of packed samples in one pass
+     * @param data packed samples
+     * @param from index of the first sample, the red sample of a pixel
+     * @param to index just past the last sample, the blue sample of a pixel
+     */
+    @Override
+    public void apply(byte[] data, int from, int to) {
+        if (!grey) {
+            if (kernel != null) {
+                kernel.apply(data, from, to);
+            }
+            else if (before != null) {
+                lookup(before, data, from, to);
+            }
+            return;
+        }
+        for (int i = from; i < to; i += NUM_VAL_RGB) {
+            int red = data[i] & 0xFF;
+            int green = data[i + 1] & 0xFF;
+            int blue = data[i + 2] & 0xFF;
+            if (before != null) {
+                red = before[red] & 0xFF;
+                green = before[green] & 0xFF;
+                blue = before[blue] & 0xFF;
+            }
+            byte average;
+            if (weights == null) {
+                average = (byte) ((red + green + blue) / 3);
+            }
+            else {
+                average = (byte) ((weights[0] * red + weights[1] * green + weights[2] * blue
+                                   + WEIGHT_HALF) >> WEIGHT_BITS);
+            }
+            if (after != null) {
+                average = after[average & 0xFF];
+            }
+            data[i] = average;
+            data[i + 1] = average;
+            data[i + 2] = average;
+        }
+    }
+
+    /**
+     * Looks up luma weights
+     * @param luma 601 or 709 for Rec. 601 or Rec. 709 weights, null for an average
+     * @return fixed point weights of red, green and blue summing to one,
+     * null for an average
+     * @throws IllegalArgumentException if luma is unknown
+     */
+    static int[] weights(String luma) {
+        if ("601".equals(luma)) {
+            return REC_601;
+        }
+        if ("709".equals(luma)) {
+            return REC_709;
+        }
+        if (luma != null) {
+            throw new IllegalArgumentException("Invalid luma");
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the pipeline leaves every sample unchanged
+     * @return true if nothing needs to be applied
+     */
+    public boolean isIdentity() {
+        return before == null && !grey;
+    }
+
+    /**
+     * Returns the transformation flags the pipeline was compiled from
+     * @return flags in order
+     */
+    public List<String> getFlags() {
+        return flags;
+    }
+
+    /**
+     * Describes the compiled stages
+     * @return description such as "table, greyscale, table"
+     */
+    @Override
+    public String toString() {
+        List<String> stages = new ArrayList<>();
+        if (before != null) {
+            stages.add("table");
+        }
+        if (grey) {
+            stages.add(weights == null ? "greyscale" : "luma");
+        }
+        if (after != null) {
+            stages.add("table");
+        }
+        return stages.isEmpty() ? "identity" : String.join(", ", stages);
+    }
+
+    /**
+     * Replaces every sample in a range by its table entry
+     * @param table lookup table
+     * @param data packed samples
+     * @param from index of the first sample
+     * @param to index just past the last sample
+     */
+    private static void lookup(byte[] table, byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            data[i] = table[data[i] & 0xFF];
+        }
+    }
+
+    /**
+     * Finds the kernel whose table matches a compiled table, so a sequence
+     * that reduces to a single invert or high contrast runs the kernel,
+     * which can use SIMD, instead of a table lookup per sample
+     * @param table lookup table
+     * @return the matching kernel, null if none matches
+     */
+    private static SampleFilter kernelFor(byte[] table) {
+        for (String flag : new String[] {"-I", "-H"}) {
+            SampleFilter filter = ImageEditor.filterFor(flag);
+            byte[] candidate = identity();
+            filter.apply(candidate, 0, TABLE_SIZE);
+            if (Arrays.equals(candidate, table)) {
+                return filter;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a table that maps every value to itself
+     * @return identity table
+     */
+    private static byte[] identity() {
+        byte[] table = new byte[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            table[i] = (byte) i;
+        }
+        return table;
+    }
+
+    /**
+     * Checks if a table maps every value to itself
+     * @param table lookup table
+     * @return true if the table is the identity
+     */
+    private static boolean isIdentity(byte[] table) {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            if (table[i] != (byte) i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,317 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * PipelinedProcessor overlaps reading, filtering and writing an image
+ * A reader thread decodes blocks of rows, worker threads filter them and
+ * the calling thread writes them back in order. Blocks pass through
+ * bounded queues and their buffers are recycled, so memory use stays at a
+ * fixed number of blocks however large the image is
+ * @author Amelia Saldino
+ */
+public class PipelinedProcessor {
+    /** Target size of one block of rows, in bytes */
+    static final int BLOCK_BYTES = 1 << 20;
+
+    /** Marker a stage sends when it has no more blocks */
+    private static final Block END = new Block(-1, null, 0);
+
+    /** Constructor kept private, the class only has static methods */
+    private PipelinedProcessor() {
+    }
+
+    /**
+     * Reads, transforms and writes the image with reading, filtering and
+     * writing running at the same time, measuring each stage
+     * The filter stage's time adds up the time of every worker
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @param workers number of filter threads
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if the input file can not be read or output written
+     * @throws IllegalArgumentException if the reader, writer, filter or stats
+     * is null, or workers is not positive
+     */
+    public static boolean process(PpmReader in, PpmWriter out, SampleFilter filter, int workers,
+                                  Stats stats) throws IOException {
+        if (in == null || out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        if (workers <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        return new Run(in, out, filter, workers, stats.isMeasuring()).run(stats);
+    }
+
+    /**
+     * Block is a run of rows and its position in the image
+     */
+    private static final class Block {
+        /** Position of the block, counting from 0 */
+        private final int index;
+
+        /** Packed samples of the rows */
+        private final byte[] data;
+
+        /** Number of rows in the block */
+        private final int rows;
+
+        /**
+         * Creates a block
+         * @param index position of the block
+         * @param data packed samples of the rows
+         * @param rows number of rows in the block
+         */
+        private Block(int index, byte[] data, int rows) {
+            this.index = index;
+            this.data = data;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Run holds the queues and threads of one image
+     */
+    private static final class Run {
+        /** Reader for the input file */
+        private final PpmReader in;
+
+        /** Writer for the output file */
+        private final PpmWriter out;
+
+        /** The transformation to apply */
+        private final SampleFilter filter;
+
+        /** Number of filter threads */
+        private final int workers;
+
+        /** Number of samples in one row */
+        private final int rowLength;
+
+        /** Number of rows in a full block */
+        private final int blockRows;
+
+        /** Buffers free for the reader to fill */
+        private final BlockingQueue<byte[]> free;
+
+        /** Blocks read and waiting for a worker */
+        private final BlockingQueue<Block> read;
+
+        /** Blocks filtered and waiting for the writer */
+        private final BlockingQueue<Block> filtered;
+
+        /** Measurements of the reader thread */
+        private final Stats readStats;
+
+        /** Measurements of each worker thread */
+        private final List<Stats> workerStats = new ArrayList<>();
+
+        /** First failure of the reader or a worker, null if none */
+        private volatile Throwable failure;
+
+        /** Whether the reader found an invalid row */
+        private volatile boolean invalid;
+
+        /**
+         * Sets up the queues and buffers
+         * @param in reader for the input file
+         * @param out writer for the output file
+         * @param filter the transformation to apply
+         * @param workers number of filter threads
+         * @param measuring whether the reader and workers time their steps
+         */
+        private Run(PpmReader in, PpmWriter out, SampleFilter filter, int workers,
+                    boolean measuring) {
+            this.in = in;
+            this.out = out;
+            this.filter = filter;
+            this.workers = workers;
+            this.readStats = new Stats(measuring);
+            this.rowLength = in.getRowLength();
+            this.blockRows = Math.max(1, BLOCK_BYTES / Math.max(1, rowLength));
+            int buffers = 2 * workers + 2;
+            free = new ArrayBlockingQueue<>(buffers);
+            read = new ArrayBlockingQueue<>(buffers + workers);
+            filtered = new ArrayBlockingQueue<>(buffers + workers);
+            for (int i = 0; i < buffers; i++) {
+                free.add(new byte[blockRows * rowLength]);
+            }
+        }
+
+        /**
+         * Starts the reader and workers and writes blocks in order as they arrive
+         * @param stats receives the measurements of every stage
+         * @return true if every row was valid, false otherwise
+         * @throws IOException if the input file can not be read or output written
+         */
+        private boolean run(Stats stats) throws IOException {
+            List<Thread> threads = new ArrayList<>();
+            threads.add(thread(this::readBlocks, "PipelinedProcessor reader"));
+            for (int i = 0; i < workers; i++) {
+                Stats worker = new Stats(readStats.isMeasuring());
+                workerStats.add(worker);
+                threads.add(thread(() -> filterBlocks(worker), "PipelinedProcessor worker"));
+            }
+            threads.forEach(Thread::start);
+            boolean finished = false;
+            try {
+                writeBlocks(stats);
+                finished = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing");
+            }
+            finally {
+                if (!finished || failure != null) {
+                    threads.forEach(Thread::interrupt);
+                }
+                for (Thread thread : threads) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            stats.add(readStats);
+            workerStats.forEach(stats::add);
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            return !invalid;
+        }
+
+        /**
+         * Decodes blocks of rows into free buffers until the image ends,
+         * then tells every worker to stop
+         */
+        private void readBlocks() {
+            try {
+                int total = in.getRows();
+                int cols = in.getCols();
+                for (int first = 0, index = 0; first < total; first += blockRows, index++) {
+                    byte[] buffer = free.take();
+                    int rows = Math.min(blockRows, total - first);
+                    long start = in.getBytesRead();
+                    readStats.begin();
+                    boolean valid = true;
+                    for (int row = 0; row < rows && valid; row++) {
+                        valid = in.readRow(buffer, row * rowLength);
+                    }
+                    readStats.end(Stats.READ, in.getBytesRead() - start,
+                                  valid ? (long) rows * cols : 0);
+                    if (!valid) {
+                        invalid = true;
+                        break;
+                    }
+                    read.put(new Block(index, buffer, rows));
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                fail(e);
+            } catch (InterruptedException e) {
+                // The writer stopped; nothing more will be taken
+            }
+            finally {
+                for (int i = 0; i < workers; i++) {
+                    read.offer(END);
+                }
+            }
+        }
+
+        /**
+         * Filters blocks until the reader has no more
+         * @param stats receives this worker's measurements
+         */
+        private void filterBlocks(Stats stats) {
+            try {
+                for (Block block = read.take(); block != END; block = read.take()) {
+                    int length = block.rows * rowLength;
+                    stats.begin();
+                    filter.apply(block.data, 0, length);
+                    stats.end(Stats.FILTER, length, (long) block.rows * in.getCols());
+                    filtered.put(block);
+                }
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            } catch (InterruptedException e) {
+                // The writer stopped; nothing more will be taken
+            }
+            finally {
+                filtered.offer(END);
+            }
+        }
+
+        /**
+         * Writes filtered blocks in image order, returning each buffer to
+         * the reader, until every worker has stopped or one stage failed
+         * @param stats receives the write measurements
+         * @throws IOException if the output can not be written
+         * @throws InterruptedException if interrupted while waiting for a block
+         */
+        private void writeBlocks(Stats stats) throws IOException, InterruptedException {
+            Map<Integer, Block> waiting = new HashMap<>();
+            int next = 0;
+            int stopped = 0;
+            while (stopped < workers) {
+                Block block = filtered.take();
+                if (failure != null) {
+                    // A lost block would never arrive, so stop instead of waiting for it
+                    return;
+                }
+                if (block == END) {
+                    stopped++;
+                    continue;
+                }
+                waiting.put(block.index, block);
+                for (block = waiting.remove(next); block != null; block = waiting.remove(next)) {
+                    long written = out.getBytesWritten();
+                    stats.begin();
+                    for (int row = 0; row < block.rows; row++) {
+                        out.writeRow(block.data, row * rowLength);
+                    }
+                    stats.end(Stats.WRITE, out.getBytesWritten() - written,
+                              (long) block.rows * in.getCols());
+                    free.put(block.data);
+                    next++;
+                }
+            }
+        }
+
+        /**
+         * Records the first failure of the reader or a worker
+         * @param e the failure
+         */
+        private synchronized void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        /**
+         * Creates a daemon thread, so a stuck stage never keeps the JVM running
+         * @param task what the thread runs
+         * @param name name of the thread
+         * @return the thread, not started
+         */
+        private static Thread thread(Runnable task, String name) {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * PixelBuffer holds an RGB image packed into one byte array
+ * Each sample is one unsigned byte, rows are stride bytes apart
+ * @author Amelia Saldino
+ */
+public class PixelBuffer {
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Largest sample value a byte sample can hold */
+    private static final int MAX_COLOR_VALUE = 255;
+
+    /** Packed samples, row after row */
+    private final byte[] data;
+
+    /** Number of pixel columns */
+    private final int width;
+
+    /** Number of pixel rows */
+    private final int height;
+
+    /** Number of bytes from the start of one row to the next */
+    private final int stride;
+
+    /**
+     * Creates a black image
+     * @param width number of pixel columns
+     * @param height number of pixel rows
+     * @throws IllegalArgumentException if width or height is not positive
+     * or the image does not fit in one array
+     */
+    public PixelBuffer(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size");
+        }
+        long size = (long) width * height * NUM_VAL_RGB;
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Image too large");
+        }
+        this.width = width;
+        this.height = height;
+        this.stride = width * NUM_VAL_RGB;
+        this.data = new byte[(int) size];
+    }
+
+    /**
+     * Packs a 2D array of pixel values
+     * @param pixels The 2D array of pixel values, each 0 to 255
+     * @return packed copy of the pixels
+     * @throws IllegalArgumentException if the pixels array is null, invalid,
+     * or jagged, or a value is outside 0 to 255
+     */
+    public static PixelBuffer fromArray(int[][] pixels) {
+        checkPixels(pixels);
+        PixelBuffer image = new PixelBuffer(pixels[0].length / NUM_VAL_RGB, pixels.length);
+        for (int i = 0; i < pixels.length; i++) {
+            int offset = i * image.stride;
+            for (int j = 0; j < pixels[i].length; j++) {
+                if (pixels[i][j] < 0 || pixels[i][j] > MAX_COLOR_VALUE) {
+                    throw new IllegalArgumentException("Invalid array");
+                }
+                image.data[offset + j] = (byte) pixels[i][j];
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Unpacks the image into a new 2D array of pixel values
+     * @return The 2D array of pixel values
+     */
+    public int[][] toArray() {
+        int[][] pixels = new int[height][stride];
+        copyTo(pixels);
+        return pixels;
+    }
+
+    /**
+     * Unpacks the image into an existing 2D array of the same size
+     * @param pixels The 2D array of pixel values to fill
+     * @throws IllegalArgumentException if the array is a different size
+     */
+    public void copyTo(int[][] pixels) {
+        if (pixels == null || pixels.length != height) {
+            throw new IllegalArgumentException("Invalid array");
+        }
+        for (int i = 0; i < height; i++) {
+            if (pixels[i].length != stride) {
+                throw new IllegalArgumentException("Invalid array");
+            }
+            int offset = i * stride;
+            for (int j = 0; j < stride; j++) {
+                pixels[i][j] = data[offset + j] & MAX_COLOR_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Checks that a 2D array of pixel values is RGB and not jagged
+     * @param pixels The 2D array of pixel values
+     * @throws IllegalArgumentException if the pixels array is null, invalid, or jagged
+     */
+    public static void checkPixels(int[][] pixels) {
+        if(pixels == null) {
+            throw new IllegalArgumentException("Null array");
+        }
+        if(pixels.length > 0 && pixels[0].length % NUM_VAL_RGB != 0) {
+            throw new IllegalArgumentException("Invalid array");
+        }
+        for(int i = 0; i < pixels.length; ++i) {
+            if(pixels[0].length != pixels[i].length) {
+                throw new IllegalArgumentException("Jagged array");
+            }
+        }
+    }
+
+    /**
+     * Inverts the image in place
+     */
+    public void invert() {
+        ImageEditor.invert(data, 0, data.length);
+    }
+
+    /**
+     * Converts the image to high contrast in place
+     */
+    public void highContrast() {
+        ImageEditor.highContrast(data, 0, data.length);
+    }
+
+    /**
+     * Converts the image to greyscale in place
+     */
+    public void greyScale() {
+        ImageEditor.greyScale(data, 0, data.length);
+    }
+
+    /**
+     * Returns the sample at a pixel
+     * @param x pixel column
+     * @param y pixel row
+     * @param channel 0 for red, 1 for green, 2 for blue
+     * @return sample value, 0 to 255
+     */
+    public int get(int x, int y, int channel) {
+        return data[y * stride + x * NUM_VAL_RGB + channel] & MAX_COLOR_VALUE;
+    }
+
+    /**
+     * Sets the sample at a pixel
+     * @param x pixel column
+     * @param y pixel row
+     * @param channel 0 for red, 1 for green, 2 for blue
+     * @param value sample value, 0 to 255
+     */
+    public void set(int x, int y, int channel, int value) {
+        data[y * stride + x * NUM_VAL_RGB + channel] = (byte) value;
+    }
+
+    /**
+     * Returns the packed samples, shared with this image
+     * @return packed samples
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the offset of the first sample of a row
+     * @param row pixel row
+     * @return offset into the packed samples
+     */
+    public int getOffset(int row) {
+        return row * stride;
+    }
+
+    /**
+     * Returns the number of pixel columns
+     * @return width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of pixel rows
+     * @return height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of bytes from the start of one row to the next
+     * @return stride
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Returns the number of samples in one row
+     * @return width * 3
+     */
+    public int getRowLength() {
+        return width * NUM_VAL_RGB;
+    }
+}
@@ -0,0 +1,223 @@
+import java.util.*;
+
+/**
+ * Plan is the strategy chosen to transform one image and its estimated peak memory
+ * The planner looks at the header, the transformations, the threads and
+ * the memory budget. Several threads filter the whole image in memory when
+ * it fits. An image that does not fit goes through in pipelined blocks when
+ * the chain is per-pixel and there are threads for it, and out of core in
+ * tiles when the chain has neighborhood filters. Otherwise rows stream
+ * through, which holds the least. A region that can not be patched is
+ * filtered in memory when the image fits and streams its rows when it does
+ * not. Adaptive thresholds need the whole image, so their plan can go over
+ * the budget, and -pipelined and -tiled choose their mode themselves
+ * @author Amelia Saldino
+ */
+public class Plan {
+    /** Mode that transforms one row at a time as it is read */
+    public static final String STREAM = "streaming rows";
+
+    /** Mode that reads the whole image before transforming it */
+    public static final String MEMORY = "in memory";
+
+    /** Mode that reads, filters and writes blocks of rows at the same time */
+    public static final String PIPELINED = "pipelined blocks";
+
+    /** Mode that decodes into a scratch file and transforms it tile by tile */
+    public static final String TILED = "out-of-core tiles";
+
+    /** Mode that transforms a region of a P6 file in place */
+    public static final String PATCH = "patch in place";
+
+    /** Maximum color value of images held one byte per sample */
+    private static final int MAX_COLOR_VALUE = 255;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Bytes in a megabyte, for the description */
+    private static final double BYTES_PER_MEGABYTE = 1 << 20;
+
+    /** Bytes held by the reader and writer buffers in every mode */
+    private static final long IO_BYTES = PpmReader.BUFFER_SIZE + PpmWriter.BUFFER_SIZE;
+
+    /** Header line of the image, such as 640x480 P6 255 */
+    private final String image;
+
+    /** The chosen mode, one of the mode constants */
+    private final String mode;
+
+    /** Number of threads the mode uses */
+    private final int threads;
+
+    /** Estimated peak memory, in bytes */
+    private final long peakBytes;
+
+    /** Largest tile of a tiled plan, including context rows, in bytes */
+    private final long tileBytes;
+
+    /** Memory budget the plan was chosen for, in bytes */
+    private final long memory;
+
+    /**
+     * Creates a plan
+     * @param image header line of the image
+     * @param mode the chosen mode
+     * @param threads number of threads the mode uses
+     * @param peakBytes estimated peak memory in bytes
+     * @param tileBytes largest tile of a tiled plan in bytes, 0 for other modes
+     * @param memory memory budget in bytes
+     */
+    private Plan(String image, String mode, int threads, long peakBytes, long tileBytes,
+                 long memory) {
+        this.image = image;
+        this.mode = mode;
+        this.threads = threads;
+        this.peakBytes = peakBytes;
+        this.tileBytes = tileBytes;
+        this.memory = memory;
+    }
+
+    /**
+     * Chooses how to transform an image
+     * @param options parsed command line, giving the threads, memory budget
+     * and any mode asked for
+     * @param format format of the input file
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @param maxColorValue largest sample value
+     * @param chain the transformations to apply
+     * @param patchable whether a region can be patched in place in the output file
+     * @return the plan
+     * @throws IllegalArgumentException if options or chain is null
+     */
+    public static Plan choose(Options options, String format, int cols, int rows,
+                              int maxColorValue, FilterChain chain, boolean patchable) {
+        if (options == null) {
+            throw new IllegalArgumentException("Null options");
+        }
+        if (chain == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        String image = cols + "x" + rows + " " + format + " " + maxColorValue;
+        long memory = options.getMemory();
+        int threads = options.getThreads();
+        long rowLength = (long) cols * NUM_VAL_RGB;
+        long imageBytes = rowLength * rows;
+        boolean pointwise = chain.asPipeline() != null;
+        // A convolution filters each band into a copy before writing it back
+        int copies = pointwise ? 1 : 2;
+
+        if (maxColorValue != MAX_COLOR_VALUE) {
+            // A char row, its encoded bytes in the reader and writer, and two tables
+            long peak = rowLength * 2 * Character.BYTES
+                        + 2L * (maxColorValue + 1) * Character.BYTES + IO_BYTES;
+            return new Plan(image, STREAM, 1, peak, 0, memory);
+        }
+        Region region = options.getRegion();
+        if (region != null && patchable) {
+            return new Plan(image, PATCH, 1,
+                            copies * region.getBandBytes(cols, rows, chain.getHalo()), 0, memory);
+        }
+        long memoryPeak = copies * imageBytes + IO_BYTES;
+        long streamPeak = 2 * rowLength + chain.getStreamBytes(rowLength) + IO_BYTES;
+        if (region != null && memoryPeak > memory) {
+            // Input rows are held until their transformed rows come out
+            return new Plan(image, STREAM, 1,
+                            streamPeak + (chain.getHalo() + 2L) * rowLength, 0, memory);
+        }
+        if (region != null || options.getAdaptive() != null) {
+            return new Plan(image, MEMORY, threads, memoryPeak, 0, memory);
+        }
+        long pipelinedPeak = (2L * threads + 2) * Math.max(PipelinedProcessor.BLOCK_BYTES,
+                                                           rowLength) + IO_BYTES;
+        if (options.isPipelined() && pointwise) {
+            return new Plan(image, PIPELINED, threads, pipelinedPeak, 0, memory);
+        }
+        long minTile = (2L * chain.getHalo() + 1) * rowLength;
+        if (options.isTiled() || (!pointwise && memoryPeak > memory)) {
+            long budget = options.isTiled() ? options.getBudget()
+                : Math.min(options.getBudget(), (memory - rowLength - IO_BYTES) / copies);
+            long tile = Math.min(Math.max(budget, minTile), imageBytes);
+            return new Plan(image, TILED, 1, copies * tile + rowLength + IO_BYTES, tile, memory);
+        }
+        if (threads > 1 && memoryPeak <= memory) {
+            return new Plan(image, MEMORY, threads, memoryPeak, 0, memory);
+        }
+        if (threads > 1 && pointwise && pipelinedPeak <= memory) {
+            return new Plan(image, PIPELINED, threads, pipelinedPeak, 0, memory);
+        }
+        return new Plan(image, STREAM, 1, streamPeak, 0, memory);
+    }
+
+    /**
+     * Finds the heap that is free to use now or after the heap grows
+     * @return bytes of heap not in use
+     */
+    static long availableMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Returns the chosen mode
+     * @return STREAM, MEMORY, PIPELINED, TILED or PATCH
+     */
+    public String getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of threads the mode uses
+     * @return number of threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Returns the estimated peak memory
+     * @return bytes
+     */
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+
+    /**
+     * Returns the largest tile of a tiled plan
+     * @return bytes, including context rows, 0 if the plan is not tiled
+     */
+    public long getTileBytes() {
+        return tileBytes;
+    }
+
+    /**
+     * Returns the memory budget the plan was chosen for
+     * @return bytes
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Checks if the estimated peak memory is within the budget; only
+     * adaptive thresholds, which need the whole image, and a budget too small
+     * for one tile with its context rows can go over it
+     * @return true if the plan fits the budget
+     */
+    public boolean fits() {
+        return peakBytes <= memory;
+    }
+
+    /**
+     * Describes the plan on one line
+     * @return the image, mode, threads and peak memory against the budget
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%s: %s, %d thread%s, peak ~%.1f MB of %.1f MB%s",
+                             image, mode, threads, threads == 1 ? "" : "s",
+                             peakBytes / BYTES_PER_MEGABYTE, memory / BYTES_PER_MEGABYTE,
+                             fits() ? "" : " (over budget)");
+    }
+}
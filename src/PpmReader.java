@@ -0,0 +1,536 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * PpmReader reads PPM files straight from bytes
+ * Validates the header and decodes samples in one pass, without Scanner
+ * Reads ASCII P3 and binary P6, memory-mapping the P6 payload of files
+ * and decoding the P3 body of files on several threads when asked to
+ * Files with a max color value other than 255 are read into char rows,
+ * with two big-endian bytes per P6 sample once the max is above 255
+ * @author Amelia Saldino
+ */
+public class PpmReader implements Closeable {
+    /** Size of the read buffer in bytes */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Returned by the tokenizer for a missing or non-integer token */
+    private static final int BAD_TOKEN = -1;
+
+    /** Largest integer token the tokenizer accepts */
+    private static final int MAX_TOKEN = 1 << 24;
+
+    /** Largest P6 payload region mapped at once, in bytes */
+    private static final long MAP_WINDOW = 1 << 26;
+
+    /** Longest format token the tokenizer accepts */
+    private static final int MAX_FORMAT_LENGTH = 2;
+
+    /** Maximum color value for PPM files */
+    private static final int MAX_COLOR_VALUE = 255;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Channel the file is read from */
+    private final ReadableByteChannel channel;
+
+    /** Bytes read from the channel but not yet tokenized */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /** Wrapper used to fill the buffer from the channel */
+    private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+
+    /** Index of the next unread byte in the buffer */
+    private int position;
+
+    /** Number of valid bytes in the buffer */
+    private int limit;
+
+    /** File offset of the first byte in the buffer */
+    private long bufferStart;
+
+    /** Mapped region of the P6 payload currently being read */
+    private MappedByteBuffer mapped;
+
+    /** File offset of the next P6 payload region to map */
+    private long mapOffset = -1;
+
+    /** Scratch row for converting bytes to int samples */
+    private byte[] scratchRow;
+
+    /** Scratch row of raw P6 bytes for char samples */
+    private byte[] wideRow;
+
+    /** Format from the header, P3 or P6 */
+    private String format;
+
+    /** Number of pixel columns */
+    private int cols;
+
+    /** Number of pixel rows */
+    private int rows;
+
+    /** Maximum color value from the header */
+    private int maxColorValue;
+
+    /**
+     * Creates a reader over a channel
+     * @param channel channel to read the PPM from
+     * @throws IllegalArgumentException if channel is null
+     */
+    public PpmReader(ReadableByteChannel channel) {
+        if (channel == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a reader over a stream
+     * @param in stream to read the PPM from
+     * @throws IllegalArgumentException if in is null
+     */
+    public PpmReader(InputStream in) {
+        this(in == null ? null : Channels.newChannel(in));
+    }
+
+    /**
+     * Opens a reader over a file, decompressing it as it is read if its
+     * name ends in .gz
+     * @param filename name of the file to read
+     * @return reader for the file
+     * @throws IOException if the file can not be opened or is not gzip
+     */
+    public static PpmReader open(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+        if (!filename.endsWith(GzipBlockChannel.EXTENSION)) {
+            return new PpmReader(channel);
+        }
+        try {
+            return new PpmReader(new GZIPInputStream(Channels.newInputStream(channel),
+                                                     BUFFER_SIZE));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads and validates the header
+     * @return true if the header is valid, false otherwise
+     * @throws IOException if the file can not be read
+     */
+    public boolean readHeader() throws IOException {
+        format = nextToken();
+        if (!"P3".equals(format) && !"P6".equals(format)) {
+            return false;
+        }
+        cols = nextInt();
+        if (cols <= 0) {
+            return false;
+        }
+        rows = nextInt();
+        if (rows <= 0) {
+            return false;
+        }
+        maxColorValue = nextInt();
+        if (maxColorValue <= 0 || maxColorValue > WidePipeline.MAX_WIDE_VALUE) {
+            return false;
+        }
+        if (isBinary() && (position < limit || fill())) {
+            position++;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next row of RGB samples
+     * @param row array to fill, cols * 3 long
+     * @return true if a full row of valid samples was read, false otherwise
+     * @throws IOException if the file can not be read
+     * @throws IllegalStateException if the max color value is not 255
+     */
+    public boolean readRow(int[] row) throws IOException {
+        if (scratchRow == null || scratchRow.length != row.length) {
+            scratchRow = new byte[row.length];
+        }
+        if (!readRow(scratchRow, 0, row.length)) {
+            return false;
+        }
+        for (int j = 0; j < row.length; j++) {
+            row[j] = scratchRow[j] & MAX_COLOR_VALUE;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next row of RGB samples into packed bytes
+     * @param data array to fill
+     * @param offset index in data of the first sample of the row
+     * @return true if a full row of valid samples was read, false otherwise
+     * @throws IOException if the file can not be read
+     * @throws IllegalStateException if the max color value is not 255
+     */
+    public boolean readRow(byte[] data, int offset) throws IOException {
+        return readRow(data, offset, getRowLength());
+    }
+
+    /**
+     * Reads the next row of RGB samples into chars, for any max color value
+     * @param data array to fill
+     * @param offset index in data of the first sample of the row
+     * @return true if a full row of valid samples was read, false otherwise
+     * @throws IOException if the file can not be read
+     */
+    public boolean readRow(char[] data, int offset) throws IOException {
+        int length = getRowLength();
+        if (!isBinary()) {
+            for (int j = offset; j < offset + length; j++) {
+                int value = nextInt();
+                if (value < 0 || value > maxColorValue) {
+                    return false;
+                }
+                data[j] = (char) value;
+            }
+            return true;
+        }
+        int bytes = getSampleBytes();
+        if (wideRow == null || wideRow.length != length * bytes) {
+            wideRow = new byte[length * bytes];
+        }
+        if (!readBinary(wideRow, 0, wideRow.length)) {
+            return false;
+        }
+        for (int j = 0; j < length; j++) {
+            int value = bytes == 1 ? wideRow[j] & 0xFF
+                : (wideRow[2 * j] & 0xFF) << 8 | (wideRow[2 * j + 1] & 0xFF);
+            if (value > maxColorValue) {
+                return false;
+            }
+            data[offset + j] = (char) value;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the whole image into a packed buffer
+     * @return the packed image, null if the samples are invalid
+     * @throws IOException if the file can not be read
+     */
+    public PixelBuffer readImage() throws IOException {
+        return readImage(1);
+    }
+
+    /**
+     * Reads the whole image into a packed buffer, decoding an ASCII file
+     * on several threads
+     * @param threads number of threads, 1 to decode sequentially
+     * @return the packed image, null if the samples are invalid
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if threads is not positive
+     */
+    public PixelBuffer readImage(int threads) throws IOException {
+        return readImage(threads, AsciiDecoder.DEFAULT_CHUNK);
+    }
+
+    /**
+     * Reads the whole image into a packed buffer, decoding an ASCII file
+     * in chunks of a given size on several threads
+     * @param threads number of threads, 1 to decode sequentially
+     * @param chunkBytes number of bytes in one chunk
+     * @return the packed image, null if the samples are invalid
+     * @throws IOException if the file can not be read
+     * @throws IllegalArgumentException if threads or chunkBytes is not positive
+     * @throws IllegalStateException if the max color value is not 255
+     */
+    PixelBuffer readImage(int threads, long chunkBytes) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Invalid thread count");
+        }
+        if (isWide()) {
+            throw new IllegalStateException("Max color value is not 255");
+        }
+        PixelBuffer image = new PixelBuffer(cols, rows);
+        if (threads > 1 && !isBinary() && channel instanceof FileChannel) {
+            FileChannel file = (FileChannel) channel;
+            boolean valid = AsciiDecoder.decode(file, bufferStart + position, image.getData(),
+                                                maxColorValue, threads, chunkBytes);
+            // The whole body has been consumed, later reads see the end of the file
+            file.position(file.size());
+            bufferStart = file.size();
+            position = 0;
+            limit = 0;
+            return valid ? image : null;
+        }
+        for (int i = 0; i < rows; i++) {
+            if (!readRow(image.getData(), image.getOffset(i))) {
+                return null;
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Reads samples into packed bytes
+     * @param data array to fill
+     * @param offset index in data of the first sample
+     * @param length number of samples to read
+     * @return true if all samples were read and valid, false otherwise
+     * @throws IOException if the file can not be read
+     */
+    private boolean readRow(byte[] data, int offset, int length) throws IOException {
+        if (isWide()) {
+            throw new IllegalStateException("Max color value is not 255");
+        }
+        if (isBinary()) {
+            return readBinary(data, offset, length);
+        }
+        for (int j = offset; j < offset + length; j++) {
+            int value = nextInt();
+            if (value < 0 || value > maxColorValue) {
+                return false;
+            }
+            data[j] = (byte) value;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the file holds binary P6 samples
+     * @return true for P6, false for P3
+     */
+    public boolean isBinary() {
+        return "P6".equals(format);
+    }
+
+    /**
+     * Checks if the samples must be read into chars, as any max color value
+     * other than 255 is
+     * @return true if the max color value is not 255
+     */
+    public boolean isWide() {
+        return maxColorValue != MAX_COLOR_VALUE;
+    }
+
+    /**
+     * Returns the number of bytes each P6 sample takes
+     * @return 1 for a max color value below 256, 2 otherwise
+     */
+    public int getSampleBytes() {
+        return maxColorValue > MAX_COLOR_VALUE ? 2 : 1;
+    }
+
+    /**
+     * Returns the format from the header
+     * @return format, P3 or P6
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Returns the number of pixel columns
+     * @return number of columns
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Returns the number of pixel rows
+     * @return number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the maximum color value
+     * @return maximum color value
+     */
+    public int getMaxColorValue() {
+        return maxColorValue;
+    }
+
+    /**
+     * Returns the number of samples in one row
+     * @return cols * 3
+     */
+    public int getRowLength() {
+        return cols * NUM_VAL_RGB;
+    }
+
+    /**
+     * Returns the number of bytes of the file consumed so far
+     * @return bytes consumed
+     */
+    public long getBytesRead() {
+        if (mapOffset >= 0) {
+            return mapOffset - (mapped == null ? 0 : mapped.remaining());
+        }
+        return bufferStart + position;
+    }
+
+    /**
+     * Closes the underlying channel
+     * @throws IOException if the channel can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads the next row of P6 bytes, from the mapped payload when
+     * the input is a file and from the buffered channel otherwise
+     * @param data array to fill
+     * @param offset index in data of the first byte
+     * @param length number of bytes in one row
+     * @return true if a full row was read, false if the file is too short
+     * @throws IOException if the file can not be read
+     */
+    private boolean readBinary(byte[] data, int offset, int length) throws IOException {
+        if (channel instanceof FileChannel) {
+            return readMapped((FileChannel) channel, data, offset, length);
+        }
+        int filled = 0;
+        while (filled < length) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            int count = Math.min(length - filled, limit - position);
+            System.arraycopy(buffer, position, data, offset + filled, count);
+            position += count;
+            filled += count;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next row of P6 bytes from the memory-mapped payload,
+     * mapping the next window of whole rows when the current one is used up
+     * @param file channel of the input file
+     * @param data array to fill
+     * @param offset index in data of the first byte
+     * @param length number of bytes in one row
+     * @return true if a full row was read, false if the file is too short
+     * @throws IOException if the file can not be mapped
+     */
+    private boolean readMapped(FileChannel file, byte[] data, int offset, int length)
+        throws IOException {
+        if (mapped == null || !mapped.hasRemaining()) {
+            if (mapOffset < 0) {
+                mapOffset = bufferStart + position;
+            }
+            long available = file.size() - mapOffset;
+            long window = Math.max(1, MAP_WINDOW / length) * length;
+            window = Math.min(window, available / length * length);
+            if (window <= 0) {
+                return false;
+            }
+            mapped = file.map(FileChannel.MapMode.READ_ONLY, mapOffset, window);
+            mapOffset += window;
+        }
+        mapped.get(data, offset, length);
+        return true;
+    }
+
+    /**
+     * Refills the buffer from the channel
+     * @return true if more bytes are available, false at end of file
+     * @throws IOException if the file can not be read
+     */
+    private boolean fill() throws IOException {
+        bufferStart += limit;
+        wrapper.clear();
+        int read = channel.read(wrapper);
+        while (read == 0) {
+            read = channel.read(wrapper);
+        }
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+    /**
+     * Checks if a byte is PPM whitespace
+     * @param b byte to check
+     * @return true if b is whitespace
+     */
+    static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * Skips whitespace before the next token
+     * @return true if a token follows, false at end of file
+     * @throws IOException if the file can not be read
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            if (position == limit && !fill()) {
+                return false;
+            }
+            if (!isWhitespace(buffer[position])) {
+                return true;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * Reads the next whitespace separated token as text
+     * @return the token, null at end of file
+     * @throws IOException if the file can not be read
+     */
+    private String nextToken() throws IOException {
+        if (!skipWhitespace()) {
+            return null;
+        }
+        StringBuilder token = new StringBuilder();
+        while (position < limit || fill()) {
+            byte b = buffer[position];
+            if (isWhitespace(b)) {
+                break;
+            }
+            if (token.length() <= MAX_FORMAT_LENGTH) {
+                token.append((char) (b & 0xFF));
+            }
+            position++;
+        }
+        return token.toString();
+    }
+
+    /**
+     * Reads the next token as a non-negative integer
+     * @return the value, BAD_TOKEN if missing, negative or not an integer
+     * @throws IOException if the file can not be read
+     */
+    private int nextInt() throws IOException {
+        if (!skipWhitespace()) {
+            return BAD_TOKEN;
+        }
+        int value = 0;
+        boolean valid = true;
+        while (position < limit || fill()) {
+            int b = buffer[position];
+            if (isWhitespace(b)) {
+                break;
+            }
+            position++;
+            int digit = b - '0';
+            if (digit < 0 || digit > 9 || value > MAX_TOKEN) {
+                valid = false;
+            }
+            else {
+                value = value * 10 + digit;
+            }
+        }
+        return valid ? value : BAD_TOKEN;
+    }
+}
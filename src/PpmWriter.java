@@ -0,0 +1,656 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * PpmWriter writes PPM files one row at a time
+ * P3 samples are formatted straight into a reusable byte buffer from a
+ * digit table and flushed to the channel in large chunks
+ * P6 samples go into the memory-mapped output file, or through the
+ * same buffer when the output is not a file
+ * P2 and P5 greyscale PGM files are written the same way as P3 and P6,
+ * keeping one sample of each greyscale RGB pixel
+ * Files with a max color value other than 255 are written from char rows,
+ * with two big-endian bytes per binary sample once the max is above 255
+ * @author Amelia Saldino
+ */
+public class PpmWriter implements Closeable {
+    /** Largest P6 payload region mapped at once, in bytes */
+    private static final long MAP_WINDOW = 1 << 26;
+
+    /** Size of the output buffer in bytes */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** Most bytes one P3 sample and its separator take */
+    private static final int MAX_SAMPLE_BYTES = 4;
+
+    /** Most bytes one sample of up to 65535 and its separator take */
+    private static final int MAX_WIDE_SAMPLE_BYTES = 6;
+
+    /** Most characters any int and its separator take */
+    private static final int MAX_INT_CHARS = 12;
+
+    /** Maximum color value for PPM files */
+    private static final int MAX_COLOR_VALUE = 255;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Line separator that PrintWriter.println writes */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Line separator as bytes */
+    private static final byte[] NEWLINE_BYTES = NEWLINE.getBytes(StandardCharsets.US_ASCII);
+
+    /** ASCII digits of every sample value */
+    private static final byte[][] DIGITS = new byte[MAX_COLOR_VALUE + 1][];
+
+    static {
+        for (int i = 0; i <= MAX_COLOR_VALUE; i++) {
+            DIGITS[i] = Integer.toString(i).getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /** Writer for P3 output through a PrintWriter, null otherwise */
+    private final PrintWriter text;
+
+    /** Channel the file is written to, null for PrintWriter output */
+    private final WritableByteChannel channel;
+
+    /** Whether samples are written as binary P6 or P5 */
+    private final boolean binary;
+
+    /** Number of samples written per pixel, 3 for PPM and 1 for PGM */
+    private final int channels;
+
+    /** Number of pixel columns */
+    private final int cols;
+
+    /** Number of pixel rows */
+    private final int rows;
+
+    /** Largest sample value, written in the header */
+    private final int maxColorValue;
+
+    /** Bytes formatted but not yet written to the channel */
+    private byte[] buffer;
+
+    /** Number of bytes in the buffer */
+    private int count;
+
+    /** Number of bytes passed to the channel or mapped payload */
+    private long written;
+
+    /** Mapped region of the P6 payload currently being written */
+    private MappedByteBuffer mapped;
+
+    /** File offset of the next P6 payload region to map */
+    private long mapOffset;
+
+    /** File offset just past the end of the P6 payload */
+    private long payloadEnd;
+
+    /** Scratch row for converting int samples to bytes */
+    private byte[] scratchRow;
+
+    /** Scratch row holding one sample per pixel for PGM output */
+    private byte[] greyRow;
+
+    /** Scratch row of samples narrowed or split into bytes */
+    private byte[] wideRow;
+
+    /** Scratch characters for PrintWriter rows */
+    private char[] scratchChars;
+
+    /** Downscalers fed every row written, for scaled copies of the image */
+    private final List<Downscaler> downscalers = new ArrayList<>();
+
+    /**
+     * Creates a P3 writer and writes the header
+     * @param out The PrintWriter to output
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @throws IllegalArgumentException if out is null
+     */
+    public PpmWriter(PrintWriter out, int cols, int rows) {
+        if (out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        this.text = out;
+        this.channel = null;
+        this.binary = false;
+        this.channels = NUM_VAL_RGB;
+        this.cols = cols;
+        this.rows = rows;
+        this.maxColorValue = MAX_COLOR_VALUE;
+        printHeader(out, cols, rows);
+    }
+
+    /**
+     * Creates a writer over a channel and writes the header
+     * P6 and P5 payloads are memory-mapped when the channel is a file
+     * @param channel channel to write the image to
+     * @param format P3 or P6 for PPM, P2 or P5 for greyscale PGM
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @throws IOException if the header can not be written
+     * @throws IllegalArgumentException if channel is null or format is not
+     * P3, P6, P2 or P5
+     */
+    public PpmWriter(WritableByteChannel channel, String format, int cols, int rows)
+        throws IOException {
+        this(channel, format, cols, rows, MAX_COLOR_VALUE);
+    }
+
+    /**
+     * Creates a writer over a channel for a max color value and writes the header
+     * P6 and P5 payloads are memory-mapped when the channel is a file
+     * @param channel channel to write the image to
+     * @param format P3 or P6 for PPM, P2 or P5 for greyscale PGM
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @throws IOException if the header can not be written
+     * @throws IllegalArgumentException if channel is null, format is not
+     * P3, P6, P2 or P5, or maxColorValue is out of range
+     */
+    public PpmWriter(WritableByteChannel channel, String format, int cols, int rows,
+                     int maxColorValue) throws IOException {
+        if (channel == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (!isFormat(format)) {
+            throw new IllegalArgumentException("Invalid format");
+        }
+        WidePipeline.checkMaxColorValue(maxColorValue);
+        this.text = null;
+        this.channel = channel;
+        this.binary = "P6".equals(format) || "P5".equals(format);
+        this.channels = isGrey(format) ? 1 : NUM_VAL_RGB;
+        this.cols = cols;
+        this.rows = rows;
+        this.maxColorValue = maxColorValue;
+        this.buffer = new byte[BUFFER_SIZE];
+
+        String header;
+        if (binary) {
+            header = format + "\n" + cols + " " + rows + "\n" + maxColorValue + "\n";
+        }
+        else {
+            header = format + NEWLINE + cols + " " + rows + NEWLINE + maxColorValue + "\n";
+        }
+        byte[] bytes = header.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+        count = bytes.length;
+
+        if (binary && channel instanceof FileChannel) {
+            flush();
+            mapOffset = ((FileChannel) channel).position();
+            payloadEnd = mapOffset + (long) rows * cols * channels * getSampleBytes();
+        }
+    }
+
+    /**
+     * Checks if a format can be written
+     * @param format format to check
+     * @return true for P3, P6, P2 and P5
+     */
+    public static boolean isFormat(String format) {
+        return "P3".equals(format) || "P6".equals(format) || isGrey(format);
+    }
+
+    /**
+     * Checks if a format is greyscale PGM
+     * @param format format to check
+     * @return true for P2 and P5
+     */
+    public static boolean isGrey(String format) {
+        return "P2".equals(format) || "P5".equals(format);
+    }
+
+    /**
+     * Opens a writer over a file and writes the header, compressing the
+     * file in parallel blocks if its name ends in .gz
+     * @param filename name of the file to write
+     * @param format P3 or P6 for PPM, P2 or P5 for greyscale PGM
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @return writer for the file
+     * @throws IOException if the file can not be created
+     * @throws IllegalArgumentException if format is not P3, P6, P2 or P5
+     */
+    public static PpmWriter open(String filename, String format, int cols, int rows)
+        throws IOException {
+        return open(filename, format, cols, rows, MAX_COLOR_VALUE);
+    }
+
+    /**
+     * Opens a writer over a file for a max color value and writes the header,
+     * compressing the file in parallel blocks if its name ends in .gz
+     * @param filename name of the file to write
+     * @param format P3 or P6 for PPM, P2 or P5 for greyscale PGM
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @return writer for the file
+     * @throws IOException if the file can not be created
+     * @throws IllegalArgumentException if format is not P3, P6, P2 or P5,
+     * or maxColorValue is out of range
+     */
+    public static PpmWriter open(String filename, String format, int cols, int rows,
+                                 int maxColorValue) throws IOException {
+        if (!isFormat(format)) {
+            throw new IllegalArgumentException("Invalid format");
+        }
+        WidePipeline.checkMaxColorValue(maxColorValue);
+        WritableByteChannel channel = FileChannel.open(Paths.get(filename),
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (filename.endsWith(GzipBlockChannel.EXTENSION)) {
+            channel = new GzipBlockChannel(channel);
+        }
+        try {
+            return new PpmWriter(channel, format, cols, rows, maxColorValue);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the next row of RGB samples
+     * @param row one row of RGB values, cols * 3 long
+     * @throws IOException if the file can not be written
+     */
+    public void writeRow(int[] row) throws IOException {
+        if (scratchRow == null || scratchRow.length != row.length) {
+            scratchRow = new byte[row.length];
+        }
+        for (int j = 0; j < row.length; j++) {
+            scratchRow[j] = (byte) row[j];
+        }
+        writeRow(scratchRow, 0);
+    }
+
+    /**
+     * Writes the next row of RGB samples from packed bytes
+     * PGM output keeps the first sample of each pixel, so the row should
+     * already be greyscale
+     * @param data packed samples
+     * @param offset index in data of the first sample of the row
+     * @throws IOException if the file can not be written
+     * @throws IllegalStateException if the max color value is not 255
+     */
+    public void writeRow(byte[] data, int offset) throws IOException {
+        if (maxColorValue != MAX_COLOR_VALUE) {
+            throw new IllegalStateException("Max color value is not 255");
+        }
+        for (Downscaler downscaler : downscalers) {
+            downscaler.addRow(data, offset);
+        }
+        int length = cols * channels;
+        if (channels == 1) {
+            if (greyRow == null) {
+                greyRow = new byte[cols];
+            }
+            for (int i = 0; i < cols; i++) {
+                greyRow[i] = data[offset + i * NUM_VAL_RGB];
+            }
+            data = greyRow;
+            offset = 0;
+        }
+        if (text != null) {
+            if (scratchChars == null) {
+                scratchChars = new char[length * MAX_SAMPLE_BYTES];
+            }
+            printRow(text, data, offset, length, scratchChars);
+        }
+        else if (!binary) {
+            formatRow(data, offset, length);
+        }
+        else if (channel instanceof FileChannel) {
+            writeMapped(data, offset, length);
+        }
+        else {
+            writeBytes(data, offset, length);
+        }
+    }
+
+    /**
+     * Writes the next row of RGB samples from chars, for any max color value
+     * PGM output keeps the first sample of each pixel, so the row should
+     * already be greyscale
+     * @param data samples, each at most the max color value
+     * @param offset index in data of the first sample of the row
+     * @throws IOException if the file can not be written
+     */
+    public void writeRow(char[] data, int offset) throws IOException {
+        int length = cols * NUM_VAL_RGB;
+        if (maxColorValue == MAX_COLOR_VALUE) {
+            if (wideRow == null) {
+                wideRow = new byte[length];
+            }
+            for (int j = 0; j < length; j++) {
+                wideRow[j] = (byte) data[offset + j];
+            }
+            writeRow(wideRow, 0);
+            return;
+        }
+        int bytes = getSampleBytes();
+        if (wideRow == null) {
+            wideRow = new byte[cols * channels * bytes];
+        }
+        int step = NUM_VAL_RGB / channels;
+        if (!binary) {
+            int full = buffer.length - MAX_WIDE_SAMPLE_BYTES - NEWLINE_BYTES.length;
+            for (int j = 0; j < length; j += step) {
+                if (count > full) {
+                    flush();
+                }
+                count = formatSample(data[offset + j], count);
+                if (j < length - step) {
+                    buffer[count++] = ' ';
+                }
+            }
+            for (int k = 0; k < NEWLINE_BYTES.length; k++) {
+                buffer[count++] = NEWLINE_BYTES[k];
+            }
+            return;
+        }
+        int used = 0;
+        for (int j = 0; j < length; j += step) {
+            int value = data[offset + j];
+            if (bytes == 2) {
+                wideRow[used++] = (byte) (value >> 8);
+            }
+            wideRow[used++] = (byte) value;
+        }
+        if (channel instanceof FileChannel) {
+            writeMapped(wideRow, 0, used);
+        }
+        else {
+            writeBytes(wideRow, 0, used);
+        }
+    }
+
+    /**
+     * Returns the number of bytes each binary sample takes
+     * @return 1 for a max color value below 256, 2 otherwise
+     */
+    public int getSampleBytes() {
+        return maxColorValue > MAX_COLOR_VALUE ? 2 : 1;
+    }
+
+    /**
+     * Writes every row of a packed image
+     * @param image the packed image, the same size as the header
+     * @throws IOException if the file can not be written
+     */
+    public void writeImage(PixelBuffer image) throws IOException {
+        for (int i = 0; i < image.getHeight(); i++) {
+            writeRow(image.getData(), image.getOffset(i));
+        }
+    }
+
+    /**
+     * Feeds every row written from now on to a downscaler, which is closed
+     * with this writer
+     * @param downscaler the downscaler
+     * @throws IllegalArgumentException if downscaler is null
+     * @throws IllegalStateException if the max color value is not 255
+     */
+    public void addDownscaler(Downscaler downscaler) {
+        if (downscaler == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (maxColorValue != MAX_COLOR_VALUE) {
+            throw new IllegalStateException("Max color value is not 255");
+        }
+        downscalers.add(downscaler);
+    }
+
+    /**
+     * Returns the number of bytes encoded so far, buffered or written
+     * @return bytes encoded, 0 for a writer over a PrintWriter
+     */
+    public long getBytesWritten() {
+        return written + count;
+    }
+
+    /**
+     * Flushes and closes the output file and any scaled copies
+     * @throws IOException if a file can not be written or closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (text != null) {
+                text.close();
+                if (text.checkError()) {
+                    throw new IOException("Cannot write output file");
+                }
+                return;
+            }
+            try {
+                flush();
+            }
+            finally {
+                mapped = null;
+                channel.close();
+            }
+        }
+        finally {
+            closeDownscalers();
+        }
+    }
+
+    /**
+     * Closes every downscaler, even if one fails
+     * @throws IOException if a scaled copy can not be written or closed
+     */
+    private void closeDownscalers() throws IOException {
+        IOException failure = null;
+        for (Downscaler downscaler : downscalers) {
+            try {
+                downscaler.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        downscalers.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Formats one row of samples as P3 text into the buffer
+     * @param data packed samples
+     * @param offset index in data of the first sample
+     * @param length number of samples in the row
+     * @throws IOException if the buffer can not be flushed
+     */
+    private void formatRow(byte[] data, int offset, int length) throws IOException {
+        int end = offset + length;
+        int full = buffer.length - MAX_SAMPLE_BYTES - NEWLINE_BYTES.length;
+        for (int j = offset; j < end; j++) {
+            if (count > full) {
+                flush();
+            }
+            byte[] digits = DIGITS[data[j] & MAX_COLOR_VALUE];
+            for (int k = 0; k < digits.length; k++) {
+                buffer[count++] = digits[k];
+            }
+            if (j < end - 1) {
+                buffer[count++] = ' ';
+            }
+        }
+        for (int k = 0; k < NEWLINE_BYTES.length; k++) {
+            buffer[count++] = NEWLINE_BYTES[k];
+        }
+    }
+
+    /**
+     * Formats one sample as ASCII digits into the buffer
+     * @param value the sample
+     * @param index index in the buffer of the first digit
+     * @return index just past the digits
+     */
+    private int formatSample(int value, int index) {
+        if (value <= MAX_COLOR_VALUE) {
+            byte[] digits = DIGITS[value];
+            for (int k = 0; k < digits.length; k++) {
+                buffer[index++] = digits[k];
+            }
+            return index;
+        }
+        int end = index + (value >= 10000 ? 5 : value >= 1000 ? 4 : 3);
+        for (int k = end - 1; k >= index; k--) {
+            buffer[k] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return end;
+    }
+
+    /**
+     * Copies raw bytes into the buffer, flushing it as it fills
+     * @param data packed samples
+     * @param offset index in data of the first byte
+     * @param length number of bytes
+     * @throws IOException if the buffer can not be flushed
+     */
+    private void writeBytes(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (count == buffer.length) {
+                flush();
+            }
+            int copied = Math.min(length, buffer.length - count);
+            System.arraycopy(data, offset, buffer, count, copied);
+            count += copied;
+            offset += copied;
+            length -= copied;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel
+     * @throws IOException if the channel can not be written
+     */
+    private void flush() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, count);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        written += count;
+        count = 0;
+    }
+
+    /**
+     * Writes the next row of P6 bytes into the memory-mapped payload,
+     * mapping the next window of whole rows when the current one is full
+     * @param data packed samples
+     * @param offset index in data of the first byte
+     * @param length number of bytes in one row
+     * @throws IOException if the file can not be mapped
+     */
+    private void writeMapped(byte[] data, int offset, int length) throws IOException {
+        if (mapped == null || !mapped.hasRemaining()) {
+            long window = Math.max(1, MAP_WINDOW / length) * length;
+            window = Math.min(window, payloadEnd - mapOffset);
+            mapped = ((FileChannel) channel).map(FileChannel.MapMode.READ_WRITE,
+                                                 mapOffset, window);
+            mapOffset += window;
+        }
+        mapped.put(data, offset, length);
+        written += length;
+    }
+
+    /**
+     * Outputs the P3 header
+     * @param out The PrintWriter to output
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     */
+    static void printHeader(PrintWriter out, int cols, int rows) {
+        out.println("P3");
+        out.println(cols + " " + rows);
+        out.printf("%d\n", MAX_COLOR_VALUE);
+    }
+
+    /**
+     * Outputs a single row of pixel values as P3 text, formatted into
+     * one array and written with one call
+     * @param out The PrintWriter to output
+     * @param row one row of RGB values
+     */
+    static void printRow(PrintWriter out, int[] row) {
+        char[] chars = new char[row.length * MAX_INT_CHARS];
+        int length = 0;
+        for (int j = 0; j < row.length; j++) {
+            if (row[j] >= 0 && row[j] <= MAX_COLOR_VALUE) {
+                length = appendDigits(chars, length, DIGITS[row[j]]);
+            }
+            else {
+                String value = Integer.toString(row[j]);
+                value.getChars(0, value.length(), chars, length);
+                length += value.length();
+            }
+            if (j < row.length - 1) {
+                chars[length++] = ' ';
+            }
+        }
+        out.write(chars, 0, length);
+        out.println();
+    }
+
+    /**
+     * Outputs a single row of packed samples as P3 text
+     * @param out The PrintWriter to output
+     * @param data packed samples
+     * @param offset index in data of the first sample
+     * @param length number of samples in the row
+     */
+    static void printRow(PrintWriter out, byte[] data, int offset, int length) {
+        printRow(out, data, offset, length, new char[length * MAX_SAMPLE_BYTES]);
+    }
+
+    /**
+     * Outputs a single row of packed samples as P3 text, formatted into
+     * a scratch array and written with one call
+     * @param out The PrintWriter to output
+     * @param data packed samples
+     * @param offset index in data of the first sample
+     * @param length number of samples in the row
+     * @param chars scratch array, at least length * 4 long
+     */
+    private static void printRow(PrintWriter out, byte[] data, int offset, int length,
+                                 char[] chars) {
+        int used = 0;
+        for (int j = offset; j < offset + length; j++) {
+            used = appendDigits(chars, used, DIGITS[data[j] & MAX_COLOR_VALUE]);
+            if (j < offset + length - 1) {
+                chars[used++] = ' ';
+            }
+        }
+        out.write(chars, 0, used);
+        out.println();
+    }
+
+    /**
+     * Copies ASCII digits into a character array
+     * @param chars array to fill
+     * @param index index of the first character to fill
+     * @param digits ASCII digits
+     * @return index just past the copied digits
+     */
+    private static int appendDigits(char[] chars, int index, byte[] digits) {
+        for (int k = 0; k < digits.length; k++) {
+            chars[index++] = (char) digits[k];
+        }
+        return index;
+    }
+}
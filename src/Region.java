@@ -0,0 +1,324 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Region is a rectangle of pixels that a transformation is limited to
+ * The rectangle is filtered in a band that reaches as many pixels past each
+ * side as the filter reads as context, so neighborhood filters see the real
+ * pixels around it, and only the rectangle itself is changed
+ * A P6 file can be patched in place, reading and writing only the spans of
+ * the rows the band covers, and any other image can stream its rows,
+ * merging the region's span of each transformed row into the input row
+ * @author Amelia Saldino
+ */
+public class Region {
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Number of numbers in the text form x,y,w,h */
+    private static final int NUM_FIELDS = 4;
+
+    /** Column of the left edge */
+    private final int x;
+
+    /** Row of the top edge */
+    private final int y;
+
+    /** Number of pixel columns */
+    private final int width;
+
+    /** Number of pixel rows */
+    private final int height;
+
+    /**
+     * Creates a region
+     * @param x column of the left edge
+     * @param y row of the top edge
+     * @param width number of pixel columns
+     * @param height number of pixel rows
+     * @throws IllegalArgumentException if x or y is negative, or width or
+     * height is not positive
+     */
+    public Region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid region");
+        }
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Parses a region written as x,y,w,h
+     * @param text the region
+     * @return the region, null if the text is not four numbers with a
+     * positive width and height
+     */
+    public static Region parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String[] fields = text.split(",", -1);
+        if (fields.length != NUM_FIELDS) {
+            return null;
+        }
+        int[] values = new int[NUM_FIELDS];
+        try {
+            for (int i = 0; i < NUM_FIELDS; i++) {
+                values[i] = Integer.parseInt(fields[i].trim());
+            }
+            return new Region(values[0], values[1], values[2], values[3]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if the region lies inside an image
+     * @param cols number of pixel columns of the image
+     * @param rows number of pixel rows of the image
+     * @return true if every pixel of the region is in the image
+     */
+    public boolean fits(int cols, int rows) {
+        return (long) x + width <= cols && (long) y + height <= rows;
+    }
+
+    /**
+     * Returns the size of the band the region is filtered in
+     * @param cols number of pixel columns of the image
+     * @param rows number of pixel rows of the image
+     * @param halo context rows and columns the filter reads past each side
+     * @return number of bytes in the band
+     */
+    public long getBandBytes(int cols, int rows, int halo) {
+        long bandWidth = Math.min(cols, (long) x + width + halo) - Math.max(0, x - halo);
+        long bandHeight = Math.min(rows, (long) y + height + halo) - Math.max(0, y - halo);
+        return bandWidth * bandHeight * NUM_VAL_RGB;
+    }
+
+    /**
+     * Transforms the region of an image in memory
+     * @param image the image, which the region fits
+     * @param filter the transformation to apply
+     * @throws IllegalArgumentException if image or filter is null, or the
+     * region does not fit the image
+     */
+    public void apply(PixelBuffer image, BandFilter filter) {
+        if (image == null) {
+            throw new IllegalArgumentException("Null image");
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        if (!fits(image.getWidth(), image.getHeight())) {
+            throw new IllegalArgumentException("Invalid region");
+        }
+        int halo = filter.getHalo();
+        int left = Math.max(0, x - halo);
+        int top = Math.max(0, y - halo);
+        PixelBuffer band = new PixelBuffer(Math.min(image.getWidth(), x + width + halo) - left,
+                                           Math.min(image.getHeight(), y + height + halo) - top);
+        for (int i = 0; i < band.getHeight(); i++) {
+            System.arraycopy(image.getData(), image.getOffset(top + i) + left * NUM_VAL_RGB,
+                             band.getData(), band.getOffset(i), band.getRowLength());
+        }
+        filter.apply(band, y - top, y - top + height);
+        for (int i = y; i < y + height; i++) {
+            System.arraycopy(band.getData(), band.getOffset(i - top) + (x - left) * NUM_VAL_RGB,
+                             image.getData(), image.getOffset(i) + x * NUM_VAL_RGB,
+                             width * NUM_VAL_RGB);
+        }
+    }
+
+    /**
+     * Transforms the region of a P6 file in place, reading the band's span of
+     * each row it covers and writing back only the region's span
+     * @param file channel of the P6 file, open to read and write
+     * @param payload file offset of the first sample
+     * @param cols number of pixel columns of the image
+     * @param rows number of pixel rows of the image
+     * @param filter the transformation to apply
+     * @param stats receives the read, filter and write measurements
+     * @return true if the file holds every sample of the band, false if it is too short
+     * @throws IOException if the file can not be read or written
+     * @throws IllegalArgumentException if file, filter or stats is null, or
+     * the region does not fit the image
+     */
+    public boolean patch(FileChannel file, long payload, int cols, int rows, BandFilter filter,
+                         Stats stats) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        if (!fits(cols, rows)) {
+            throw new IllegalArgumentException("Invalid region");
+        }
+        long rowBytes = (long) cols * NUM_VAL_RGB;
+        if (file.size() < payload + rowBytes * rows) {
+            return false;
+        }
+        int halo = filter.getHalo();
+        int left = Math.max(0, x - halo);
+        int top = Math.max(0, y - halo);
+        PixelBuffer band = new PixelBuffer(Math.min(cols, x + width + halo) - left,
+                                           Math.min(rows, y + height + halo) - top);
+        long pixels = (long) band.getWidth() * band.getHeight();
+
+        stats.begin();
+        for (int i = 0; i < band.getHeight(); i++) {
+            if (!read(file, band.getData(), band.getOffset(i), band.getRowLength(),
+                      payload + (top + i) * rowBytes + left * NUM_VAL_RGB)) {
+                return false;
+            }
+        }
+        stats.end(Stats.READ, (long) band.getRowLength() * band.getHeight(), pixels);
+
+        stats.begin();
+        filter.apply(band, y - top, y - top + height);
+        stats.end(Stats.FILTER, (long) band.getRowLength() * band.getHeight(), pixels);
+
+        stats.begin();
+        for (int i = y; i < y + height; i++) {
+            write(file, band.getData(), band.getOffset(i - top) + (x - left) * NUM_VAL_RGB,
+                  width * NUM_VAL_RGB, payload + i * rowBytes + x * NUM_VAL_RGB);
+        }
+        stats.end(Stats.WRITE, (long) width * height * NUM_VAL_RGB, (long) width * height);
+        return true;
+    }
+
+    /**
+     * Reads a span of a file at a position, without moving the channel
+     * @param file channel of the file
+     * @param data array to fill
+     * @param offset index in data of the first byte
+     * @param length number of bytes
+     * @param position file offset of the first byte
+     * @return true if the whole span was read, false at end of file
+     * @throws IOException if the file can not be read
+     */
+    private static boolean read(FileChannel file, byte[] data, int offset, int length,
+                                long position) throws IOException {
+        ByteBuffer span = ByteBuffer.wrap(data, offset, length);
+        while (span.hasRemaining()) {
+            if (file.read(span, position + span.position() - offset) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a span of a file at a position, without moving the channel
+     * @param file channel of the file
+     * @param data bytes to write
+     * @param offset index in data of the first byte
+     * @param length number of bytes
+     * @param position file offset of the first byte
+     * @throws IOException if the file can not be written
+     */
+    private static void write(FileChannel file, byte[] data, int offset, int length,
+                              long position) throws IOException {
+        ByteBuffer span = ByteBuffer.wrap(data, offset, length);
+        while (span.hasRemaining()) {
+            file.write(span, position + span.position() - offset);
+        }
+    }
+
+    /**
+     * Transforms the region of one row of samples whose max color value is
+     * not 255, for images that stream one char row at a time
+     * @param row index of the row in the image
+     * @param data samples of the row
+     * @param pipeline the transformation to apply
+     */
+    public void apply(int row, char[] data, WidePipeline pipeline) {
+        if (row >= y && row < y + height) {
+            pipeline.apply(data, x * NUM_VAL_RGB, (x + width) * NUM_VAL_RGB);
+        }
+    }
+
+    /**
+     * Starts limiting a stream of transformed rows to the region
+     * @param rowLength number of samples in one row
+     * @return the rows, to hold each input row and merge each transformed row
+     */
+    public Rows rows(int rowLength) {
+        return new Rows(rowLength);
+    }
+
+    /**
+     * Returns the region as x,y,w,h
+     * @return text form of the region
+     */
+    @Override
+    public String toString() {
+        return x + "," + y + "," + width + "," + height;
+    }
+
+    /**
+     * Rows holds copies of input rows until their transformed rows come out
+     * of a row stream, a few rows later for neighborhood filters, and puts
+     * the region's span of each transformed row into its input row
+     */
+    public final class Rows {
+        /** Input rows whose transformed rows have not come out, oldest first */
+        private final Deque<byte[]> held = new ArrayDeque<>();
+
+        /** Rows free for reuse */
+        private final Deque<byte[]> free = new ArrayDeque<>();
+
+        /** Number of samples in one row */
+        private final int rowLength;
+
+        /** Index of the next transformed row */
+        private int next;
+
+        /** Row returned by the last merge, reused on the next call */
+        private byte[] merged;
+
+        /**
+         * Creates empty rows
+         * @param rowLength number of samples in one row
+         */
+        private Rows(int rowLength) {
+            this.rowLength = rowLength;
+        }
+
+        /**
+         * Keeps a copy of the next input row
+         * @param row samples of the row, before they are transformed
+         */
+        public void hold(byte[] row) {
+            byte[] copy = free.isEmpty() ? new byte[rowLength] : free.pollFirst();
+            System.arraycopy(row, 0, copy, 0, rowLength);
+            held.addLast(copy);
+        }
+
+        /**
+         * Puts the region's span of the next transformed row into its input row
+         * The row is valid until the next call
+         * @param transformed samples of the transformed row
+         * @return the input row, with the region's span transformed
+         */
+        public byte[] merge(byte[] transformed) {
+            if (merged != null) {
+                free.addLast(merged);
+            }
+            merged = held.pollFirst();
+            if (next >= y && next < y + height) {
+                System.arraycopy(transformed, x * NUM_VAL_RGB, merged, x * NUM_VAL_RGB,
+                                 width * NUM_VAL_RGB);
+            }
+            next++;
+            return merged;
+        }
+    }
+}
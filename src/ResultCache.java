@@ -0,0 +1,335 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * ResultCache keeps transformed output files on disk, keyed by a hash of
+ * the input bytes and the operation chain, so repeated requests skip
+ * parsing and filtering
+ * The hash of an input is remembered under its path, size, modification
+ * time, file key and change time, so an unchanged input is only read in
+ * full the first time. A hash taken less than a few seconds after the
+ * input was last modified is not trusted, since a write within the file
+ * system's timestamp granularity would leave the same stamp
+ * Entries are published with an atomic rename, and the least recently used
+ * are evicted under a file lock once the cache grows past its size cap,
+ * so several processes can share one cache directory
+ * @author Amelia Saldino
+ */
+public class ResultCache {
+    /** Size cap used when none is given, in bytes */
+    public static final long DEFAULT_SIZE = 1L << 30;
+
+    /** Extension of cache entries */
+    private static final String EXTENSION = ".ppm";
+
+    /** Extension of remembered input hashes */
+    private static final String SUM_EXTENSION = ".sum";
+
+    /** Extension of files being written, before they are renamed into place */
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    /** Age after which a temporary file is taken to be left by a crashed write */
+    private static final long STALE_TEMP_MILLIS = 60L * 60 * 1000;
+
+    /** Number of hex digits in a SHA-256 */
+    private static final int HASH_LENGTH = 64;
+
+    /**
+     * Time a hash must have been taken after the input's modification time
+     * for the hash to be trusted, covering coarse timestamps such as FAT's
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    /** File locked while evicting */
+    private static final String LOCK_FILE = ".lock";
+
+    /** Size of the buffer input files are hashed through */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Guards eviction within this JVM, where a file lock can only be held once */
+    private static final Object EVICTING = new Object();
+
+    /** Cache directory */
+    private final Path dir;
+
+    /** Largest total size of the entries, in bytes */
+    private final long capacity;
+
+    /**
+     * Opens a cache directory, creating it if needed
+     * @param dir name of the cache directory
+     * @param capacity largest total size of the entries, in bytes
+     * @throws IOException if the directory can not be created
+     * @throws IllegalArgumentException if dir is null or capacity is not positive
+     */
+    public ResultCache(String dir, long capacity) throws IOException {
+        if (dir == null) {
+            throw new IllegalArgumentException("Null directory");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        this.dir = Paths.get(dir);
+        this.capacity = capacity;
+        Files.createDirectories(this.dir);
+    }
+
+    /**
+     * Computes the key of a transformation
+     * @param infile name of the input file
+     * @param flags transformations in order
+     * @param format output encoding such as P6 or P6.gz, null to match the input
+     * @return SHA-256 of the input bytes, flags and format, in hex
+     * @throws IOException if the input file can not be read
+     */
+    public static String key(String infile, List<String> flags, String format)
+        throws IOException {
+        return combine(hash(Paths.get(infile)), flags, format);
+    }
+
+    /**
+     * Computes the key of a transformation, reading the input only when no
+     * trusted hash is remembered for its stamp
+     * @param infile name of the input file
+     * @param flags transformations in order
+     * @param format output encoding such as P6 or P6.gz, null to match the input
+     * @return the same key as key
+     * @throws IOException if the input file can not be read
+     */
+    public String keyFor(String infile, List<String> flags, String format) throws IOException {
+        Path input = Paths.get(infile).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        String stamp = input + "\n" + attributes.size() + "\n" + attributes.lastModifiedTime()
+                       + "\n" + attributes.fileKey() + "\n" + changeTime(input);
+        Path sum = dir.resolve(digest(stamp.getBytes(StandardCharsets.UTF_8)) + SUM_EXTENSION);
+        String[] fields;
+        try {
+            fields = Files.readString(sum, StandardCharsets.US_ASCII).trim().split(" ");
+            Files.setLastModifiedTime(sum, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            fields = new String[0];
+        }
+        if (fields.length == 2 && fields[0].length() == HASH_LENGTH
+            && modified < parseTime(fields[1]) - RACY_MILLIS) {
+            return combine(fields[0], flags, format);
+        }
+        // Taken before reading, so a write during the read makes the hash racy
+        long hashed = System.currentTimeMillis();
+        String content = hash(input);
+        Path temp = Files.createTempFile(dir, "sum", TEMP_EXTENSION);
+        Files.writeString(temp, content + " " + hashed, StandardCharsets.US_ASCII);
+        publish(temp, sum);
+        return combine(content, flags, format);
+    }
+
+    /**
+     * Reads the time a file's metadata last changed, which a write always
+     * moves forward even when the modification time is set back
+     * @param file path of the file
+     * @return the change time, - if the file system has none
+     * @throws IOException if the attributes can not be read
+     */
+    private static String changeTime(Path file) throws IOException {
+        try {
+            return String.valueOf(Files.getAttribute(file, "unix:ctime"));
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return "-";
+        }
+    }
+
+    /**
+     * Parses the time a remembered hash was taken
+     * @param text milliseconds since the epoch
+     * @return the time, 0 if the text is not a number
+     */
+    private static long parseTime(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Hashes the bytes of a file
+     * @param file path of the file
+     * @return SHA-256 of the bytes, in hex
+     * @throws IOException if the file can not be read
+     */
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Combines the hash of an input with the operations into a key
+     * @param content SHA-256 of the input bytes, in hex
+     * @param flags transformations in order
+     * @param format output encoding, null to match the input
+     * @return SHA-256 of the hash, flags and format, in hex
+     */
+    private static String combine(String content, List<String> flags, String format) {
+        return digest((content + "\n" + String.join(" ", flags) + "\n"
+                       + (format == null ? "-" : format)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hashes bytes
+     * @param bytes bytes to hash
+     * @return SHA-256 of the bytes, in hex
+     */
+    private static String digest(byte[] bytes) {
+        return HexFormat.of().formatHex(sha256().digest(bytes));
+    }
+
+    /**
+     * Creates a SHA-256 digest
+     * @return the digest
+     */
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies a cached result to the output file and marks it recently used
+     * The output is a copy, not a hard link, so overwriting it later can
+     * never change the cache entry
+     * @param key key of the transformation
+     * @param outfile name of the output file
+     * @return true on a hit, false if the entry does not exist
+     * @throws IOException if the entry or output file can not be accessed
+     */
+    public boolean fetch(String key, String outfile) throws IOException {
+        Path entry = entry(key);
+        try {
+            Files.copy(entry, Paths.get(outfile), StandardCopyOption.REPLACE_EXISTING);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            if (!Files.exists(entry)) {
+                return false;
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Adds an output file to the cache and evicts entries over the size cap
+     * The file is copied to a temporary name first and then renamed, so other
+     * processes never see a partial entry
+     * @param key key of the transformation
+     * @param outfile name of the output file holding the result
+     * @throws IOException if the entry can not be written
+     */
+    public void store(String key, String outfile) throws IOException {
+        Path temp = Files.createTempFile(dir, key, TEMP_EXTENSION);
+        Files.copy(Paths.get(outfile), temp, StandardCopyOption.REPLACE_EXISTING);
+        publish(temp, entry(key));
+        evict();
+    }
+
+    /**
+     * Renames a finished temporary file into place, atomically where the
+     * file system allows it, and deletes it if the rename fails
+     * @param temp the temporary file
+     * @param target final path in the cache directory
+     * @throws IOException if the file can not be renamed
+     */
+    private static void publish(Path temp, Path target) throws IOException {
+        try {
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries and remembered hashes until
+     * the rest fit in the size cap
+     * Temporary files older than an hour were left by a write that never
+     * finished and are deleted; newer ones count toward the size
+     * @throws IOException if the cache directory can not be listed or locked
+     */
+    @SuppressWarnings("try")
+    void evict() throws IOException {
+        synchronized (EVICTING) {
+            // The lock is only held for the block, so it is never read
+            try (FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock lock = lockChannel.lock()) {
+                List<Path> entries = new ArrayList<>();
+                Map<Path, FileTime> used = new HashMap<>();
+                Map<Path, Long> sizes = new HashMap<>();
+                long total = 0;
+                long stale = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir,
+                         "*{" + EXTENSION + "," + SUM_EXTENSION + "," + TEMP_EXTENSION + "}")) {
+                    for (Path entry : stream) {
+                        long size;
+                        FileTime time;
+                        try {
+                            time = Files.getLastModifiedTime(entry);
+                            size = Files.size(entry);
+                        } catch (NoSuchFileException e) {
+                            continue;
+                        }
+                        if (entry.toString().endsWith(TEMP_EXTENSION)) {
+                            if (time.toMillis() < stale) {
+                                Files.deleteIfExists(entry);
+                            }
+                            else {
+                                total += size;
+                            }
+                            continue;
+                        }
+                        used.put(entry, time);
+                        sizes.put(entry, size);
+                        entries.add(entry);
+                        total += size;
+                    }
+                }
+                entries.sort(Comparator.comparing(used::get));
+                for (int i = 0; i < entries.size() && total > capacity; i++) {
+                    Files.deleteIfExists(entries.get(i));
+                    total -= sizes.get(entries.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the path of an entry
+     * @param key key of the transformation
+     * @return path in the cache directory
+     */
+    private Path entry(String key) {
+        return dir.resolve(key + EXTENSION);
+    }
+}
@@ -0,0 +1,14 @@
+/**
+ * SampleFilter transforms a range of packed RGB samples in place
+ * Ranges always start and end on pixel boundaries
+ * @author Amelia Saldino
+ */
+public interface SampleFilter {
+    /**
+     * Transforms a range of packed samples
+     * @param data packed samples
+     * @param from index of the first sample, the red sample of a pixel
+     * @param to index just past the last sample, the blue sample of a pixel
+     */
+    void apply(byte[] data, int from, int to);
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.*;
+
+/**
+ * StageEvent is the Flight Recorder event committed around each stage Stats
+ * measures, so stages line up with GC and I/O events in a recording
+ * @author Amelia Saldino
+ */
+@Name("imageeditor.Stage")
+@Label("Image Stage")
+@Category("ImageEditor")
+@Description("One header, read, filter or write step of an image transformation")
+class StageEvent extends Event {
+    /** Name of the stage */
+    @Label("Stage")
+    String stage;
+
+    /** Bytes read, filtered or written by the step */
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+
+    /** Pixels handled by the step */
+    @Label("Pixels")
+    long pixels;
+}
@@ -0,0 +1,281 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+import jdk.jfr.EventType;
+
+/**
+ * Stats measures the stages of an image transformation: wall time, bytes,
+ * pixels and bytes allocated by the measuring thread for each stage
+ * Every measured step is also committed as a StageEvent while Flight
+ * Recorder records it; a Stats that is not measuring only does that, so
+ * runs without a report pay no clock or allocation reads per row
+ * A Stats is filled by one thread and is not safe for concurrent use
+ * @author Amelia Saldino
+ */
+public class Stats {
+    /** Stage that reads and validates the header */
+    public static final int HEADER = 0;
+
+    /** Stage that reads and decodes samples */
+    public static final int READ = 1;
+
+    /** Stage that transforms samples */
+    public static final int FILTER = 2;
+
+    /** Stage that encodes and writes samples */
+    public static final int WRITE = 3;
+
+    /** Names of the stages, by stage number */
+    private static final String[] NAMES = {"header", "read", "filter", "write"};
+
+    /** Nanoseconds in a millisecond */
+    private static final double NANOS_PER_MILLI = 1e6;
+
+    /** Nanoseconds in a second */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /** Source of per-thread allocation counts, null if the JVM has none */
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    /** Flight Recorder type of StageEvent, checked before creating events */
+    private static final EventType EVENT_TYPE = EventType.getEventType(StageEvent.class);
+
+    /** Whether steps are timed and counted, or only committed as events */
+    private final boolean measuring;
+
+    /** Wall time of each stage, in nanoseconds */
+    private final long[] nanos = new long[NAMES.length];
+
+    /** Bytes handled by each stage */
+    private final long[] bytes = new long[NAMES.length];
+
+    /** Pixels handled by each stage */
+    private final long[] pixels = new long[NAMES.length];
+
+    /** Bytes allocated during each stage */
+    private final long[] allocated = new long[NAMES.length];
+
+    /** Time the current step began */
+    private long beginNanos;
+
+    /** Allocation count when the current step began */
+    private long beginAllocated;
+
+    /** Event for the current step, null if Flight Recorder is not recording it */
+    private StageEvent event;
+
+    /** Strategy the transformation ran with, null if none was chosen */
+    private Plan plan;
+
+    /** Statistics of each channel, null unless only statistics were asked for */
+    private ChannelStats channels;
+
+    /**
+     * Creates a Stats that measures every step
+     */
+    public Stats() {
+        this(true);
+    }
+
+    /**
+     * Creates a Stats
+     * @param measuring true to time and count every step, false to only
+     * commit the steps as Flight Recorder events and keep the plan and
+     * channel statistics
+     */
+    public Stats(boolean measuring) {
+        this.measuring = measuring;
+    }
+
+    /**
+     * Checks if steps are timed and counted
+     * @return true if the Stats is measuring
+     */
+    public boolean isMeasuring() {
+        return measuring;
+    }
+
+    /**
+     * Starts measuring a step
+     */
+    public void begin() {
+        event = null;
+        if (EVENT_TYPE.isEnabled()) {
+            event = new StageEvent();
+            event.begin();
+        }
+        if (!measuring) {
+            return;
+        }
+        beginAllocated = allocatedBytes();
+        beginNanos = System.nanoTime();
+    }
+
+    /**
+     * Finishes measuring a step and adds it to a stage
+     * @param stage HEADER, READ, FILTER or WRITE
+     * @param stepBytes bytes the step read, filtered or wrote
+     * @param stepPixels pixels the step handled
+     * @throws IllegalArgumentException if stage is unknown
+     */
+    public void end(int stage, long stepBytes, long stepPixels) {
+        if (stage < 0 || stage >= NAMES.length) {
+            throw new IllegalArgumentException("Invalid stage");
+        }
+        if (measuring) {
+            nanos[stage] += System.nanoTime() - beginNanos;
+            allocated[stage] += allocatedBytes() - beginAllocated;
+            bytes[stage] += stepBytes;
+            pixels[stage] += stepPixels;
+        }
+        if (event != null && event.shouldCommit()) {
+            event.stage = NAMES[stage];
+            event.bytes = stepBytes;
+            event.pixels = stepPixels;
+            event.commit();
+            event = null;
+        }
+    }
+
+    /**
+     * Adds the measurements of another Stats, such as one filled by a worker thread
+     * Stages that ran at the same time on several threads add up their
+     * time, so it counts thread time rather than wall time
+     * @param other measurements to add
+     * @throws IllegalArgumentException if other is null
+     */
+    public void add(Stats other) {
+        if (other == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        for (int stage = 0; stage < NAMES.length; stage++) {
+            nanos[stage] += other.nanos[stage];
+            bytes[stage] += other.bytes[stage];
+            pixels[stage] += other.pixels[stage];
+            allocated[stage] += other.allocated[stage];
+        }
+    }
+
+    /**
+     * Returns the wall time of a stage
+     * @param stage HEADER, READ, FILTER or WRITE
+     * @return time in nanoseconds
+     */
+    public long getNanos(int stage) {
+        return nanos[stage];
+    }
+
+    /**
+     * Returns the bytes handled by a stage
+     * @param stage HEADER, READ, FILTER or WRITE
+     * @return number of bytes
+     */
+    public long getBytes(int stage) {
+        return bytes[stage];
+    }
+
+    /**
+     * Returns the pixels handled by a stage
+     * @param stage HEADER, READ, FILTER or WRITE
+     * @return number of pixels
+     */
+    public long getPixels(int stage) {
+        return pixels[stage];
+    }
+
+    /**
+     * Returns the bytes the measuring thread allocated during a stage
+     * Work handed to other threads, such as parallel filtering, is not counted
+     * @param stage HEADER, READ, FILTER or WRITE
+     * @return number of bytes, 0 if the JVM can not count allocations
+     */
+    public long getAllocatedBytes(int stage) {
+        return allocated[stage];
+    }
+
+    /**
+     * Returns the throughput of a stage
+     * @param stage HEADER, READ, FILTER or WRITE
+     * @return pixels per second, 0 if the stage took no time
+     */
+    public double getPixelsPerSecond(int stage) {
+        return nanos[stage] == 0 ? 0 : pixels[stage] * NANOS_PER_SECOND / nanos[stage];
+    }
+
+    /**
+     * Records the strategy the transformation runs with
+     * @param plan the chosen plan
+     */
+    public void setPlan(Plan plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Returns the strategy the transformation ran with
+     * @return the plan, null if none was chosen
+     */
+    public Plan getPlan() {
+        return plan;
+    }
+
+    /**
+     * Records the statistics of each channel of the input
+     * @param channels the statistics
+     */
+    public void setChannelStats(ChannelStats channels) {
+        this.channels = channels;
+    }
+
+    /**
+     * Returns the statistics of each channel of the input
+     * @return the statistics, null unless only statistics were asked for
+     */
+    public ChannelStats getChannelStats() {
+        return channels;
+    }
+
+    /**
+     * Formats the plan, if any, and one line per stage
+     * @return the report
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        if (plan != null) {
+            report.append("plan: ").append(plan).append(System.lineSeparator());
+        }
+        report.append(String.format(Locale.ROOT,
+            "%-8s %10s %12s %12s %12s %12s", "stage", "ms", "bytes", "pixels",
+            "Mpixels/s", "allocated"));
+        for (int stage = 0; stage < NAMES.length; stage++) {
+            report.append(System.lineSeparator()).append(String.format(Locale.ROOT,
+                "%-8s %10.2f %12d %12d %12.1f %12d", NAMES[stage],
+                nanos[stage] / NANOS_PER_MILLI, bytes[stage], pixels[stage],
+                getPixelsPerSecond(stage) / 1e6, allocated[stage]));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread
+     * @return number of bytes, 0 if the JVM can not count allocations
+     */
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Finds the allocation counting thread bean
+     * @return the bean, null if the JVM has none or it is turned off
+     */
+    private static com.sun.management.ThreadMXBean threads() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()) {
+            return (com.sun.management.ThreadMXBean) bean;
+        }
+        return null;
+    }
+}
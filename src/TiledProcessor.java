@@ -0,0 +1,143 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/**
+ * TiledProcessor transforms images larger than the heap
+ * The input is decoded once into a memory-mapped scratch file, then
+ * processed in tiles of whole rows that fit a memory budget, each tile
+ * read with the context rows its filter needs, and written in row order
+ * @author Amelia Saldino
+ */
+public class TiledProcessor {
+    /** Default memory budget for one tile, in bytes */
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    /** Largest scratch region mapped at once while decoding, in bytes */
+    private static final long MAP_WINDOW = 1 << 26;
+
+    /** Largest tile a budget can ask for, in bytes */
+    private static final long MAX_TILE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Prevents instantiation
+     */
+    private TiledProcessor() {
+    }
+
+    /**
+     * Decodes, transforms and writes an image tile by tile
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @param budget largest tile, including context rows, in bytes;
+     * raised to the smallest tile the filter can work with
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if a file can not be read or written
+     * @throws IllegalArgumentException if the reader, writer or filter
+     * is null, or budget is not positive
+     */
+    public static boolean process(PpmReader in, PpmWriter out, BandFilter filter, long budget)
+        throws IOException {
+        return process(in, out, filter, budget, new Stats());
+    }
+
+    /**
+     * Decodes, transforms and writes an image tile by tile, measuring each stage
+     * @param in reader for the input file, its header already read
+     * @param out writer for the output file, its header already written
+     * @param filter the transformation to apply
+     * @param budget largest tile, including context rows, in bytes;
+     * raised to the smallest tile the filter can work with
+     * @param stats receives the read, filter and write measurements
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if a file can not be read or written
+     * @throws IllegalArgumentException if the reader, writer, filter or
+     * stats is null, or budget is not positive
+     */
+    public static boolean process(PpmReader in, PpmWriter out, BandFilter filter, long budget,
+                                  Stats stats) throws IOException {
+        if (stats == null) {
+            throw new IllegalArgumentException("Null stats");
+        }
+        if (in == null || out == null) {
+            throw new IllegalArgumentException("Null file");
+        }
+        if (filter == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Invalid budget");
+        }
+        int width = in.getCols();
+        int height = in.getRows();
+        long stride = in.getRowLength();
+        int halo = filter.getHalo();
+
+        Path scratch = Files.createTempFile("ImageEditor", ".scratch");
+        try (FileChannel channel = FileChannel.open(scratch, StandardOpenOption.READ,
+                 StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE)) {
+            long start = in.getBytesRead();
+            stats.begin();
+            boolean valid = decode(in, channel, stride, height);
+            stats.end(Stats.READ, in.getBytesRead() - start, valid ? (long) width * height : 0);
+            if (!valid) {
+                return false;
+            }
+
+            long tileRows = Math.min(budget, MAX_TILE) / stride;
+            int coreRows = (int) Math.max(1, Math.min(height, tileRows - 2L * halo));
+            PixelBuffer tile = null;
+            for (int first = 0; first < height; first += coreRows) {
+                int last = Math.min(height, first + coreRows);
+                int from = Math.max(0, first - halo);
+                int to = Math.min(height, last + halo);
+                if (tile == null || tile.getHeight() != to - from) {
+                    tile = new PixelBuffer(width, to - from);
+                }
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                      from * stride, (to - from) * stride);
+                region.get(tile.getData());
+                long pixels = (long) width * (last - first);
+                stats.begin();
+                filter.apply(tile, first - from, last - from);
+                stats.end(Stats.FILTER, stride * (last - first), pixels);
+                long written = out.getBytesWritten();
+                stats.begin();
+                for (int row = first - from; row < last - from; row++) {
+                    out.writeRow(tile.getData(), tile.getOffset(row));
+                }
+                stats.end(Stats.WRITE, out.getBytesWritten() - written, pixels);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes every row into the scratch file through mapped windows
+     * @param in reader for the input file, its header already read
+     * @param channel channel of the scratch file
+     * @param stride number of bytes in one row
+     * @param height number of rows
+     * @return true if every row was valid, false otherwise
+     * @throws IOException if a file can not be read or written
+     */
+    private static boolean decode(PpmReader in, FileChannel channel, long stride, int height)
+        throws IOException {
+        byte[] row = new byte[(int) stride];
+        long windowRows = Math.max(1, MAP_WINDOW / stride);
+        MappedByteBuffer window = null;
+        for (int i = 0; i < height; i++) {
+            if (i % windowRows == 0) {
+                long size = Math.min(windowRows, height - i) * stride;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, i * stride, size);
+            }
+            if (!in.readRow(row, 0)) {
+                return false;
+            }
+            window.put(row);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,57 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorKernels holds SIMD versions of the per-sample filter kernels
+ * Built on the incubating jdk.incubator.vector module, so this class is
+ * only loaded when the JVM runs with --add-modules jdk.incubator.vector;
+ * ImageEditor falls back to its scalar loops otherwise
+ * @author Amelia Saldino
+ */
+final class VectorKernels {
+    /** Widest byte lanes the hardware handles well */
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    /** Shift that spreads the sign bit of a byte over the whole byte */
+    private static final int SIGN_SHIFT = 7;
+
+    /**
+     * Prevents instantiation
+     */
+    private VectorKernels() {
+    }
+
+    /**
+     * Inverts whole vectors of samples; 255 - v is the bitwise not of v
+     * @param data packed samples
+     * @param from index of the first sample
+     * @param to index just past the last sample
+     * @return index of the first sample left for the scalar loop
+     */
+    static int invert(byte[] data, int from, int to) {
+        int end = from + BYTES.loopBound(to - from);
+        for (int i = from; i < end; i += BYTES.length()) {
+            ByteVector.fromArray(BYTES, data, i).not().intoArray(data, i);
+        }
+        return end;
+    }
+
+    /**
+     * Converts whole vectors of samples to high contrast; a sample is at
+     * least 128 exactly when its sign bit is set, so an arithmetic shift
+     * by 7 gives 255 or 0 without a branch
+     * @param data packed samples
+     * @param from index of the first sample
+     * @param to index just past the last sample
+     * @return index of the first sample left for the scalar loop
+     */
+    static int highContrast(byte[] data, int from, int to) {
+        int end = from + BYTES.loopBound(to - from);
+        for (int i = from; i < end; i += BYTES.length()) {
+            ByteVector.fromArray(BYTES, data, i).lanewise(VectorOperators.ASHR, SIGN_SHIFT)
+                .intoArray(data, i);
+        }
+        return end;
+    }
+}
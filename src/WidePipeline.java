@@ -0,0 +1,203 @@
+import java.util.*;
+
+/**
+ * WidePipeline runs -I, -H and -G in a single pass over samples whose max
+ * color value is not 255, held one per char so values up to 65535 fit
+ * It is compiled the way Pipeline is, into at most a table, a greyscale and
+ * another table, but its tables have one entry per value up to the max
+ * color value and invert and high contrast scale to that value
+ * @author Amelia Saldino
+ */
+public class WidePipeline {
+    /** Largest max color value a PPM file can have */
+    public static final int MAX_WIDE_VALUE = 65535;
+
+    /** Number of Values in RGB */
+    private static final int NUM_VAL_RGB = 3;
+
+    /** Largest sample value */
+    private final int maxColorValue;
+
+    /** Table applied to every sample before greyscale, null if identity */
+    private final char[] before;
+
+    /** Whether the samples of each pixel are averaged */
+    private final boolean grey;
+
+    /** Fixed point luma weights of red, green and blue, null for a plain average */
+    private final int[] weights;
+
+    /** Table applied to the greyscale average, null if identity */
+    private final char[] after;
+
+    /**
+     * Creates a compiled pipeline
+     * @param maxColorValue largest sample value
+     * @param before table applied before greyscale, null if identity
+     * @param grey whether the samples of each pixel are averaged
+     * @param weights luma weights for greyscale, null for a plain average
+     * @param after table applied after greyscale, null if identity
+     */
+    private WidePipeline(int maxColorValue, char[] before, boolean grey, int[] weights,
+                         char[] after) {
+        this.maxColorValue = maxColorValue;
+        this.before = before;
+        this.grey = grey;
+        this.weights = weights;
+        this.after = after;
+    }
+
+    /**
+     * Compiles a sequence of transformation flags for a max color value
+     * @param flags transformations in the order to apply them, each -I, -H or -G
+     * @param luma 601 or 709 for weighted greyscale, null for an average
+     * @param maxColorValue largest sample value, 1 to 65535
+     * @return the compiled pipeline
+     * @throws IllegalArgumentException if flags is null or holds an unknown
+     * flag, luma is unknown, or maxColorValue is out of range
+     */
+    public static WidePipeline compile(List<String> flags, String luma, int maxColorValue) {
+        if (flags == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        checkMaxColorValue(maxColorValue);
+        int[] weights = Pipeline.weights(luma);
+        char[] before = identity(maxColorValue);
+        char[] after = null;
+        for (String flag : flags) {
+            if (flag.equals("-G")) {
+                if (after == null) {
+                    after = identity(maxColorValue);
+                }
+                continue;
+            }
+            char[] table = after == null ? before : after;
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (char) apply(flag, table[i], maxColorValue);
+            }
+        }
+        boolean grey = after != null;
+        return new WidePipeline(maxColorValue, isIdentity(before) ? null : before, grey,
+                                grey ? weights : null, grey && !isIdentity(after) ? after : null);
+    }
+
+    /**
+     * Applies -I or -H to one sample
+     * Invert subtracts from the max color value, and high contrast sends the
+     * lower half of the values to 0 and the upper half to the max color value
+     * @param flag the transformation, -I or -H
+     * @param value the sample
+     * @param maxColorValue largest sample value
+     * @return the transformed sample
+     * @throws IllegalArgumentException if flag is null or unknown
+     */
+    static int apply(String flag, int value, int maxColorValue) {
+        if (flag == null) {
+            throw new IllegalArgumentException("Null flag");
+        }
+        switch (flag) {
+            case "-I":
+                return maxColorValue - value;
+            case "-H":
+                return value < (maxColorValue + 1) / 2 ? 0 : maxColorValue;
+            default:
+                throw new IllegalArgumentException("Invalid flag");
+        }
+    }
+
+    /**
+     * Checks a max color value
+     * @param maxColorValue largest sample value
+     * @throws IllegalArgumentException if it is not 1 to 65535
+     */
+    static void checkMaxColorValue(int maxColorValue) {
+        if (maxColorValue < 1 || maxColorValue > MAX_WIDE_VALUE) {
+            throw new IllegalArgumentException("Invalid max color value");
+        }
+    }
+
+    /**
+     * Transforms a range of samples in one pass
+     * @param data samples, each at most the max color value
+     * @param from index of the first sample, the red sample of a pixel
+     * @param to index just past the last sample, the blue sample of a pixel
+     */
+    public void apply(char[] data, int from, int to) {
+        if (!grey) {
+            if (before != null) {
+                for (int i = from; i < to; i++) {
+                    data[i] = before[data[i]];
+                }
+            }
+            return;
+        }
+        for (int i = from; i < to; i += NUM_VAL_RGB) {
+            int red = data[i];
+            int green = data[i + 1];
+            int blue = data[i + 2];
+            if (before != null) {
+                red = before[red];
+                green = before[green];
+                blue = before[blue];
+            }
+            char average;
+            if (weights == null) {
+                average = (char) ((red + green + blue) / 3);
+            }
+            else {
+                average = (char) (((long) weights[0] * red + (long) weights[1] * green
+                                   + (long) weights[2] * blue + (1L << (Pipeline.WEIGHT_BITS - 1)))
+                                  >> Pipeline.WEIGHT_BITS);
+            }
+            if (after != null) {
+                average = after[average];
+            }
+            data[i] = average;
+            data[i + 1] = average;
+            data[i + 2] = average;
+        }
+    }
+
+    /**
+     * Checks if the pipeline leaves every sample unchanged
+     * @return true if nothing needs to be applied
+     */
+    public boolean isIdentity() {
+        return before == null && !grey;
+    }
+
+    /**
+     * Returns the max color value the pipeline was compiled for
+     * @return largest sample value
+     */
+    public int getMaxColorValue() {
+        return maxColorValue;
+    }
+
+    /**
+     * Creates a table that maps every value to itself
+     * @param maxColorValue largest sample value
+     * @return identity table
+     */
+    private static char[] identity(int maxColorValue) {
+        char[] table = new char[maxColorValue + 1];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (char) i;
+        }
+        return table;
+    }
+
+    /**
+     * Checks if a table maps every value to itself
+     * @param table lookup table
+     * @return true if the table is the identity
+     */
+    private static boolean isIdentity(char[] table) {
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
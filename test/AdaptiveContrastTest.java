@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.*;
+
+/**
+ * Program to test AdaptiveContrast and Histogram methods
+ *
+ * @author Amelia Saldino
+ */
+public class AdaptiveContrastTest {
+
+    /**
+     * Tests that Otsu's method splits a two-peaked histogram between the peaks
+     */
+    @Test
+    public void testOtsu() {
+        long[] histogram = new long[Histogram.LEVELS];
+        histogram[20] = 100;
+        histogram[30] = 50;
+        histogram[90] = 80;
+        int threshold = AdaptiveContrast.otsu(histogram);
+        assertTrue(threshold > 30 && threshold <= 90, "Between the peaks: " + threshold);
+        assertEquals(128, AdaptiveContrast.otsu(new long[Histogram.LEVELS]), "Empty histogram");
+        histogram = new long[Histogram.LEVELS];
+        histogram[7] = 5;
+        assertEquals(128, AdaptiveContrast.otsu(histogram), "One value");
+    }
+
+    /**
+     * Tests that the parallel histogram matches a sequential count
+     */
+    @Test
+    public void testHistogram() {
+        PixelBuffer image = TestImages.pattern(37, 101);
+        long[] expected = new long[3 * Histogram.LEVELS];
+        byte[] data = image.getData();
+        for (int i = 0; i < data.length; i++) {
+            expected[(i % 3) * Histogram.LEVELS + (data[i] & 0xFF)]++;
+        }
+        assertArrayEquals(expected, Histogram.count(image, Pipeline.compile(List.of()), 4, 50),
+                          "Parallel counts");
+    }
+
+    /**
+     * Tests a dark image, where the fixed midpoint turns everything black
+     */
+    @Test
+    public void testDarkImage() {
+        PixelBuffer image = PixelBuffer.fromArray(new int[][] {{10, 10, 10, 60, 60, 60},
+                                                               {12, 12, 12, 70, 70, 70}});
+        List<int[]> picked = AdaptiveContrast.apply(image, List.of("-H"), null,
+                                                    AdaptiveContrast.GLOBAL, 1, 1);
+        assertEquals(1, picked.size(), "One threshold per -H");
+        assertArrayEquals(new int[][] {{0, 0, 0, 255, 255, 255}, {0, 0, 0, 255, 255, 255}},
+                          image.toArray(), "Dark image split");
+    }
+
+    /**
+     * Tests per channel thresholds against one global threshold
+     */
+    @Test
+    public void testChannelMode() {
+        int[][] pixels = {{10, 200, 100, 20, 240, 100}, {10, 200, 0, 20, 240, 0}};
+        PixelBuffer global = PixelBuffer.fromArray(pixels);
+        PixelBuffer channel = PixelBuffer.fromArray(pixels);
+        AdaptiveContrast.apply(global, List.of("-H"), null, AdaptiveContrast.GLOBAL, 1, 1);
+        AdaptiveContrast.apply(channel, List.of("-H"), null, AdaptiveContrast.CHANNEL, 1, 1);
+        assertArrayEquals(new int[][] {{0, 255, 0, 0, 255, 0}, {0, 255, 0, 0, 255, 0}},
+                          global.toArray(), "Global threshold");
+        assertArrayEquals(new int[][] {{0, 0, 255, 255, 255, 255}, {0, 0, 0, 255, 255, 0}},
+                          channel.toArray(), "Channel thresholds");
+    }
+
+    /**
+     * Tests that a chain with several steps gives the same bytes on several threads
+     */
+    @Test
+    public void testMatchesSequential() {
+        List<String> flags = List.of("-I", "-H", "-G", "-H", "-I");
+        PixelBuffer sequential = TestImages.pattern(37, 101);
+        PixelBuffer parallel = TestImages.pattern(37, 101);
+        List<int[]> expected = AdaptiveContrast.apply(sequential, flags, "601",
+                                                      AdaptiveContrast.CHANNEL, 1, 50);
+        List<int[]> actual = AdaptiveContrast.apply(parallel, flags, "601",
+                                                    AdaptiveContrast.CHANNEL, 4, 50);
+        assertEquals(2, actual.size(), "Two thresholds");
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), "Thresholds");
+        }
+        assertArrayEquals(sequential.getData(), parallel.getData(), "Parallel result");
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        PixelBuffer image = new PixelBuffer(1, 1);
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> AdaptiveContrast.apply(image, List.of("-H"), null, "local", 1, 1),
+            "Unknown mode");
+        assertEquals("Invalid mode", exception.getMessage(), "Unknown mode");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> AdaptiveContrast.thresholds(new long[1], false), "Short histogram");
+        assertEquals("Invalid histogram", exception.getMessage(), "Short histogram");
+    }
+}
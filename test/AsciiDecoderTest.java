@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Program to test AsciiDecoder methods
+ *
+ * @author Amelia Saldino
+ */
+public class AsciiDecoderTest {
+
+    /** Whitespace mixed between samples */
+    private static final String[] SPACES = {" ", "\n", "  ", "\t", "\r\n", " \f "};
+
+    /** Directory for test files */
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes a P3 file of random samples separated by mixed whitespace
+     * @param name name of the file
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @param tail text after the last sample
+     * @return path of the file
+     * @throws IOException if the file can not be written
+     */
+    private Path image(String name, int cols, int rows, String tail) throws IOException {
+        Random random = new Random(cols * 31 + rows);
+        StringBuilder contents = new StringBuilder("P3\n" + cols + " " + rows + "\n255\n");
+        for (int i = 0; i < cols * rows * 3; i++) {
+            contents.append(random.nextInt(256));
+            contents.append(SPACES[random.nextInt(SPACES.length)]);
+        }
+        contents.append(tail);
+        Path file = dir.resolve(name);
+        Files.write(file, contents.toString().getBytes());
+        return file;
+    }
+
+    /**
+     * Reads a file's image with the given number of threads and chunk size
+     * @param file path of the file
+     * @param threads number of threads
+     * @param chunkBytes number of bytes in one chunk
+     * @return the image, null if the samples are invalid
+     * @throws IOException if the file can not be read
+     */
+    private static PixelBuffer read(Path file, int threads, long chunkBytes) throws IOException {
+        try (PpmReader in = PpmReader.open(file.toString())) {
+            assertTrue(in.readHeader(), "Header");
+            return in.readImage(threads, chunkBytes);
+        }
+    }
+
+    /**
+     * Tests that chunked decoding matches reading row by row for
+     * chunk sizes that cut tokens in every possible place, the smallest of
+     * which span many windows of mapped chunks
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void testMatchesSequential() throws IOException {
+        Path file = image("random.ppm", 37, 23, "\n");
+        PixelBuffer expected = read(file, 1, AsciiDecoder.DEFAULT_CHUNK);
+        for (long chunk : new long[] {1, 2, 3, 7, 64, 1000, AsciiDecoder.DEFAULT_CHUNK}) {
+            for (int threads : new int[] {2, 4}) {
+                PixelBuffer actual = read(file, threads, chunk);
+                assertNotNull(actual, chunk + " byte chunks");
+                assertArrayEquals(expected.getData(), actual.getData(),
+                                  chunk + " byte chunks on " + threads + " threads");
+            }
+        }
+    }
+
+    /**
+     * Tests files without a trailing newline and with extra tokens after
+     * the last sample, which are ignored as when reading row by row
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void testEnds() throws IOException {
+        Path file = dir.resolve("short.ppm");
+        Files.write(file, "P3 2 1 255 1 2 3 250 251 252".getBytes());
+        assertArrayEquals(new int[][] {{1, 2, 3, 250, 251, 252}}, read(file, 2, 3).toArray(),
+                          "No trailing newline");
+
+        file = image("extra.ppm", 5, 4, "7 x 300\n");
+        assertArrayEquals(read(file, 1, 16).getData(), read(file, 3, 16).getData(),
+                          "Extra tokens after the last sample");
+    }
+
+    /**
+     * Tests invalid and missing samples in any chunk
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void testInvalidSamples() throws IOException {
+        Path file = dir.resolve("invalid.ppm");
+        Files.write(file, "P3 2 2 255 1 2 3 4 5 6 7 8 9 10 11 12\n".getBytes());
+        assertNotNull(read(file, 2, 4), "Valid file");
+        for (String bad : new String[] {"256", "x", "-1", "1a", "99999999999"}) {
+            for (int position = 0; position < 12; position++) {
+                StringBuilder contents = new StringBuilder("P3 2 2 255");
+                for (int i = 0; i < 12; i++) {
+                    contents.append(' ').append(i == position ? bad : Integer.toString(i));
+                }
+                Files.write(file, contents.toString().getBytes());
+                assertNull(read(file, 2, 4), "Tests " + bad + " as sample " + position);
+            }
+        }
+        Files.write(file, "P3 2 2 255 1 2 3 4 5 6 7 8 9 10 11\n".getBytes());
+        assertNull(read(file, 2, 4), "Tests too few values");
+    }
+
+    /**
+     * Tests invalid arguments
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void testInvalidArguments() throws IOException {
+        Path file = image("args.ppm", 2, 2, "");
+        try (FileChannel channel = FileChannel.open(file)) {
+            Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> AsciiDecoder.decode(null, 0, new byte[1], 255, 2, 1), "Null file");
+            assertEquals("Null file", exception.getMessage(), "Null file - exception message");
+            exception = assertThrows(IllegalArgumentException.class,
+                () -> AsciiDecoder.decode(channel, 0, null, 255, 2, 1), "Null data");
+            assertEquals("Null image", exception.getMessage(), "Null data - exception message");
+            exception = assertThrows(IllegalArgumentException.class,
+                () -> AsciiDecoder.decode(channel, 0, new byte[1], 255, 0, 1), "Zero threads");
+            assertEquals("Invalid thread count", exception.getMessage(),
+                         "Zero threads - exception message");
+            exception = assertThrows(IllegalArgumentException.class,
+                () -> AsciiDecoder.decode(channel, 0, new byte[1], 255, 2, 0), "Zero chunk");
+            assertEquals("Invalid chunk size", exception.getMessage(),
+                         "Zero chunk - exception message");
+        }
+    }
+}
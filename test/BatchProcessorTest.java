@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test BatchProcessor methods
+ *
+ * @author Amelia Saldino
+ */
+public class BatchProcessorTest {
+
+    /** Temporary output directory written by the tests */
+    private static final String OUTDIR = "test-files/obscureBatchOutput";
+
+    /**
+     * Deletes the temporary output directory
+     * @throws IOException if a file can not be deleted
+     */
+    private static void cleanUp() throws IOException {
+        Path dir = Paths.get(OUTDIR);
+        if (Files.exists(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path file : stream) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    /**
+     * Tests that errors are reported per file without stopping the batch
+     */
+    @Test
+    public void testPerFileErrors() throws IOException {
+        try {
+            cleanUp();
+            Files.createDirectories(Paths.get(OUTDIR));
+            Files.copy(Paths.get("test-files/test1.ppm"), Paths.get(OUTDIR, "existing.ppm"));
+            List<String[]> entries = List.of(
+                new String[] {"-I", "test-files/test1.ppm", OUTDIR + "/test1Inverted.ppm"},
+                new String[] {"-I", "test-files/bad_input.ppm", OUTDIR + "/bad.ppm"},
+                new String[] {"-I", "test-files/missing.ppm", OUTDIR + "/missing.ppm"},
+                new String[] {"-I", "test-files/test2.ppm", OUTDIR + "/existing.ppm"},
+                new String[] {"-X", "test-files/test3.ppm", OUTDIR + "/test3.ppm"});
+
+            List<BatchProcessor.Result> results =
+                new BatchProcessor(entries, BatchProcessor.FAIL, 2).run();
+            assertEquals(5, results.size(), "One result per entry");
+            assertTrue(results.get(0).isOk(), "Valid entry");
+            assertEquals("Invalid input file", results.get(1).getMessage(), "Invalid input");
+            assertEquals("Unable to access input file: test-files/missing.ppm",
+                         results.get(2).getMessage(), "Missing input");
+            assertEquals("Output file exists", results.get(3).getMessage(), "Fail policy");
+            assertEquals("Invalid batch entry", results.get(4).getMessage(), "Invalid flag");
+            assertArrayEquals(Files.readAllBytes(Paths.get("test-files/exp_test1Inverted.ppm")),
+                              Files.readAllBytes(Paths.get(OUTDIR, "test1Inverted.ppm")),
+                              "Valid entry output");
+
+            results = new BatchProcessor(entries.subList(3, 4), BatchProcessor.SKIP, 1).run();
+            assertTrue(results.get(0).isSkipped(), "Skip policy");
+
+            results = new BatchProcessor(entries.subList(3, 4), BatchProcessor.OVERWRITE, 1).run();
+            assertTrue(results.get(0).isOk(), "Overwrite policy");
+
+            byte[] existing = Files.readAllBytes(Paths.get(OUTDIR, "existing.ppm"));
+            List<String[]> sameDir = BatchProcessor.entries(OUTDIR + "/*.ppm", OUTDIR,
+                                                            List.of("-I"));
+            for (String[] entry : sameDir) {
+                results = new BatchProcessor(Collections.singletonList(entry),
+                                             BatchProcessor.OVERWRITE, 1).run();
+                assertEquals("Input and output are the same file", results.get(0).getMessage(),
+                             "Output directory is the source directory");
+            }
+            results = new BatchProcessor(Collections.singletonList(new String[] {"-I",
+                OUTDIR + "/existing.ppm", OUTDIR + "/../" + Paths.get(OUTDIR).getFileName()
+                + "/existing.ppm"}), BatchProcessor.OVERWRITE, 1).run();
+            assertEquals("Input and output are the same file", results.get(0).getMessage(),
+                         "Same file under another name");
+            assertArrayEquals(existing, Files.readAllBytes(Paths.get(OUTDIR, "existing.ppm")),
+                              "Input left alone");
+        }
+        finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests that a -S entry reports statistics and writes nothing
+     */
+    @Test
+    public void testStatsEntry() throws IOException {
+        try {
+            cleanUp();
+            Path manifest = Paths.get(OUTDIR, "manifest.txt");
+            Files.createDirectories(manifest.getParent());
+            Files.write(manifest, List.of("-S test-files/test1.ppm", "-S test-files/missing.ppm"));
+            List<BatchProcessor.Result> results = new BatchProcessor(
+                BatchProcessor.entries(manifest.toString(), null, List.of("-G")),
+                BatchProcessor.FAIL, 2).run();
+            assertEquals(2, results.size(), "One result per entry");
+            assertTrue(results.get(0).isOk(), "Statistics entry");
+            assertTrue(results.get(0).toString().startsWith("test-files/test1.ppm {\"width\":"),
+                       results.get(0).toString());
+            assertEquals("Unable to access input file: test-files/missing.ppm",
+                         results.get(1).getMessage(), "Missing input");
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(OUTDIR))) {
+                for (Path file : stream) {
+                    assertEquals(manifest, file, "Nothing written");
+                }
+            }
+        }
+        finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests that files transformed at once share the memory budget, so
+     * images that each fit it alone do not all plan to be held whole
+     */
+    @Test
+    public void testSharedBudget() throws IOException {
+        try {
+            cleanUp();
+            Files.createDirectories(Paths.get(OUTDIR));
+            // Only the header is read by a dry run; each image alone is about 4 MB in memory
+            for (int i = 0; i < 4; i++) {
+                Files.write(Paths.get(OUTDIR, "near" + i + ".ppm"),
+                            "P6\n1000 1000\n255\n".getBytes());
+            }
+            long memory = 8L << 20;
+            List<BatchProcessor.Result> results = new BatchProcessor(
+                BatchProcessor.entries(OUTDIR + "/near?.ppm", OUTDIR + "/out",
+                                       List.of("-I", "-threads", "2", "-memory", "8m", "-dryrun")),
+                BatchProcessor.FAIL, 4).run();
+            assertEquals(4, results.size(), "One result per entry");
+            long total = 0;
+            for (BatchProcessor.Result result : results) {
+                assertTrue(result.isOk(), result.toString());
+                Plan plan = result.getPlan();
+                assertEquals(memory / 4, plan.getMemory(), "Share of the budget");
+                assertNotEquals(Plan.MEMORY, plan.getMode(), "Not held whole");
+                assertTrue(plan.fits(), plan.toString());
+                total += plan.getPeakBytes();
+            }
+            assertTrue(total <= memory, "Planned " + total + " bytes in total");
+
+            results = new BatchProcessor(Collections.singletonList(new String[] {"-I",
+                "-threads", "2", "-memory", "8m", "-dryrun", OUTDIR + "/near0.ppm",
+                OUTDIR + "/out/near0.ppm"}), BatchProcessor.FAIL, 4).run();
+            assertEquals(Plan.MEMORY, results.get(0).getPlan().getMode(), "One image held whole");
+        }
+        finally {
+            // The output directory is empty, so it goes with the other files
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests listing entries from a glob and from a manifest
+     */
+    @Test
+    public void testEntries() throws IOException {
+        try {
+            cleanUp();
+            List<String[]> entries = BatchProcessor.entries("test-files/test?.ppm", OUTDIR,
+                                                            List.of("-G"));
+            assertEquals(9, entries.size(), "Glob matches");
+            assertArrayEquals(new String[] {"-G", Paths.get("test-files/test1.ppm").toString(),
+                                            Paths.get(OUTDIR, "test1.ppm").toString()},
+                              entries.get(0), "First glob entry");
+
+            assertNull(BatchProcessor.entries("test-files/test?.ppm", null, List.of("-G")),
+                       "Glob without output directory");
+
+            Path manifest = Paths.get(OUTDIR, "manifest.txt");
+            Files.write(manifest, List.of("# comment", "", "a.ppm b.ppm", "-I -H c.ppm d.ppm"));
+            entries = BatchProcessor.entries(manifest.toString(), null, List.of("-G"));
+            assertEquals(2, entries.size(), "Manifest entries");
+            assertArrayEquals(new String[] {"-G", "a.ppm", "b.ppm"}, entries.get(0),
+                              "Entry with default flags");
+            assertArrayEquals(new String[] {"-I", "-H", "c.ppm", "d.ppm"}, entries.get(1),
+                              "Entry with its own flags");
+        }
+        finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests invalid batch settings
+     */
+    @Test
+    public void testInvalid() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> new BatchProcessor(List.of(), "ask", 1), "Unknown policy");
+        assertEquals("Invalid policy", exception.getMessage(),
+                     "Testing unknown policy - exception message");
+
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> new BatchProcessor(List.of(), BatchProcessor.SKIP, 0), "Zero jobs");
+        assertEquals("Invalid job count", exception.getMessage(),
+                     "Testing zero jobs - exception message");
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Program to test ChannelStats methods
+ *
+ * @author Amelia Saldino
+ */
+public class ChannelStatsTest {
+
+    /** Width of the test image */
+    private static final int WIDTH = 19;
+
+    /** Height of the test image */
+    private static final int HEIGHT = 13;
+
+    /** Directory for test files */
+    @TempDir
+    Path dir;
+
+    /**
+     * Writes a P6 file of random samples
+     * @param samples the samples, filled in
+     * @return path of the file
+     * @throws IOException if the file can not be written
+     */
+    private Path image(byte[] samples) throws IOException {
+        new Random(WIDTH * HEIGHT).nextBytes(samples);
+        byte[] header = ("P6\n" + WIDTH + " " + HEIGHT + "\n255\n").getBytes();
+        byte[] contents = new byte[header.length + samples.length];
+        System.arraycopy(header, 0, contents, 0, header.length);
+        System.arraycopy(samples, 0, contents, header.length, samples.length);
+        Path file = dir.resolve("random.ppm");
+        Files.write(file, contents);
+        return file;
+    }
+
+    /**
+     * Reads the statistics of a file
+     * @param file path of the file
+     * @param threads number of threads
+     * @param blockBytes target size of one block
+     * @return the statistics, null if the samples are invalid
+     * @throws IOException if the file can not be read
+     */
+    private static ChannelStats read(Path file, int threads, int blockBytes) throws IOException {
+        try (PpmReader in = PpmReader.open(file.toString())) {
+            assertTrue(in.readHeader(), "Header");
+            return ChannelStats.read(in, threads, 16, blockBytes, new Stats());
+        }
+    }
+
+    /**
+     * Tests the figures of each channel against the samples, for blocks of
+     * one row, several rows and the whole image, on one and several threads
+     * @throws IOException if the file can not be read
+     */
+    @Test
+    public void testRead() throws IOException {
+        byte[] samples = new byte[WIDTH * HEIGHT * 3];
+        Path file = image(samples);
+        for (int blockBytes : new int[] {1, WIDTH * 3 * 4, 1 << 20}) {
+            for (int threads : new int[] {1, 3}) {
+                ChannelStats stats = read(file, threads, blockBytes);
+                String message = blockBytes + " byte blocks on " + threads + " threads";
+                for (int c = 0; c < 3; c++) {
+                    long[] histogram = new long[Histogram.LEVELS];
+                    int min = 255;
+                    int max = 0;
+                    double sum = 0;
+                    for (int i = c; i < samples.length; i += 3) {
+                        int value = samples[i] & 0xFF;
+                        histogram[value]++;
+                        min = Math.min(min, value);
+                        max = Math.max(max, value);
+                        sum += value;
+                    }
+                    double mean = sum / (WIDTH * HEIGHT);
+                    double squares = 0;
+                    for (int i = c; i < samples.length; i += 3) {
+                        squares += ((samples[i] & 0xFF) - mean) * ((samples[i] & 0xFF) - mean);
+                    }
+                    assertArrayEquals(histogram, stats.getHistogram(c), "Histogram " + message);
+                    assertEquals(min, stats.getMin(c), "Min " + message);
+                    assertEquals(max, stats.getMax(c), "Max " + message);
+                    assertEquals(mean, stats.getMean(c), 1e-9, "Mean " + message);
+                    assertEquals(Math.sqrt(squares / (WIDTH * HEIGHT)), stats.getStdDev(c), 1e-9,
+                                 "Standard deviation " + message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests the JSON form of a one pixel image
+     */
+    @Test
+    public void testToJson() {
+        long[] counts = new long[3 * Histogram.LEVELS];
+        counts[45] = 1;
+        counts[Histogram.LEVELS + 128] = 1;
+        counts[2 * Histogram.LEVELS + 220] = 1;
+        String json = new ChannelStats(1, 1, counts).toJson();
+        assertTrue(json.startsWith("{\"width\":1,\"height\":1,\"red\":{\"min\":45,\"max\":45,"
+                                   + "\"mean\":45.0000,\"stddev\":0.0000,\"histogram\":[0,0,"),
+                   "Start: " + json);
+        assertTrue(json.contains("\"green\":{\"min\":128,\"max\":128,"), "Green");
+        assertTrue(json.contains("\"blue\":{\"min\":220,\"max\":220,"), "Blue");
+        assertTrue(json.endsWith(",1" + ",0".repeat(255 - 220) + "]}}"), "End: " + json);
+    }
+
+    /**
+     * Tests invalid samples and arguments
+     * @throws IOException if a file can not be read or written
+     */
+    @Test
+    public void testInvalid() throws IOException {
+        Path file = dir.resolve("short.ppm");
+        Files.write(file, "P3 2 2 255 1 2 3 4 5 6 7 8 9 10 11\n".getBytes());
+        assertNull(read(file, 1, 1), "Too few samples");
+        assertNull(read(file, 2, 1), "Too few samples on two threads");
+        try (PpmReader in = PpmReader.open(file.toString())) {
+            assertTrue(in.readHeader(), "Header");
+            Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> ChannelStats.read(in, 0, 1, new Stats()), "Zero threads");
+            assertEquals("Invalid thread count", exception.getMessage(),
+                         "Zero threads - exception message");
+            exception = assertThrows(IllegalArgumentException.class,
+                () -> ChannelStats.read(in, 1, 1, null), "Null stats");
+            assertEquals("Null stats", exception.getMessage(), "Null stats - exception message");
+        }
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> ChannelStats.read(null, 1, 1, new Stats()), "Null reader");
+        assertEquals("Null file", exception.getMessage(), "Null reader - exception message");
+    }
+}
@@ -0,0 +1,82 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test Convolution methods
+ *
+ * @author Amelia Saldino
+ */
+public class ConvolutionTest {
+
+    /** Every neighborhood flag */
+    private static final String[] FLAGS = {Convolution.BLUR, Convolution.GAUSS,
+                                           Convolution.SHARPEN, Convolution.EDGE};
+
+    /**
+     * Tests that a flat image is unchanged by the blurs and sharpen and black after edges
+     */
+    @Test
+    public void testFlat() {
+        for (String flag : FLAGS) {
+            int[][] pixels = {{70, 80, 90, 70, 80, 90}, {70, 80, 90, 70, 80, 90}};
+            ImageEditor.convolve(pixels, flag);
+            int[][] expected = flag.equals(Convolution.EDGE) ? new int[2][6]
+                : new int[][] {{70, 80, 90, 70, 80, 90}, {70, 80, 90, 70, 80, 90}};
+            assertArrayEquals(expected, pixels, flag);
+        }
+    }
+
+    /**
+     * Tests each filter on one row, where the rows above and below repeat it
+     */
+    @Test
+    public void testOneRow() {
+        int[][] pixels = {{0, 0, 0, 90, 90, 90, 0, 0, 0}};
+        ImageEditor.convolve(pixels, Convolution.BLUR);
+        assertArrayEquals(new int[][] {{30, 30, 30, 30, 30, 30, 30, 30, 30}}, pixels, "Blur");
+
+        pixels = new int[][] {{0, 0, 0, 90, 90, 90, 0, 0, 0}};
+        ImageEditor.convolve(pixels, Convolution.SHARPEN);
+        assertArrayEquals(new int[][] {{0, 0, 0, 150, 150, 150, 0, 0, 0}}, pixels, "Sharpen");
+
+        pixels = new int[][] {{0, 0, 0, 0, 0, 0, 255, 255, 255, 255, 255, 255}};
+        ImageEditor.convolve(pixels, Convolution.EDGE);
+        assertArrayEquals(new int[][] {{0, 0, 0, 255, 255, 255, 255, 255, 255, 0, 0, 0}},
+                          pixels, "Edge");
+
+        pixels = new int[][] {{0, 0, 0, 0, 0, 0, 160, 160, 160, 0, 0, 0, 0, 0, 0}};
+        ImageEditor.convolve(pixels, Convolution.GAUSS);
+        assertArrayEquals(new int[][] {{10, 10, 10, 40, 40, 40, 60, 60, 60, 40, 40, 40,
+                                        10, 10, 10}}, pixels, "Gaussian");
+    }
+
+    /**
+     * Tests that every filter gives the same bytes on several threads
+     */
+    @Test
+    public void testMatchesSequential() {
+        for (String flag : FLAGS) {
+            PixelBuffer sequential = TestImages.pattern(37, 101);
+            PixelBuffer parallel = TestImages.pattern(37, 101);
+            Convolution.forFlag(flag).apply(sequential, 0, sequential.getHeight());
+            Convolution.forFlag(flag).applyParallel(parallel, 4, 50);
+            assertArrayEquals(sequential.getData(), parallel.getData(), flag);
+        }
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> Convolution.forFlag("-X"), "Unknown flag");
+        assertEquals("Invalid flag", exception.getMessage(), "Unknown flag");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> Convolution.forFlag(Convolution.BLUR).applyParallel(new PixelBuffer(1, 1), 0, 1),
+            "zero threads");
+        assertEquals("Invalid thread count", exception.getMessage(), "zero threads");
+        assertFalse(Convolution.isFlag("-I"), "Per-pixel flag");
+        assertEquals(2, Convolution.forFlag(Convolution.GAUSS).getHalo(), "Gaussian halo");
+    }
+}
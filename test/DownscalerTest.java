@@ -0,0 +1,75 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.io.*;
+import java.nio.channels.Channels;
+
+/**
+ * Program to test Downscaler methods
+ *
+ * @author Amelia Saldino
+ */
+public class DownscalerTest {
+
+    /**
+     * Downscales packed rows into P3 text
+     * @param data packed samples
+     * @param cols number of pixel columns
+     * @param rows number of pixel rows
+     * @param factor scale factor
+     * @return the P3 text of the smaller image
+     * @throws IOException if the image can not be written
+     */
+    private static String scale(byte[] data, int cols, int rows, int factor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PpmWriter writer = new PpmWriter(Channels.newChannel(bytes), "P3",
+                                         Downscaler.scaledSize(cols, factor),
+                                         Downscaler.scaledSize(rows, factor));
+        try (Downscaler downscaler = new Downscaler(writer, cols, rows, factor)) {
+            for (int row = 0; row < rows; row++) {
+                downscaler.addRow(data, row * cols * 3);
+            }
+        }
+        return bytes.toString("US-ASCII");
+    }
+
+    /**
+     * Tests averaging whole blocks and the partial blocks at the edges
+     * @throws IOException if the image can not be written
+     */
+    @Test
+    public void testAverage() throws IOException {
+        byte[] data = new byte[3 * 3 * 3];
+        for (int i = 0; i < 9; i++) {
+            data[i * 3] = (byte) (i * 10);
+            data[i * 3 + 1] = (byte) 200;
+            data[i * 3 + 2] = (byte) (i % 3 == 2 ? 255 : 0);
+        }
+        String nl = System.lineSeparator();
+        assertEquals("P3" + nl + "2 2" + nl + "255\n20 200 0 35 200 255" + nl
+                     + "65 200 0 80 200 255" + nl, scale(data, 3, 3, 2), "3x3 to 2x2");
+    }
+
+    /**
+     * Tests the names of scaled copies
+     */
+    @Test
+    public void testScaledName() {
+        assertEquals("out-2.ppm", Downscaler.scaledName("out.ppm", 2), "Plain");
+        assertEquals("dir" + File.separator + "out-4.pgm.gz",
+                     Downscaler.scaledName("dir" + File.separator + "out.pgm.gz", 4), "Gzip");
+        assertEquals("a.b" + File.separator + "out-8",
+                     Downscaler.scaledName("a.b" + File.separator + "out", 8), "No extension");
+        assertEquals(3, Downscaler.scaledSize(9, 3), "Exact size");
+        assertEquals(4, Downscaler.scaledSize(10, 3), "Rounded up");
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> new Downscaler(null, 1, 1, 2), "Null writer");
+        assertEquals("Null file", exception.getMessage(), "Null writer");
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test EditorServer and EditorClient methods
+ *
+ * @author Amelia Saldino
+ */
+public class EditorServerTest {
+
+    /** Socket file the tests listen on */
+    private static final String SOCKET = "test-files/obscureServer.sock";
+
+    /** Output file written by the tests */
+    private static final String OUTFILE = "test-files/obscureServerOutput.ppm";
+
+    /**
+     * Tests a request forwarded over a Unix domain socket
+     */
+    @Test
+    public void testRequest() throws IOException {
+        SocketAddress address = EditorServer.address(SOCKET);
+        assertTrue(address instanceof UnixDomainSocketAddress, "Socket file");
+        try (EditorServer server = new EditorServer(address, 2, 2)) {
+            server.start();
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                assertEquals("rw-------", java.nio.file.attribute.PosixFilePermissions.toString(
+                    Files.getPosixFilePermissions(Paths.get(SOCKET))), "Private socket file");
+            }
+            String reply = EditorClient.send(address,
+                new String[] {"-I", "test-files/test1.ppm", OUTFILE});
+            assertTrue(reply.startsWith(EditorServer.OK + " "), reply);
+            assertArrayEquals(Files.readAllBytes(Paths.get("test-files/exp_test1Inverted.ppm")),
+                              Files.readAllBytes(Paths.get(OUTFILE)), "Output");
+
+            assertEquals(EditorServer.ERROR + " Invalid input file",
+                         EditorClient.send(address, new String[] {"-I",
+                             "test-files/bad_input.ppm", OUTFILE}), "Invalid input");
+            assertEquals(EditorServer.ERROR + " " + Options.USAGE,
+                         EditorClient.send(address, new String[] {"-X", "in.ppm", OUTFILE}),
+                         "Invalid command line");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(OUTFILE));
+        }
+        assertFalse(Files.exists(Paths.get(SOCKET)), "Socket file removed");
+    }
+
+    /**
+     * Tests that requests beyond the workers and queue are turned away
+     */
+    @Test
+    public void testBusy() throws IOException {
+        SocketAddress address = EditorServer.address(SOCKET);
+        try (EditorServer server = new EditorServer(address, 1, 0);
+             SocketChannel idle = EditorServer.openChannel()) {
+            server.start();
+            idle.connect(address);
+            assertEquals(EditorServer.BUSY, EditorClient.send(address,
+                new String[] {"-I", "test-files/test1.ppm", OUTFILE}), "Busy");
+            idle.close();
+        }
+        assertFalse(Files.exists(Paths.get(OUTFILE)), "Nothing written");
+    }
+
+    /**
+     * Tests address parsing
+     */
+    @Test
+    public void testAddress() {
+        assertTrue(EditorServer.address("8123") instanceof UnixDomainSocketAddress,
+                   "A number is a socket file name");
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> new EditorServer(new java.net.InetSocketAddress(8123), 1, 1), "TCP address");
+        assertEquals("Invalid address", exception.getMessage(), "TCP address - exception message");
+        assertThrows(IllegalArgumentException.class, () -> new EditorServer(
+            EditorServer.address(SOCKET), 0, 1), "Invalid job count");
+    }
+
+    /**
+     * Tests that only a socket left behind by a stopped server is replaced
+     */
+    @Test
+    public void testSocketFile() throws IOException {
+        SocketAddress address = EditorServer.address(SOCKET);
+        Path socket = Paths.get(SOCKET);
+        try {
+            Files.write(socket, "notes".getBytes());
+            EditorServer server = new EditorServer(address, 1, 1);
+            Exception exception = assertThrows(IOException.class, server::start, "Regular file");
+            assertEquals("Not a socket file", exception.getMessage(), "Regular file - message");
+            server.close();
+            assertArrayEquals("notes".getBytes(), Files.readAllBytes(socket), "File kept");
+            Files.delete(socket);
+
+            java.nio.channels.ServerSocketChannel stale = java.nio.channels.ServerSocketChannel
+                .open(java.net.StandardProtocolFamily.UNIX);
+            stale.bind(address);
+            stale.close();
+            assertTrue(Files.exists(socket), "Stale socket");
+            try (EditorServer first = new EditorServer(address, 1, 1)) {
+                first.start();
+                EditorServer second = new EditorServer(address, 1, 1);
+                exception = assertThrows(IOException.class, second::start, "Listening server");
+                assertEquals("Another server is listening", exception.getMessage(),
+                             "Listening server - message");
+                second.close();
+                assertTrue(EditorClient.send(address, new String[] {"-I",
+                    "test-files/test1.ppm", OUTFILE}).startsWith(EditorServer.OK + " "),
+                    "First server still listening");
+            }
+        }
+        finally {
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(Paths.get(OUTFILE));
+        }
+        try (java.util.stream.Stream<Path> files = Files.list(Paths.get("test-files"))) {
+            assertEquals(0, files.filter(path -> path.getFileName().toString()
+                                                     .startsWith(".editor")).count(),
+                         "Bind directory removed");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import java.util.*;
+
+/**
+ * Program to test FilterChain methods
+ *
+ * @author Amelia Saldino
+ */
+public class FilterChainTest {
+
+    /** Chain mixing per-pixel flags and neighborhood filters */
+    private static final List<String> FLAGS = List.of("-I", "-gauss", "-H", "-edge", "-G",
+                                                      "-sharpen");
+
+    /**
+     * Tests how flags are split into pipelines and convolutions
+     */
+    @Test
+    public void testCompile() {
+        FilterChain pointwise = FilterChain.compile(List.of("-I", "-H"), null);
+        assertNotNull(pointwise.asPipeline(), "Per-pixel flags only");
+        assertEquals(0, pointwise.getHalo(), "No context rows");
+        FilterChain chain = FilterChain.compile(FLAGS, "601");
+        assertNull(chain.asPipeline(), "Neighborhood filters");
+        assertEquals(4, chain.getHalo(), "Context rows of all three filters");
+        assertEquals(String.join(" ", FLAGS), chain.toString(), "Flags in order");
+    }
+
+    /**
+     * Tests that streaming rows gives the same image as filtering it whole
+     */
+    @Test
+    public void testStream() {
+        FilterChain chain = FilterChain.compile(FLAGS, null);
+        PixelBuffer input = TestImages.pattern(23, 17);
+        PixelBuffer whole = TestImages.pattern(23, 17);
+        chain.applyParallel(whole, 4, 40);
+
+        PixelBuffer streamed = new PixelBuffer(23, 17);
+        FilterChain.RowStream rows = chain.stream(input.getRowLength());
+        byte[] row = new byte[input.getRowLength()];
+        int count = 0;
+        for (int y = 0; y < input.getHeight(); y++) {
+            System.arraycopy(input.getData(), input.getOffset(y), row, 0, row.length);
+            rows.push(row);
+            for (byte[] ready = rows.poll(); ready != null; ready = rows.poll()) {
+                System.arraycopy(ready, 0, streamed.getData(), streamed.getOffset(count++),
+                                 row.length);
+            }
+        }
+        rows.finish();
+        for (byte[] ready = rows.poll(); ready != null; ready = rows.poll()) {
+            System.arraycopy(ready, 0, streamed.getData(), streamed.getOffset(count++),
+                             row.length);
+        }
+        assertEquals(17, count, "Every row");
+        assertArrayEquals(whole.getData(), streamed.getData(), "Streamed rows");
+    }
+
+    /**
+     * Tests that a band with its context rows filters like the whole image
+     */
+    @Test
+    public void testBand() {
+        FilterChain chain = FilterChain.compile(FLAGS, null);
+        PixelBuffer whole = TestImages.pattern(19, 40);
+        PixelBuffer original = TestImages.pattern(19, 40);
+        chain.apply(whole, 0, whole.getHeight());
+
+        int halo = chain.getHalo();
+        int first = 12;
+        int last = 25;
+        PixelBuffer band = new PixelBuffer(19, last - first + 2 * halo);
+        System.arraycopy(original.getData(), original.getOffset(first - halo), band.getData(), 0,
+                         band.getData().length);
+        chain.apply(band, halo, halo + last - first);
+        assertArrayEquals(Arrays.copyOfRange(whole.getData(), whole.getOffset(first),
+                                             whole.getOffset(last)),
+                          Arrays.copyOfRange(band.getData(), band.getOffset(halo),
+                                             band.getOffset(halo + last - first)),
+                          "Band rows");
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.*;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test GzipBlockChannel methods and gzip input and output files
+ *
+ * @author Amelia Saldino
+ */
+public class GzipBlockChannelTest {
+
+    /** Compressed input file written by the tests */
+    private static final String INFILE = "test-files/obscureGzipInput.ppm.gz";
+
+    /** Compressed output file written by the tests */
+    private static final String OUTFILE = "test-files/obscureGzipOutput.ppm.gz";
+
+    /**
+     * Compresses bytes through a channel
+     * @param data bytes to compress
+     * @param chunk number of bytes per write
+     * @return the compressed stream
+     */
+    private static byte[] compress(byte[] data, int chunk) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GzipBlockChannel channel = new GzipBlockChannel(Channels.newChannel(bytes))) {
+            for (int i = 0; i < data.length; i += chunk) {
+                channel.write(ByteBuffer.wrap(data, i, Math.min(chunk, data.length - i)));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompresses a gzip stream
+     * @param data compressed stream
+     * @return the uncompressed bytes
+     */
+    private static byte[] decompress(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Tests that many blocks come back whole and in order
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        byte[] data = new byte[GzipBlockChannel.BLOCK_SIZE * 5 + 1234];
+        Random random = new Random(7);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('0' + random.nextInt(10));
+        }
+        byte[] compressed = compress(data, 100_000);
+        assertTrue(compressed.length < data.length, "Compressed");
+        assertArrayEquals(data, decompress(compressed), "Every block in order");
+        assertArrayEquals(new byte[0], decompress(compress(new byte[0], 1)), "Empty stream");
+    }
+
+    /**
+     * Tests transforming a compressed file into a compressed file
+     */
+    @Test
+    public void testCompressedFiles() throws IOException {
+        try {
+            try (OutputStream out = new java.util.zip.GZIPOutputStream(
+                     Files.newOutputStream(Paths.get(INFILE)))) {
+                out.write(Files.readAllBytes(Paths.get("test-files/test1.ppm")));
+            }
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-I", INFILE, OUTFILE}),
+                                           false), "Transformed");
+            assertArrayEquals(Files.readAllBytes(Paths.get("test-files/exp_test1Inverted.ppm")),
+                              decompress(Files.readAllBytes(Paths.get(OUTFILE))), "Output");
+            assertEquals("Invalid output file extension", ImageEditor.process(Options.parse(
+                new String[] {"-I", INFILE, "test-files/out.gz"}), false), "Bare .gz");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(INFILE));
+            Files.deleteIfExists(Paths.get(OUTFILE));
+        }
+    }
+}
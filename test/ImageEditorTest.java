@@ -1,8 +1,11 @@
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.nio.file.*;
 
@@ -388,4 +391,340 @@ public class ImageEditorTest {
         }
         
     }
-}
\ No newline at end of file
+
+    /**
+     * Tests streamPPM
+     */
+    @Test
+    public void testStreamPPM() throws IOException {
+        String nl = System.lineSeparator();
+        PpmReader in = new PpmReader(new ByteArrayInputStream("P3 1 2 255 1 2 3 4 5 6".getBytes()));
+        assertTrue(in.readHeader(), "Reads header");
+        StringWriter inverted = new StringWriter();
+        PrintWriter out = new PrintWriter(inverted);
+        assertTrue(ImageEditor.streamPPM(in, out, "-I"), "Streams valid rows");
+        out.close();
+        assertEquals("P3" + nl + "1 2" + nl + "255\n254 253 252" + nl + "251 250 249" + nl,
+                     inverted.toString(),
+                     "Streams and inverts two rows");
+
+        in = new PpmReader(new ByteArrayInputStream("P3 2 1 255 255 0 0 255 255 0".getBytes()));
+        assertTrue(in.readHeader(), "Reads header");
+        StringWriter grey = new StringWriter();
+        out = new PrintWriter(grey);
+        assertTrue(ImageEditor.streamPPM(in, out, "-G"), "Streams valid row");
+        out.close();
+        assertEquals("P3" + nl + "2 1" + nl + "255\n85 85 85 170 170 170" + nl, grey.toString(),
+                     "Streams and greyscales one row");
+
+        in = new PpmReader(new ByteArrayInputStream("P3 1 2 255 1 2 3 4".getBytes()));
+        assertTrue(in.readHeader(), "Reads header");
+        assertFalse(ImageEditor.streamPPM(in, new PrintWriter(new StringWriter()), "-H"),
+                    "Stops on too few values");
+
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> ImageEditor.streamPPM(null, new PrintWriter(new StringWriter()), "-I"),
+            "ImageEditor.streamPPM(null, out, -I)");
+        assertEquals("Null file", exception.getMessage(),
+                     "Testing ImageEditor.streamPPM(null, out, -I) - exception message");
+    }
+
+    /**
+     * Tests greyscale PGM output, with and without luma weights
+     */
+    @Test
+    public void testPgmOutput() throws IOException {
+        String outfile = "test-files/obscureGreyOutput.pgm";
+        String nl = System.lineSeparator();
+        try {
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-G",
+                "test-files/test7.ppm", outfile}), false), "Average");
+            assertEquals("P2" + nl + "2 1" + nl + "255\n85 85" + nl,
+                         Files.readString(Paths.get(outfile)), "One sample per pixel");
+
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-luma", "601",
+                "-P2", "test-files/test7.ppm", outfile}), false), "Luma without -G");
+            assertEquals("P2" + nl + "2 1" + nl + "255\n179 105" + nl,
+                         Files.readString(Paths.get(outfile)), "Inverted luma");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(outfile));
+        }
+    }
+
+    /**
+     * Tests scaled copies written next to the output file
+     * @throws IOException if a file can not be read or deleted
+     */
+    @Test
+    public void testThumbnails() throws IOException {
+        String outfile = "test-files/obscureThumbnail.ppm";
+        String nl = System.lineSeparator();
+        try {
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-pyramid", "2",
+                "test-files/test7.ppm", outfile}), false), "Pyramid");
+            assertEquals("P3" + nl + "2 1" + nl + "255\n0 255 255 255 0 255" + nl,
+                         Files.readString(Paths.get(outfile)), "Full size output");
+            assertEquals("P3" + nl + "1 1" + nl + "255\n128 128 255" + nl,
+                         Files.readString(Paths.get("test-files/obscureThumbnail-2.ppm")),
+                         "Half size");
+            assertEquals("P3" + nl + "1 1" + nl + "255\n128 128 255" + nl,
+                         Files.readString(Paths.get("test-files/obscureThumbnail-4.ppm")),
+                         "Quarter size");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(outfile));
+            Files.deleteIfExists(Paths.get("test-files/obscureThumbnail-2.ppm"));
+            Files.deleteIfExists(Paths.get("test-files/obscureThumbnail-4.ppm"));
+        }
+    }
+
+    /**
+     * Tests images whose max color value is not 255, from the command line
+     * and through the array methods
+     * @throws IOException if a file can not be read or deleted
+     */
+    @Test
+    public void testWideImage() throws IOException {
+        String infile = "test-files/obscureWideInput.ppm";
+        String outfile = "test-files/obscureWideOutput.ppm";
+        String nl = System.lineSeparator();
+        try {
+            Files.write(Paths.get(infile),
+                        "P3 2 1 65535 0 40000 65535 1000 1000 1000\n".getBytes());
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-I",
+                infile, outfile}), false), "Invert 16-bit");
+            assertEquals("P3" + nl + "2 1" + nl + "65535\n65535 25535 0 64535 64535 64535" + nl,
+                         Files.readString(Paths.get(outfile)), "Inverted against 65535");
+
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-G", "-H", "-P6",
+                infile, outfile}), false),
+                "Greyscale and high contrast 16-bit to P6");
+            byte[] contents = Files.readAllBytes(Paths.get(outfile));
+            byte[] header = "P6\n2 1\n65535\n".getBytes();
+            assertEquals(header.length + 12, contents.length, "Two bytes per sample");
+            assertEquals((byte) 255, contents[header.length], "High byte of 65535");
+            assertEquals(0, contents[header.length + 6], "High byte of 0");
+
+            assertEquals("Only -I, -H and -G support a max color value other than 255",
+                         ImageEditor.process(Options.parse(new String[] {"-blur",
+                             infile, outfile}), false), "Convolution of 16-bit input");
+            for (String[] args : new String[][] {{"-I", "-threads", "2", infile, outfile},
+                                                 {"-I", "-tiled", infile, outfile},
+                                                 {"-I", "-pipelined", infile, outfile}}) {
+                assertEquals("-threads, -tiled and -pipelined need a max color value of 255",
+                             ImageEditor.process(Options.parse(args), false),
+                             args[1] + " with 16-bit input");
+            }
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(infile));
+            Files.deleteIfExists(Paths.get(outfile));
+        }
+
+        int[][] pixels = {{0, 499, 500, 1000, 1000, 1000}};
+        ImageEditor.invert(pixels, 1000);
+        assertArrayEquals(new int[][] {{1000, 501, 500, 0, 0, 0}}, pixels, "Invert at 1000");
+        ImageEditor.highContrast(pixels, 1000);
+        assertArrayEquals(new int[][] {{1000, 1000, 1000, 0, 0, 0}}, pixels,
+                          "High contrast at 1000");
+        pixels = new int[][] {{0, 1000, 500, 9, 9, 9}};
+        ImageEditor.greyScale(pixels, 1000);
+        assertArrayEquals(new int[][] {{500, 500, 500, 9, 9, 9}}, pixels, "Greyscale at 1000");
+        int[][] bytes = {{255, 0, 0}};
+        ImageEditor.invert(bytes, 255);
+        assertArrayEquals(ONE_RED_PIXEL_INVERTED, bytes, "Byte path at 255");
+
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> ImageEditor.invert(new int[][] {{1001, 0, 0}}, 1000), "Sample above max");
+        assertEquals("Invalid array", exception.getMessage(),
+                     "Sample above max - exception message");
+    }
+
+    /**
+     * Tests a region from the command line, patched in place for P6 and in
+     * memory for P3
+     * @throws IOException if a file can not be read or deleted
+     */
+    @Test
+    public void testRegion() throws IOException {
+        String infile = "test-files/obscureRegionInput.ppm";
+        String outfile = "test-files/obscureRegionOutput.ppm";
+        String nl = System.lineSeparator();
+        try {
+            byte[] header = "P6\n3 2\n255\n".getBytes();
+            byte[] contents = new byte[header.length + 18];
+            System.arraycopy(header, 0, contents, 0, header.length);
+            for (int i = header.length; i < contents.length; i++) {
+                contents[i] = (byte) (i - header.length);
+            }
+            Files.write(Paths.get(infile), contents);
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-region", "1,1,2,1",
+                infile, outfile}), false), "Patched copy");
+            byte[] expected = contents.clone();
+            for (int i = header.length + 12; i < contents.length; i++) {
+                expected[i] = (byte) (255 - contents[i]);
+            }
+            assertArrayEquals(expected, Files.readAllBytes(Paths.get(outfile)), "Copy");
+            assertArrayEquals(contents, Files.readAllBytes(Paths.get(infile)), "Input unchanged");
+
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-region", "1,1,2,1",
+                infile, infile}), false), "Patched in place");
+            assertArrayEquals(expected, Files.readAllBytes(Paths.get(infile)), "In place");
+
+            assertEquals("Region outside the image", ImageEditor.process(Options.parse(
+                new String[] {"-I", "-region", "2,0,2,1", infile, outfile}), false),
+                "Region too wide");
+
+            assertNull(ImageEditor.process(Options.parse(new String[] {"-G", "-region", "1,0,1,1",
+                "test-files/test7.ppm", outfile}), false), "P3 region in memory");
+            assertEquals("P3" + nl + "2 1" + nl + "255\n255 0 0 85 85 85" + nl,
+                         Files.readString(Paths.get(outfile)), "Only the second pixel");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(infile));
+            Files.deleteIfExists(Paths.get(outfile));
+        }
+    }
+
+    /**
+     * Tests that a dry run plans from the header without writing the output
+     * @throws IOException if a file can not be deleted
+     */
+    @Test
+    public void testDryRun() throws IOException {
+        String outfile = "test-files/dryRunOutput.ppm";
+        Files.deleteIfExists(Paths.get(outfile));
+        Stats stats = new Stats();
+        assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-threads", "2",
+            "-dryrun", "test-files/test1.ppm", outfile}), true, stats), "Dry run");
+        assertFalse(Files.exists(Paths.get(outfile)), "No output file");
+        assertEquals(Plan.MEMORY, stats.getPlan().getMode(), "Small image in memory");
+        assertEquals(0, stats.getBytes(Stats.READ), "No samples read");
+
+        stats = new Stats();
+        assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-threads", "1",
+            "test-files/test1.ppm", outfile}), false, stats), "Transformed");
+        assertEquals(Plan.STREAM, stats.getPlan().getMode(), "One thread streams");
+        Files.deleteIfExists(Paths.get(outfile));
+
+        assertNull(ImageEditor.process(Options.parse(new String[] {"-I", "-dryrun",
+            "test-files/bad_input.ppm", outfile}), false), "Only the header is checked");
+        assertEquals("Invalid output file extension", ImageEditor.process(Options.parse(
+            new String[] {"-I", "-dryrun", "test-files/test1.ppm", "out.txt"}), false),
+            "Invalid output extension");
+    }
+
+    /**
+     * Tests that no output file is left behind when the input is cut short,
+     * in every processing mode and when patching a region
+     * @throws IOException if a file can not be read or deleted
+     */
+    @Test
+    public void testTruncatedInput() throws IOException {
+        String infile = "test-files/obscureTruncatedInput.ppm";
+        String outfile = "test-files/obscureTruncatedOutput.ppm";
+        String thumbnail = "test-files/obscureTruncatedOutput-2.ppm";
+        try {
+            byte[] contents = Files.readAllBytes(Paths.get("test-files/ColorfulCSC116.ppm"));
+            Files.write(Paths.get(infile), Arrays.copyOf(contents, 200));
+            String[][] modes = {{"-I"}, {"-blur"}, {"-I", "-threads", "2"}, {"-I", "-tiled"},
+                                {"-I", "-pipelined", "-threads", "2"}, {"-I", "-thumbnail", "2"}};
+            for (String[] mode : modes) {
+                String[] args = Arrays.copyOf(mode, mode.length + 2);
+                args[mode.length] = infile;
+                args[mode.length + 1] = outfile;
+                String label = String.join(" ", mode);
+                assertEquals("Invalid input file",
+                             ImageEditor.process(Options.parse(args), false), label);
+                assertFalse(Files.exists(Paths.get(outfile)), "No output " + label);
+                assertFalse(Files.exists(Paths.get(thumbnail)), "No thumbnail " + label);
+            }
+
+            byte[] header = "P6\n3 2\n255\n".getBytes();
+            Files.write(Paths.get(infile), Arrays.copyOf(header, header.length + 10));
+            assertEquals("Invalid input file", ImageEditor.process(Options.parse(new String[] {
+                "-I", "-region", "0,0,1,1", infile, outfile}), false), "Patch");
+            assertFalse(Files.exists(Paths.get(outfile)), "No patched copy");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(infile));
+            Files.deleteIfExists(Paths.get(outfile));
+            Files.deleteIfExists(Paths.get(thumbnail));
+        }
+    }
+
+    /**
+     * Tests that the modes chosen for an image over the memory budget give
+     * the same output as the whole image in memory, and that adaptive
+     * thresholds, which need the whole image, are turned away
+     * @throws IOException if a file can not be read or deleted
+     */
+    @Test
+    public void testOverBudget() throws IOException {
+        String infile = "test-files/obscureBudgetInput.ppm";
+        String expected = "test-files/obscureBudgetExpected.ppm";
+        String outfile = "test-files/obscureBudgetOutput.ppm";
+        try {
+            StringBuilder contents = new StringBuilder("P3\n40 30\n255\n");
+            java.util.Random random = new java.util.Random(40 * 30);
+            for (int i = 0; i < 40 * 30 * 3; i++) {
+                contents.append(random.nextInt(256)).append(i % 12 == 11 ? "\n" : " ");
+            }
+            Files.writeString(Paths.get(infile), contents);
+            String[][] lines = {{"-blur", "-I"}, {"-blur", "-region", "5,5,10,10"},
+                                {"-I", "-region", "5,5,10,10"}};
+            String[] modes = {Plan.TILED, Plan.STREAM, Plan.STREAM};
+            for (int k = 0; k < lines.length; k++) {
+                String[] line = lines[k];
+                String[] inMemory = Arrays.copyOf(line, line.length + 4);
+                System.arraycopy(new String[] {"-threads", "2", infile, expected}, 0,
+                                 inMemory, line.length, 4);
+                assertNull(ImageEditor.process(Options.parse(inMemory), false), "In memory");
+                String[] overBudget = Arrays.copyOf(line, line.length + 4);
+                System.arraycopy(new String[] {"-memory", "1k", infile, outfile}, 0,
+                                 overBudget, line.length, 4);
+                Stats stats = new Stats();
+                assertNull(ImageEditor.process(Options.parse(overBudget), false, stats),
+                           "Over budget");
+                String name = String.join(" ", line);
+                assertEquals(modes[k], stats.getPlan().getMode(), "Mode " + name);
+                assertEquals(Files.readString(Paths.get(expected)),
+                             Files.readString(Paths.get(outfile)), "Output " + name);
+            }
+
+            Files.deleteIfExists(Paths.get(outfile));
+            assertEquals("Image does not fit the memory budget, which -adaptive needs",
+                         ImageEditor.process(Options.parse(new String[] {"-H", "-adaptive",
+                             "global", "-memory", "1k", infile, outfile}), false),
+                         "Adaptive over budget");
+            assertFalse(Files.exists(Paths.get(outfile)), "Nothing written");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(infile));
+            Files.deleteIfExists(Paths.get(expected));
+            Files.deleteIfExists(Paths.get(outfile));
+        }
+    }
+
+    /**
+     * Tests statistics only, which counts the input and writes nothing
+     */
+    @Test
+    public void testStatsOnly() {
+        Stats stats = new Stats();
+        assertNull(ImageEditor.process(Options.parse(new String[] {"-S",
+            "test-files/test1.ppm"}), true, stats), "Statistics");
+        ChannelStats channels = stats.getChannelStats();
+        assertEquals(45, channels.getMin(0), "Red");
+        assertEquals(128, channels.getMax(1), "Green");
+        assertEquals(220.0, channels.getMean(2), "Blue");
+        assertEquals(3, stats.getBytes(Stats.FILTER), "Samples counted");
+
+        assertEquals("Statistics need a max color value of 255", ImageEditor.process(
+            Options.parse(new String[] {"-S", "test-files/bad_input.ppm"}), false),
+            "Max color value 245");
+        assertEquals("Invalid input file extension", ImageEditor.process(Options.parse(
+            new String[] {"-S", "in.txt"}), false), "Invalid extension");
+    }
+}
@@ -0,0 +1,257 @@
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test Options methods
+ *
+ * @author Amelia Saldino
+ */
+public class OptionsTest {
+
+    /**
+     * Tests the original three argument command line
+     */
+    @Test
+    public void testBasic() {
+        Options options = Options.parse(new String[] {"-G", "in.ppm", "out.ppm"});
+        assertEquals(List.of("-G"), options.getFlags(), "Flag");
+        assertEquals("in.ppm", options.getInfile(), "Input file");
+        assertEquals("out.ppm", options.getOutfile(), "Output file");
+        assertEquals("P6", options.getOutputFormat("P6"), "Output format follows input");
+        assertEquals(Runtime.getRuntime().availableProcessors(), options.getThreads(),
+                     "Default threads");
+        assertFalse(options.isThreadCountSet(), "Threads not given");
+    }
+
+    /**
+     * Tests the optional flags
+     */
+    @Test
+    public void testOptional() {
+        Options options = Options.parse(new String[] {"-I", "-P6", "-threads", "8",
+                                                      "-cutoff", "100", "in.ppm", "out.ppm"});
+        assertEquals("P6", options.getOutputFormat("P3"), "Output format");
+        assertEquals(8, options.getThreads(), "Threads");
+        assertTrue(options.isThreadCountSet(), "Threads given");
+        assertEquals(100, options.getCutoff(), "Cutoff");
+    }
+
+    /**
+     * Tests a sequence of transformations
+     */
+    @Test
+    public void testSequence() {
+        Options options = Options.parse(new String[] {"-G", "-H", "-I", "in.ppm", "out.ppm"});
+        assertEquals(List.of("-G", "-H", "-I"), options.getFlags(), "Flags in order");
+    }
+
+    /**
+     * Tests tiled processing settings
+     */
+    @Test
+    public void testTiled() {
+        Options options = Options.parse(new String[] {"-I", "-tiled", "-budget", "16m",
+                                                      "in.ppm", "out.ppm"});
+        assertTrue(options.isTiled(), "Tiled");
+        assertEquals(16L << 20, options.getBudget(), "Budget");
+        assertEquals(2048, Options.parseSize("2k"), "Kilobytes");
+        assertEquals(1L << 30, Options.parseSize("1G"), "Gigabytes");
+        assertEquals(-1, Options.parseSize("lots"), "Not a size");
+        assertNull(Options.parse(new String[] {"-I", "-budget", "0", "in.ppm", "out.ppm"}),
+                   "Zero budget");
+    }
+
+    /**
+     * Tests result cache settings
+     */
+    @Test
+    public void testCache() {
+        Options options = Options.parse(new String[] {"-I", "in.ppm", "out.ppm"});
+        assertNull(options.getCacheDir(), "No cache by default");
+        options = Options.parse(new String[] {"-I", "-cache", "cache", "-cachesize", "2g",
+                                              "in.ppm", "out.ppm"});
+        assertEquals("cache", options.getCacheDir(), "Cache directory");
+        assertEquals(2L << 30, options.getCacheSize(), "Cache size");
+        assertNull(Options.parse(new String[] {"-I", "-cache", "in.ppm", "out.ppm"}),
+                   "Missing cache directory");
+    }
+
+    /**
+     * Tests greyscale PGM output settings
+     */
+    @Test
+    public void testGreyOutput() {
+        Options options = Options.parse(new String[] {"-G", "-P5", "-luma", "709",
+                                                      "in.ppm", "out.pgm"});
+        assertEquals("P5", options.getOutputFormat("P6"), "PGM format");
+        assertEquals("709", options.getLuma(), "Luma");
+        assertNull(Options.parse(new String[] {"-G", "-luma", "2020", "in.ppm", "out.ppm"}),
+                   "Unknown luma");
+    }
+
+    /**
+     * Tests the pipelined option
+     */
+    @Test
+    public void testPipelined() {
+        assertTrue(Options.parse(new String[] {"-I", "-pipelined", "-threads", "3", "in.ppm",
+                                               "out.ppm"}).isPipelined(), "Pipelined");
+        assertNull(Options.parse(new String[] {"-I", "-pipelined", "-tiled", "in.ppm",
+                                               "out.ppm"}), "Pipelined and tiled");
+    }
+
+    /**
+     * Tests the thumbnail and pyramid options
+     */
+    @Test
+    public void testScales() {
+        assertEquals(List.of(), Options.parse(new String[] {"-I", "in.ppm", "out.ppm"})
+                     .getScales(), "No scaled copies");
+        assertEquals(List.of(3, 2, 4, 8), Options.parse(new String[] {"-I", "-thumbnail", "3",
+            "-pyramid", "3", "in.ppm", "out.ppm"}).getScales(), "Thumbnail and pyramid");
+        assertNull(Options.parse(new String[] {"-I", "-thumbnail", "1", "in.ppm", "out.ppm"}),
+                   "Factor of one");
+        assertNull(Options.parse(new String[] {"-I", "-thumbnail", "2", "-pyramid", "1",
+                                               "in.ppm", "out.ppm"}), "Same copy twice");
+        assertNull(Options.parse(new String[] {"-I", "-pyramid", "40", "in.ppm", "out.ppm"}),
+                   "Too many levels");
+    }
+
+    /**
+     * Tests the region option
+     */
+    @Test
+    public void testRegion() {
+        assertNull(Options.parse(new String[] {"-I", "in.ppm", "out.ppm"}).getRegion(),
+                   "Whole image");
+        assertEquals("3,4,10,20", Options.parse(new String[] {"-I", "-region", "3,4,10,20",
+            "in.ppm", "out.ppm"}).getRegion().toString(), "Region");
+        for (String bad : new String[] {"1,2,3", "1,2,3,4,5", "-1,0,2,2", "0,0,0,2", "a,b,c,d"}) {
+            assertNull(Options.parse(new String[] {"-I", "-region", bad, "in.ppm", "out.ppm"}),
+                       "Tests region " + bad);
+        }
+        assertNull(Options.parse(new String[] {"-I", "-region", "0,0,1,1", "-region", "0,0,1,1",
+                                               "in.ppm", "out.ppm"}), "Two regions");
+        assertNull(Options.parse(new String[] {"-I", "-region", "0,0,1,1", "-tiled",
+                                               "in.ppm", "out.ppm"}), "Region and tiled");
+        assertNull(Options.parse(new String[] {"-H", "-region", "0,0,1,1", "-adaptive", "global",
+                                               "in.ppm", "out.ppm"}), "Region and adaptive");
+        assertNull(Options.parse(new String[] {"-I", "-region", "0,0,1,1", "-thumbnail", "2",
+                                               "in.ppm", "out.ppm"}), "Region and thumbnail");
+    }
+
+    /**
+     * Tests neighborhood filter flags
+     */
+    @Test
+    public void testNeighborhoodFlags() {
+        Options options = Options.parse(new String[] {"-blur", "-I", "-edge", "in.ppm", "out.ppm"});
+        assertEquals(List.of("-blur", "-I", "-edge"), options.getFlags(), "Flags in order");
+        assertNull(Options.parse(new String[] {"-median", "in.ppm", "out.ppm"}), "Unknown filter");
+    }
+
+    /**
+     * Tests the adaptive high contrast option
+     */
+    @Test
+    public void testAdaptive() {
+        assertNull(Options.parse(new String[] {"-H", "in.ppm", "out.ppm"}).getAdaptive(),
+                   "Fixed threshold by default");
+        assertEquals("channel", Options.parse(new String[] {"-H", "-adaptive", "channel",
+                                                            "in.ppm", "out.ppm"}).getAdaptive(),
+                     "Per channel thresholds");
+        assertNull(Options.parse(new String[] {"-H", "-adaptive", "local", "in.ppm", "out.ppm"}),
+                   "Unknown mode");
+        assertNull(Options.parse(new String[] {"-H", "-adaptive", "global", "-tiled",
+                                               "in.ppm", "out.ppm"}),
+                   "Adaptive thresholds need the whole image");
+    }
+
+    /**
+     * Tests the stats option
+     */
+    @Test
+    public void testStats() {
+        assertFalse(Options.parse(new String[] {"-I", "in.ppm", "out.ppm"}).isStats(),
+                    "No stats by default");
+        assertTrue(Options.parse(new String[] {"-I", "--stats", "in.ppm", "out.ppm"}).isStats(),
+                   "Stats");
+    }
+
+    /**
+     * Tests the statistics only option, which takes no output file
+     */
+    @Test
+    public void testStatsOnly() {
+        assertFalse(Options.parse(new String[] {"-I", "in.ppm", "out.ppm"}).isStatsOnly(),
+                    "Transform by default");
+        Options options = Options.parse(new String[] {"-S", "-threads", "2", "in.ppm"});
+        assertTrue(options.isStatsOnly(), "Statistics only");
+        assertEquals(2, options.getThreads(), "Threads");
+        assertEquals("in.ppm", options.getInfile(), "Input file");
+        assertNull(options.getOutfile(), "No output file");
+        options.resolve("dir");
+        assertEquals(Paths.get("dir", "in.ppm").toString(), options.getInfile(), "Resolved");
+        assertNull(Options.parse(new String[] {"-S"}), "No input file");
+        assertNull(Options.parse(new String[] {"-S", "in.ppm", "out.ppm"}), "Output file");
+        assertNull(Options.parse(new String[] {"-S", "-I", "in.ppm"}), "Transformation");
+        assertNull(Options.parse(new String[] {"-S", "-region", "0,0,1,1", "in.ppm"}), "Region");
+        assertNull(Options.parse(new String[] {"-S", "-dryrun", "in.ppm"}), "Dry run");
+        assertTrue(Options.parse(new String[] {"-threads", "2", "-S", "in.ppm"}).isStatsOnly(),
+                   "After another option");
+        options = Options.parse(new String[] {"-I", "-cache", "-S", "in.ppm", "out.ppm"});
+        assertFalse(options.isStatsOnly(), "Setting value");
+        assertEquals("-S", options.getCacheDir(), "Cache directory named -S");
+        options = Options.parse(new String[] {"-I", "in.ppm", "-S"});
+        assertFalse(options.isStatsOnly(), "Output file name");
+        assertEquals("-S", options.getOutfile(), "Output file named -S");
+    }
+
+    /**
+     * Tests the dry run and memory budget options
+     */
+    @Test
+    public void testDryRun() {
+        Options options = Options.parse(new String[] {"-I", "in.ppm", "out.ppm"});
+        assertFalse(options.isDryRun(), "No dry run by default");
+        assertTrue(options.getMemory() > 0, "Free heap by default");
+        options = Options.parse(new String[] {"-I", "-dryrun", "-memory", "3m", "in.ppm",
+                                              "out.ppm"});
+        assertTrue(options.isDryRun(), "Dry run");
+        assertEquals(3L << 20, options.getMemory(), "Memory budget");
+        assertTrue(Options.parse(new String[] {"-I", "--dry-run", "in.ppm", "out.ppm"}).isDryRun(),
+                   "Long dry run");
+        assertNull(Options.parse(new String[] {"-I", "-memory", "0", "in.ppm", "out.ppm"}),
+                   "Zero memory");
+        assertNull(Options.parse(new String[] {"-I", "-memory", "in.ppm", "out.ppm"}),
+                   "Missing memory");
+
+        options = Options.parse(new String[] {"-I", "-memory", "3m", "in.ppm", "out.ppm"});
+        options.setJobs(3);
+        assertEquals(1L << 20, options.getMemory(), "Memory budget shared by jobs");
+        assertEquals(Math.max(1, Runtime.getRuntime().availableProcessors() / 3),
+                     options.getThreads(), "Processors shared by jobs");
+        assertThrows(IllegalArgumentException.class, () -> Options.parse(
+            new String[] {"-I", "in.ppm", "out.ppm"}).setJobs(0), "Invalid job count");
+    }
+
+    /**
+     * Tests invalid command lines
+     */
+    @Test
+    public void testInvalid() {
+        assertNull(Options.parse(new String[] {"in.ppm", "out.ppm"}), "No flag");
+        assertNull(Options.parse(new String[] {"-X", "in.ppm", "out.ppm"}), "Unknown flag");
+        assertNull(Options.parse(new String[] {"-P6", "in.ppm", "out.ppm"}),
+                   "Format without a transformation");
+        assertNull(Options.parse(new String[] {"-I", "-P3", "-P6", "in.ppm", "out.ppm"}),
+                   "Two formats");
+        assertNull(Options.parse(new String[] {"-I", "-threads", "in.ppm", "out.ppm"}),
+                   "Missing thread count");
+        assertNull(Options.parse(new String[] {"-I", "-threads", "0", "in.ppm", "out.ppm"}),
+                   "Zero threads");
+    }
+}
@@ -0,0 +1,53 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test ParallelFilter methods
+ *
+ * @author Amelia Saldino
+ */
+public class ParallelFilterTest {
+
+    /**
+     * Tests that every filter gives the same bytes on several threads
+     */
+    @Test
+    public void testMatchesSequential() {
+        SampleFilter[] filters = {ImageEditor::invert, ImageEditor::highContrast,
+                                  ImageEditor::greyScale};
+        for (SampleFilter filter : filters) {
+            PixelBuffer sequential = TestImages.pattern(37, 101);
+            PixelBuffer parallel = TestImages.pattern(37, 101);
+            filter.apply(sequential.getData(), 0, sequential.getData().length);
+            ParallelFilter.apply(parallel, filter, 4, 50);
+            assertArrayEquals(sequential.getData(), parallel.getData(), "Parallel result");
+        }
+    }
+
+    /**
+     * Tests that tiny images below the cutoff are still filtered
+     */
+    @Test
+    public void testBelowCutoff() {
+        PixelBuffer image = PixelBuffer.fromArray(new int[][] {{255, 0, 0}});
+        ParallelFilter.apply(image, ImageEditor::invert, 8, ParallelFilter.DEFAULT_CUTOFF);
+        assertArrayEquals(new int[][] {{0, 255, 255}}, image.toArray(), "One red pixel");
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        PixelBuffer image = new PixelBuffer(1, 1);
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> ParallelFilter.apply(image, ImageEditor::invert, 0, 1), "zero threads");
+        assertEquals("Invalid thread count", exception.getMessage(),
+                     "Testing zero threads - exception message");
+
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> ParallelFilter.apply(null, ImageEditor::invert, 1, 1), "null image");
+        assertEquals("Null image", exception.getMessage(),
+                     "Testing null image - exception message");
+    }
+}
@@ -0,0 +1,109 @@
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test Pipeline methods
+ *
+ * @author Amelia Saldino
+ */
+public class PipelineTest {
+
+    /**
+     * Applies filters one after another, the way separate runs would
+     * @param pixels The 2D array of pixel values
+     * @param flags transformations in order
+     * @return transformed copy of the pixels
+     */
+    private static int[][] separately(int[][] pixels, String... flags) {
+        PixelBuffer image = PixelBuffer.fromArray(pixels);
+        for (String flag : flags) {
+            ImageEditor.filterFor(flag).apply(image.getData(), 0, image.getData().length);
+        }
+        return image.toArray();
+    }
+
+    /**
+     * Applies a compiled pipeline
+     * @param pixels The 2D array of pixel values
+     * @param flags transformations in order
+     * @return transformed copy of the pixels
+     */
+    private static int[][] compiled(int[][] pixels, String... flags) {
+        PixelBuffer image = PixelBuffer.fromArray(pixels);
+        Pipeline.compile(List.of(flags)).apply(image.getData(), 0, image.getData().length);
+        return image.toArray();
+    }
+
+    /**
+     * Tests that compiled sequences match running each filter in turn
+     */
+    @Test
+    public void testMatchesSeparateRuns() {
+        int[][] pixels = {{255, 0, 0, 10, 200, 90, 127, 128, 129, 1, 2, 3}};
+        String[][] sequences = {
+            {"-I"}, {"-H"}, {"-G"}, {"-G", "-H"}, {"-H", "-G"}, {"-I", "-G"},
+            {"-G", "-H", "-I"}, {"-I", "-G", "-I", "-H"}, {"-G", "-I", "-G"},
+        };
+        for (String[] flags : sequences) {
+            assertArrayEquals(separately(pixels, flags), compiled(pixels, flags),
+                              "Sequence " + String.join(" ", flags));
+        }
+    }
+
+    /**
+     * Tests that redundant chains are eliminated
+     */
+    @Test
+    public void testRedundant() {
+        assertTrue(Pipeline.compile(List.of("-I", "-I")).isIdentity(), "Double invert");
+        assertEquals("table", Pipeline.compile(List.of("-H", "-H", "-I")).toString(),
+                     "Consecutive tables fuse");
+        assertEquals("greyscale", Pipeline.compile(List.of("-G", "-G")).toString(),
+                     "Double greyscale");
+        assertEquals("table, greyscale, table",
+                     Pipeline.compile(List.of("-I", "-G", "-H", "-G")).toString(),
+                     "Greyscale after greyscale");
+    }
+
+    /**
+     * Tests greyscale with fixed point luma weights
+     */
+    @Test
+    public void testLuma() {
+        int[][] pixels = {{255, 0, 0, 0, 255, 0, 0, 0, 255, 255, 255, 255, 0, 0, 0}};
+        assertArrayEquals(new int[] {76, 76, 76, 150, 150, 150, 29, 29, 29, 255, 255, 255, 0, 0, 0},
+                          luma(pixels, "601")[0], "Rec. 601");
+        assertArrayEquals(new int[] {54, 54, 54, 182, 182, 182, 18, 18, 18, 255, 255, 255, 0, 0, 0},
+                          luma(pixels, "709")[0], "Rec. 709");
+        assertEquals("luma", Pipeline.compile(List.of("-G"), "709").toString(), "Luma stage");
+        assertEquals("table", Pipeline.compile(List.of("-I"), "601").toString(),
+                     "No greyscale, no luma");
+        assertThrows(IllegalArgumentException.class,
+            () -> Pipeline.compile(List.of("-G"), "2020"), "Unknown luma");
+    }
+
+    /**
+     * Applies greyscale with luma weights
+     * @param pixels The 2D array of pixel values
+     * @param luma 601 or 709
+     * @return transformed copy of the pixels
+     */
+    private static int[][] luma(int[][] pixels, String luma) {
+        PixelBuffer image = PixelBuffer.fromArray(pixels);
+        Pipeline.compile(List.of("-G"), luma).apply(image.getData(), 0, image.getData().length);
+        return image.toArray();
+    }
+
+    /**
+     * Tests invalid flags
+     */
+    @Test
+    public void testInvalid() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> Pipeline.compile(List.of("-I", "-X")), "Unknown flag");
+        assertEquals("Invalid flag", exception.getMessage(),
+                     "Testing unknown flag - exception message");
+    }
+}
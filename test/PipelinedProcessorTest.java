@@ -0,0 +1,117 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test PipelinedProcessor methods
+ *
+ * @author Amelia Saldino
+ */
+public class PipelinedProcessorTest {
+
+    /** Width of the test image */
+    private static final int WIDTH = 1000;
+
+    /** Height of the test image, several blocks of rows */
+    private static final int HEIGHT = 900;
+
+    /**
+     * Creates a P6 test image
+     * @param height number of rows
+     * @return contents of the file
+     */
+    private static byte[] image(int height) {
+        byte[] header = ("P6\n" + WIDTH + " " + height + "\n255\n").getBytes();
+        byte[] contents = new byte[header.length + WIDTH * height * 3];
+        System.arraycopy(header, 0, contents, 0, header.length);
+        for (int i = header.length; i < contents.length; i++) {
+            contents[i] = (byte) (i * 37 + i / 5);
+        }
+        return contents;
+    }
+
+    /**
+     * Runs the pipelined processor over an image
+     * @param contents contents of the input file
+     * @param height number of rows in the header
+     * @param filter filter to apply
+     * @param workers number of filter threads
+     * @param result receives the written P6 file
+     * @return true if every row was valid
+     * @throws IOException if the image can not be processed
+     */
+    private static boolean run(byte[] contents, int height, SampleFilter filter, int workers,
+                               ByteArrayOutputStream result) throws IOException {
+        PpmReader in = new PpmReader(new ByteArrayInputStream(contents));
+        assertTrue(in.readHeader(), "Valid header");
+        try (PpmWriter out = new PpmWriter(Channels.newChannel(result), "P6", WIDTH, height)) {
+            return PipelinedProcessor.process(in, out, filter, workers, new Stats());
+        }
+    }
+
+    /**
+     * Tests that blocks are written in order and match streaming
+     * @throws IOException if the image can not be processed
+     */
+    @Test
+    public void testMatchesStream() throws IOException {
+        byte[] contents = image(HEIGHT);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PpmReader in = new PpmReader(new ByteArrayInputStream(contents));
+        in.readHeader();
+        try (PpmWriter out = new PpmWriter(Channels.newChannel(expected), "P6", WIDTH, HEIGHT)) {
+            assertTrue(ImageEditor.streamPPM(in, out, "-I"), "Stream");
+        }
+        for (int workers : new int[] {1, 3}) {
+            ByteArrayOutputStream actual = new ByteArrayOutputStream();
+            assertTrue(run(contents, HEIGHT, Pipeline.compile("-I"), workers, actual),
+                       "Pipelined");
+            assertArrayEquals(expected.toByteArray(), actual.toByteArray(), workers + " workers");
+        }
+    }
+
+    /**
+     * Tests a file that ends early
+     * @throws IOException if the image can not be processed
+     */
+    @Test
+    public void testTruncated() throws IOException {
+        byte[] contents = image(HEIGHT);
+        contents = Arrays.copyOf(contents, contents.length - WIDTH * 3 * 100);
+        assertFalse(run(contents, HEIGHT, Pipeline.compile("-I"), 2, new ByteArrayOutputStream()),
+                    "Missing rows");
+    }
+
+    /**
+     * Tests that a failing filter is reported instead of stalling the writer
+     */
+    @Test
+    public void testFailure() {
+        SampleFilter failing = (data, from, to) -> {
+            throw new IllegalStateException("Broken filter");
+        };
+        Exception exception = assertTimeoutPreemptively(Duration.ofSeconds(30),
+            () -> assertThrows(IllegalStateException.class,
+                () -> run(image(HEIGHT), HEIGHT, failing, 2, new ByteArrayOutputStream()),
+                "Failing filter"));
+        assertEquals("Broken filter", exception.getMessage(), "Failing filter");
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        PpmReader in = new PpmReader(new ByteArrayInputStream(image(1)));
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> PipelinedProcessor.process(in, null, Pipeline.compile("-I"), 1, new Stats()),
+            "Null writer");
+        assertEquals("Null file", exception.getMessage(), "Null writer");
+    }
+}
@@ -0,0 +1,95 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test PixelBuffer methods
+ *
+ * @author Amelia Saldino
+ */
+public class PixelBufferTest {
+
+    /**
+     * Tests packing and unpacking a 2D array
+     */
+    @Test
+    public void testFromArray() {
+        int[][] pixels = {{1, 2, 3, 200, 201, 202}, {4, 5, 6, 255, 0, 128}};
+        PixelBuffer image = PixelBuffer.fromArray(pixels);
+        assertEquals(2, image.getWidth(), "Width");
+        assertEquals(2, image.getHeight(), "Height");
+        assertEquals(6, image.getStride(), "Stride");
+        assertEquals(12, image.getData().length, "One byte per sample");
+        assertEquals(6, image.getOffset(1), "Offset of second row");
+        assertEquals(255, image.get(1, 1, 0), "Unsigned sample");
+        assertArrayEquals(pixels, image.toArray(), "Round trip");
+    }
+
+    /**
+     * Tests the in place filters
+     */
+    @Test
+    public void testFilters() {
+        PixelBuffer image = PixelBuffer.fromArray(new int[][] {{255, 0, 0, 200, 200, 0}});
+        image.invert();
+        assertArrayEquals(new int[][] {{0, 255, 255, 55, 55, 255}}, image.toArray(), "Invert");
+
+        image.highContrast();
+        assertArrayEquals(new int[][] {{0, 255, 255, 0, 0, 255}}, image.toArray(),
+                          "High contrast");
+
+        image.set(0, 0, 0, 255);
+        image.greyScale();
+        assertArrayEquals(new int[][] {{255, 255, 255, 85, 85, 85}}, image.toArray(),
+                          "Grey scale");
+    }
+
+    /**
+     * Tests invalid images
+     */
+    @Test
+    public void testInvalid() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> new PixelBuffer(0, 1), "new PixelBuffer(0, 1)");
+        assertEquals("Invalid size", exception.getMessage(),
+                     "Testing new PixelBuffer(0, 1) - exception message");
+
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> new PixelBuffer(100000, 100000), "new PixelBuffer(100000, 100000)");
+        assertEquals("Image too large", exception.getMessage(),
+                     "Testing new PixelBuffer(100000, 100000) - exception message");
+
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> PixelBuffer.fromArray(new int[][] {{1, 2, 3}, {4, 5}}), "fromArray(jagged)");
+        assertEquals("Jagged array", exception.getMessage(),
+                     "Testing PixelBuffer.fromArray(jagged) - exception message");
+    }
+
+    /**
+     * Tests that samples outside 0 to 255 are rejected rather than wrapped,
+     * and the array is left unchanged
+     */
+    @Test
+    public void testOutOfRange() {
+        for (int value : new int[] {-5, 256, 300}) {
+            Exception exception = assertThrows(IllegalArgumentException.class,
+                () -> PixelBuffer.fromArray(new int[][] {{value, 0, 0}}), "fromArray " + value);
+            assertEquals("Invalid array", exception.getMessage(),
+                         "Testing PixelBuffer.fromArray " + value + " - exception message");
+        }
+        int[][] pixels = {{300, -5, 128}};
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> ImageEditor.invert(pixels), "invert");
+        assertEquals("Invalid array", exception.getMessage(), "invert - exception message");
+        assertArrayEquals(new int[] {300, -5, 128}, pixels[0], "Unchanged");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> ImageEditor.highContrast(pixels), "highContrast");
+        assertEquals("Invalid array", exception.getMessage(), "highContrast - exception message");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> ImageEditor.greyScale(pixels, 255), "greyScale at 255");
+        assertEquals("Invalid array", exception.getMessage(),
+                     "greyScale at 255 - exception message");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> ImageEditor.convolve(pixels, "-blur"), "convolve");
+        assertEquals("Invalid array", exception.getMessage(), "convolve - exception message");
+    }
+}
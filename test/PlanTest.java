@@ -0,0 +1,162 @@
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test Plan methods
+ *
+ * @author Amelia Saldino
+ */
+public class PlanTest {
+
+    /** Width of the planned image */
+    private static final int WIDTH = 1000;
+
+    /** Height of the planned image */
+    private static final int HEIGHT = 1000;
+
+    /** Bytes in the planned image */
+    private static final long IMAGE_BYTES = 3L * WIDTH * HEIGHT;
+
+    /**
+     * Plans the test image for a command line
+     * @param args options before the file names
+     * @return the plan
+     */
+    private static Plan plan(String... args) {
+        String[] line = new String[args.length + 2];
+        System.arraycopy(args, 0, line, 0, args.length);
+        line[args.length] = "in.ppm";
+        line[args.length + 1] = "out.ppm";
+        Options options = Options.parse(line);
+        assertNotNull(options, String.join(" ", args));
+        return Plan.choose(options, "P6", WIDTH, HEIGHT, 255,
+                           FilterChain.compile(options.getFlags(), null), true);
+    }
+
+    /**
+     * Tests that several threads work in memory when the image fits and
+     * stream when it does not
+     */
+    @Test
+    public void testThreads() {
+        Plan plan = plan("-I", "-threads", "1", "-memory", "64m");
+        assertEquals(Plan.STREAM, plan.getMode(), "One thread streams");
+        assertEquals(1, plan.getThreads(), "One thread");
+        assertTrue(plan.getPeakBytes() < IMAGE_BYTES, "Streaming holds less than the image");
+
+        plan = plan("-I", "-threads", "4", "-memory", "64m");
+        assertEquals(Plan.MEMORY, plan.getMode(), "Image fits");
+        assertEquals(4, plan.getThreads(), "Four threads");
+        assertTrue(plan.getPeakBytes() >= IMAGE_BYTES, "Peak holds the image");
+        assertTrue(plan.fits(), "Fits");
+
+        plan = plan("-I", "-threads", "4", "-memory", "2m");
+        assertEquals(Plan.STREAM, plan.getMode(), "Neither image nor blocks fit");
+        assertTrue(plan.fits(), "Streaming fits");
+
+        Options options = Options.parse(new String[] {"-I", "-threads", "2", "-memory", "10m",
+                                                      "in.ppm", "out.ppm"});
+        plan = Plan.choose(options, "P6", 2 * WIDTH, 2 * HEIGHT, 255,
+                           FilterChain.compile(options.getFlags(), null), false);
+        assertEquals(Plan.PIPELINED, plan.getMode(), "Blocks fit");
+        assertEquals(2, plan.getThreads(), "Pipelined threads");
+        assertTrue(plan.fits(), "Blocks fit - fits");
+
+        plan = plan("-blur", "-threads", "1", "-memory", "64m");
+        assertEquals(Plan.STREAM, plan.getMode(), "Convolution on one thread");
+        assertTrue(plan.getPeakBytes() > plan("-I", "-threads", "1").getPeakBytes(),
+                   "Windows add to streaming");
+    }
+
+    /**
+     * Tests the choices made without any mode or thread flags, with one
+     * thread per processor
+     */
+    @Test
+    public void testDefaults() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        Plan plan = plan("-I", "-memory", "64m");
+        assertEquals(processors, plan.getThreads(), "One thread per processor");
+        assertEquals(processors > 1 ? Plan.MEMORY : Plan.STREAM, plan.getMode(),
+                     "Fits in memory");
+        assertTrue(plan.fits(), "Fits");
+
+        plan = plan("-I", "-memory", "2m");
+        assertEquals(Plan.STREAM, plan.getMode(), "Per-pixel chain over budget streams");
+        assertTrue(plan.fits(), "Per-pixel chain over budget - fits");
+
+        plan = plan("-blur", "-I", "-memory", "4m");
+        assertEquals(Plan.TILED, plan.getMode(), "Convolution over budget goes out of core");
+        assertTrue(plan.fits(), "Convolution over budget - fits");
+        assertTrue(plan.getTileBytes() < IMAGE_BYTES, "Tile smaller than the image");
+        assertTrue(plan.getTileBytes() >= 3L * 3 * WIDTH, "Tile holds the context rows");
+
+        plan = plan("-blur", "-memory", "64m");
+        assertEquals(processors > 1 ? Plan.MEMORY : Plan.STREAM, plan.getMode(),
+                     "Convolution that fits");
+        assertEquals(0, plan.getTileBytes(), "No tile");
+    }
+
+    /**
+     * Tests the modes that are asked for or that need the whole image
+     */
+    @Test
+    public void testModes() {
+        assertEquals(Plan.PIPELINED, plan("-I", "-pipelined").getMode(), "Pipelined");
+        assertEquals(Plan.STREAM, plan("-blur", "-pipelined", "-threads", "1").getMode(),
+                     "Pipelined convolution streams");
+        Plan plan = plan("-I", "-tiled", "-budget", "1m", "-memory", "64m");
+        assertEquals(Plan.TILED, plan.getMode(), "Tiled");
+        assertTrue(plan.getPeakBytes() < IMAGE_BYTES, "Tile smaller than the image");
+
+        plan = plan("-H", "-adaptive", "global", "-memory", "1m");
+        assertEquals(Plan.MEMORY, plan.getMode(), "Adaptive");
+        assertFalse(plan.fits(), "Adaptive over budget");
+        assertTrue(plan.toString().endsWith("(over budget)"), "Over budget description");
+
+        plan = plan("-blur", "-region", "10,10,20,20");
+        assertEquals(Plan.PATCH, plan.getMode(), "Patch");
+        assertEquals(2L * 22 * 22 * 3, plan.getPeakBytes(), "Band and its copy");
+
+        Options options = Options.parse(new String[] {"-I", "-region", "0,0,1,1", "in.ppm",
+                                                      "out.ppm"});
+        assertEquals(Plan.MEMORY, Plan.choose(options, "P3", WIDTH, HEIGHT, 255,
+            FilterChain.compile(List.of("-I"), null), false).getMode(), "Region in memory");
+        options = Options.parse(new String[] {"-blur", "-region", "0,0,1,1", "-memory", "2m",
+                                              "in.ppm", "out.ppm"});
+        plan = Plan.choose(options, "P3", WIDTH, HEIGHT, 255,
+                           FilterChain.compile(options.getFlags(), null), false);
+        assertEquals(Plan.STREAM, plan.getMode(), "Region over budget streams");
+        assertTrue(plan.fits(), "Region over budget - fits");
+        assertEquals(Plan.STREAM, Plan.choose(options, "P6", WIDTH, HEIGHT, 1023,
+            FilterChain.compile(List.of("-I"), null), false).getMode(), "Wide samples stream");
+    }
+
+    /**
+     * Tests the description of a plan
+     */
+    @Test
+    public void testToString() {
+        assertEquals("1000x1000 P6 255: in memory, 2 threads, peak ~3.9 MB of 10.0 MB",
+                     plan("-I", "-threads", "2", "-memory", "10m").toString(), "Description");
+        assertTrue(plan("-I", "-threads", "1").toString().contains("streaming rows, 1 thread,"),
+                   "One thread");
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        FilterChain chain = FilterChain.compile(List.of("-I"), null);
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> Plan.choose(null, "P6", 1, 1, 255, chain, false), "Null options");
+        assertEquals("Null options", exception.getMessage(), "Null options - exception message");
+        Options options = Options.parse(new String[] {"-I", "in.ppm", "out.ppm"});
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> Plan.choose(options, "P6", 1, 1, 255, null, false), "Null chain");
+        assertEquals("Null flag", exception.getMessage(), "Null chain - exception message");
+    }
+}
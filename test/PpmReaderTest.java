@@ -0,0 +1,192 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test PpmReader methods
+ *
+ * @author Amelia Saldino
+ */
+public class PpmReaderTest {
+
+    /**
+     * Creates a reader over a string
+     * @param contents contents of the PPM file
+     * @return reader for the contents
+     */
+    private static PpmReader reader(String contents) {
+        return new PpmReader(new ByteArrayInputStream(contents.getBytes()));
+    }
+
+    /**
+     * Tests reading a valid header and rows
+     */
+    @Test
+    public void testValidFile() throws IOException {
+        PpmReader in = reader("P3\n1 2\n255\n1 2 3\n\t4  5\r\n6\n");
+        assertTrue(in.readHeader(), "Tests correct PPM header");
+        assertEquals("P3", in.getFormat(), "Format");
+        assertEquals(1, in.getCols(), "Columns");
+        assertEquals(2, in.getRows(), "Rows");
+        assertEquals(255, in.getMaxColorValue(), "Max color value");
+        assertEquals(3, in.getRowLength(), "Row length");
+
+        int[] row = new int[in.getRowLength()];
+        assertTrue(in.readRow(row), "First row");
+        assertArrayEquals(new int[] {1, 2, 3}, row, "First row values");
+        assertTrue(in.readRow(row), "Second row");
+        assertArrayEquals(new int[] {4, 5, 6}, row, "Second row values");
+    }
+
+    /**
+     * Tests the header checks that validInputFile used to make
+     */
+    @Test
+    public void testInvalidHeader() throws IOException {
+        assertFalse(reader("").readHeader(), "Tests empty file");
+        assertFalse(reader("P2 1 2 255").readHeader(), "Tests invalid type");
+        assertFalse(reader("P33 1 2 255").readHeader(), "Tests longer invalid type");
+        assertFalse(reader("P3 abc 2 255").readHeader(), "Tests non-integer cols");
+        assertFalse(reader("P3 -5 2 255").readHeader(), "Tests non-positive cols");
+        assertFalse(reader("P3 0 2 255").readHeader(), "Tests zero cols");
+        assertFalse(reader("P3 1 abc 255").readHeader(), "Tests non-integer rows");
+        assertFalse(reader("P3 1 -3 255").readHeader(), "Tests non-positive rows");
+        assertFalse(reader("P3 1 2 0").readHeader(), "Tests zero max value");
+        assertFalse(reader("P3 1 2 65536").readHeader(), "Tests max value above 65535");
+        assertFalse(reader("P3 1 2").readHeader(), "Tests missing max value");
+    }
+
+    /**
+     * Tests rows with invalid samples
+     */
+    @Test
+    public void testInvalidRows() throws IOException {
+        int[] row = new int[3];
+
+        PpmReader in = reader("P3 1 2 255 1 2 3 4");
+        assertTrue(in.readHeader(), "Header");
+        assertTrue(in.readRow(row), "First row");
+        assertFalse(in.readRow(row), "Tests too few values");
+
+        in = reader("P3 1 1 255 1 x 3");
+        assertTrue(in.readHeader(), "Header");
+        assertFalse(in.readRow(row), "Tests non-integer value");
+
+        in = reader("P3 1 1 255 1 -2 3");
+        assertTrue(in.readHeader(), "Header");
+        assertFalse(in.readRow(row), "Tests negative value");
+
+        in = reader("P3 1 1 255 1 256 3");
+        assertTrue(in.readHeader(), "Header");
+        assertFalse(in.readRow(row), "Tests value above max color value");
+    }
+
+    /**
+     * Tests reading binary P6 rows from a stream
+     */
+    @Test
+    public void testBinaryStream() throws IOException {
+        byte[] header = "P6\n1 2\n255\n".getBytes();
+        byte[] contents = new byte[header.length + 6];
+        System.arraycopy(header, 0, contents, 0, header.length);
+        byte[] samples = {(byte) 255, 0, 10, 32, (byte) 128, 9};
+        System.arraycopy(samples, 0, contents, header.length, samples.length);
+
+        PpmReader in = new PpmReader(new ByteArrayInputStream(contents));
+        assertTrue(in.readHeader(), "Tests correct P6 header");
+        assertTrue(in.isBinary(), "P6 is binary");
+        int[] row = new int[in.getRowLength()];
+        assertTrue(in.readRow(row), "First row");
+        assertArrayEquals(new int[] {255, 0, 10}, row, "First row values");
+        assertTrue(in.readRow(row), "Second row");
+        assertArrayEquals(new int[] {32, 128, 9}, row, "Second row values");
+        assertFalse(in.readRow(row), "Tests too few bytes");
+    }
+
+    /**
+     * Tests reading rows into chars for max color values other than 255
+     */
+    @Test
+    public void testWideRows() throws IOException {
+        PpmReader in = reader("P3 2 1 1000 0 999 1000 3 4 5");
+        assertTrue(in.readHeader(), "Header with max 1000");
+        assertTrue(in.isWide(), "Max 1000 is wide");
+        assertEquals(2, in.getSampleBytes(), "Two bytes per binary sample");
+        char[] row = new char[in.getRowLength()];
+        assertTrue(in.readRow(row, 0), "P3 row");
+        assertArrayEquals(new char[] {0, 999, 1000, 3, 4, 5}, row, "P3 values");
+
+        in = reader("P3 1 1 1000 1 1001 3");
+        assertTrue(in.readHeader(), "Header");
+        assertFalse(in.readRow(row, 0), "Tests value above max color value");
+
+        byte[] header = "P6 1 2 65535\n".getBytes();
+        byte[] contents = new byte[header.length + 12];
+        System.arraycopy(header, 0, contents, 0, header.length);
+        byte[] samples = {0, 1, 1, 0, (byte) 255, (byte) 255, 18, 52, 0, 0, (byte) 128, 0};
+        System.arraycopy(samples, 0, contents, header.length, samples.length);
+        in = new PpmReader(new ByteArrayInputStream(contents));
+        assertTrue(in.readHeader(), "16-bit P6 header");
+        assertTrue(in.readRow(row, 0), "First 16-bit row");
+        assertArrayEquals(new char[] {1, 256, 65535}, java.util.Arrays.copyOf(row, 3),
+                          "Big-endian samples");
+        assertTrue(in.readRow(row, 0), "Second 16-bit row");
+        assertArrayEquals(new char[] {0x1234, 0, 0x8000}, java.util.Arrays.copyOf(row, 3),
+                          "Big-endian samples");
+        assertFalse(in.readRow(row, 0), "Tests too few bytes");
+
+        in = new PpmReader(new ByteArrayInputStream(new byte[] {'P', '6', ' ', '1', ' ', '1',
+            ' ', '1', '0', '0', '\n', 100, 0, 101}));
+        assertTrue(in.readHeader(), "8-bit P6 header with max 100");
+        assertEquals(1, in.getSampleBytes(), "One byte per binary sample");
+        assertFalse(in.readRow(row, 0), "Tests byte above max color value");
+
+        PpmReader wide = reader("P3 1 1 1000 1 2 3");
+        assertTrue(wide.readHeader(), "Header");
+        Exception exception = assertThrows(IllegalStateException.class,
+            () -> wide.readRow(new byte[3], 0), "Byte row at max 1000");
+        assertEquals("Max color value is not 255", exception.getMessage(),
+                     "Byte row at max 1000 - exception message");
+    }
+
+    /**
+     * Tests reading a whole image into a packed buffer
+     */
+    @Test
+    public void testReadImage() throws IOException {
+        PpmReader in = reader("P3 2 1 255 1 2 3 250 251 252");
+        assertTrue(in.readHeader(), "Header");
+        PixelBuffer image = in.readImage();
+        assertArrayEquals(new int[][] {{1, 2, 3, 250, 251, 252}}, image.toArray(), "Image");
+
+        in = reader("P3 2 1 255 1 2 3 250 251");
+        assertTrue(in.readHeader(), "Header");
+        assertNull(in.readImage(), "Tests too few values");
+
+        in = reader("P3 2 1 255 1 2 3 250 251 252");
+        assertTrue(in.readHeader(), "Header");
+        image = in.readImage(4);
+        assertArrayEquals(new int[][] {{1, 2, 3, 250, 251, 252}}, image.toArray(),
+                          "Tests several threads over a stream");
+
+        PpmReader zero = reader("P3 2 1 255 1 2 3 250 251 252");
+        assertTrue(zero.readHeader(), "Header");
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> zero.readImage(0), "readImage(0)");
+        assertEquals("Invalid thread count", exception.getMessage(),
+                     "Testing readImage(0) - exception message");
+    }
+
+    /**
+     * Tests creating a reader with null
+     */
+    @Test
+    public void testNull() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> new PpmReader((java.io.InputStream) null), "new PpmReader(null)");
+        assertEquals("Null file", exception.getMessage(),
+                     "Testing new PpmReader(null) - exception message");
+    }
+}
@@ -0,0 +1,199 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test PpmWriter methods
+ *
+ * @author Amelia Saldino
+ */
+public class PpmWriterTest {
+
+    /** Temporary file written by the tests */
+    private static final String FILENAME = "test-files/obscureWriterFilename.ppm";
+
+    /**
+     * Tests writing P3 text
+     */
+    @Test
+    public void testTextRows() throws IOException {
+        StringWriter text = new StringWriter();
+        PpmWriter out = new PpmWriter(new PrintWriter(text), 2, 1);
+        out.writeRow(new int[] {1, 22, 255, 0, 100, 7});
+        out.close();
+        assertEquals("P3\n2 1\n255\n1 22 255 0 100 7\n", text.toString(), "P3 output");
+    }
+
+    /**
+     * Tests writing a P6 file and reading it back
+     */
+    @Test
+    public void testBinaryFile() throws IOException {
+        try {
+            PpmWriter out = PpmWriter.open(FILENAME, "P6", 1, 2);
+            out.writeRow(new int[] {255, 0, 10});
+            out.writeRow(new int[] {32, 128, 9});
+            out.close();
+
+            byte[] header = "P6\n1 2\n255\n".getBytes();
+            byte[] contents = Files.readAllBytes(Paths.get(FILENAME));
+            assertEquals(header.length + 6, contents.length, "P6 file length");
+
+            PpmReader in = PpmReader.open(FILENAME);
+            assertTrue(in.readHeader(), "P6 header");
+            int[] row = new int[in.getRowLength()];
+            assertTrue(in.readRow(row), "First row");
+            assertArrayEquals(new int[] {255, 0, 10}, row, "First row values");
+            assertTrue(in.readRow(row), "Second row");
+            assertArrayEquals(new int[] {32, 128, 9}, row, "Second row values");
+            in.close();
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(FILENAME));
+        }
+    }
+
+    /**
+     * Tests that the buffered P3 writer matches outputPPM byte for byte
+     */
+    @Test
+    public void testTextMatchesOutputPPM() throws IOException {
+        int[][] pixels = new int[40][300];
+        for (int i = 0; i < pixels.length; i++) {
+            for (int j = 0; j < pixels[i].length; j++) {
+                pixels[i][j] = (i * 7 + j * 13) % 256;
+            }
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        PrintWriter print = new PrintWriter(expected);
+        ImageEditor.outputPPM(print, pixels);
+        print.close();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        PpmWriter out = new PpmWriter(Channels.newChannel(actual), "P3", 100, 40);
+        out.writeImage(PixelBuffer.fromArray(pixels));
+        out.close();
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray(), "Identical bytes");
+    }
+
+    /**
+     * Tests writing P6 to a channel that is not a file
+     */
+    @Test
+    public void testBinaryStream() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PpmWriter out = new PpmWriter(Channels.newChannel(bytes), "P6", 2, 1);
+        out.writeRow(new int[] {1, 2, 3, 255, 128, 0});
+        out.close();
+        byte[] header = "P6\n2 1\n255\n".getBytes();
+        byte[] contents = bytes.toByteArray();
+        assertEquals(header.length + 6, contents.length, "P6 length");
+        assertEquals((byte) 255, contents[header.length + 3], "Raw sample");
+    }
+
+    /**
+     * Tests opening a writer with an invalid format
+     */
+    @Test
+    public void testInvalidFormat() {
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> PpmWriter.open(FILENAME, "P1", 1, 1), "PpmWriter.open(P1)");
+        assertEquals("Invalid format", exception.getMessage(),
+                     "Testing PpmWriter.open(P1) - exception message");
+    }
+
+    /**
+     * Tests writing greyscale PGM with one sample per pixel
+     */
+    @Test
+    public void testGreyFormats() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PpmWriter out = new PpmWriter(Channels.newChannel(bytes), "P5", 2, 1);
+        out.writeRow(new int[] {7, 7, 7, 200, 200, 200});
+        out.close();
+        assertArrayEquals(new byte[] {'P', '5', '\n', '2', ' ', '1', '\n', '2', '5', '5', '\n',
+                                      7, (byte) 200}, bytes.toByteArray(), "P5");
+
+        bytes = new ByteArrayOutputStream();
+        out = new PpmWriter(Channels.newChannel(bytes), "P2", 2, 1);
+        out.writeRow(new int[] {7, 7, 7, 200, 200, 200});
+        out.close();
+        String nl = System.lineSeparator();
+        assertEquals("P2" + nl + "2 1" + nl + "255\n7 200" + nl, bytes.toString(), "P2");
+    }
+
+    /**
+     * Tests writing char rows for max color values other than 255,
+     * in every format and back through the reader
+     */
+    @Test
+    public void testWideRows() throws IOException {
+        char[] row = {0, 300, 65535, 4095, 4095, 4095};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PpmWriter out = new PpmWriter(Channels.newChannel(bytes), "P6", 2, 1, 65535);
+        assertEquals(2, out.getSampleBytes(), "Two bytes per sample");
+        out.writeRow(row, 0);
+        out.close();
+        assertArrayEquals(new byte[] {'P', '6', '\n', '2', ' ', '1', '\n', '6', '5', '5', '3', '5',
+                                      '\n', 0, 0, 1, 44, (byte) 255, (byte) 255, 15, (byte) 255,
+                                      15, (byte) 255, 15, (byte) 255}, bytes.toByteArray(),
+                          "Big-endian P6");
+
+        bytes = new ByteArrayOutputStream();
+        out = new PpmWriter(Channels.newChannel(bytes), "P5", 2, 1, 65535);
+        out.writeRow(row, 0);
+        out.close();
+        byte[] contents = bytes.toByteArray();
+        assertArrayEquals(new byte[] {0, 0, 15, (byte) 255},
+                          java.util.Arrays.copyOfRange(contents, contents.length - 4,
+                                                       contents.length), "P5 keeps red");
+
+        bytes = new ByteArrayOutputStream();
+        out = new PpmWriter(Channels.newChannel(bytes), "P3", 2, 1, 65535);
+        out.writeRow(row, 0);
+        out.close();
+        String nl = System.lineSeparator();
+        assertEquals("P3" + nl + "2 1" + nl + "65535\n0 300 65535 4095 4095 4095" + nl,
+                     bytes.toString(), "P3");
+
+        bytes = new ByteArrayOutputStream();
+        out = new PpmWriter(Channels.newChannel(bytes), "P6", 2, 1, 100);
+        assertEquals(1, out.getSampleBytes(), "One byte per sample");
+        out.writeRow(new char[] {0, 50, 100, 1, 2, 3}, 0);
+        out.close();
+        assertEquals("P6\n2 1\n100\n".length() + 6, bytes.size(), "One byte per sample");
+
+        try {
+            out = PpmWriter.open(FILENAME, "P6", 2, 1, 65535);
+            out.writeRow(row, 0);
+            out.close();
+            PpmReader in = PpmReader.open(FILENAME);
+            assertTrue(in.readHeader(), "16-bit header");
+            assertTrue(in.isWide(), "Read into chars");
+            char[] read = new char[in.getRowLength()];
+            assertTrue(in.readRow(read, 0), "Mapped 16-bit row");
+            assertArrayEquals(row, read, "Round trip");
+            in.close();
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(FILENAME));
+        }
+
+        PpmWriter wide = new PpmWriter(Channels.newChannel(new ByteArrayOutputStream()), "P6",
+                                       1, 1, 1000);
+        Exception exception = assertThrows(IllegalStateException.class,
+            () -> wide.writeRow(new byte[3], 0), "Byte row at max 1000");
+        assertEquals("Max color value is not 255", exception.getMessage(),
+                     "Byte row at max 1000 - exception message");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> PpmWriter.open(FILENAME, "P6", 1, 1, 65536), "Max 65536");
+        assertEquals("Invalid max color value", exception.getMessage(),
+                     "Max 65536 - exception message");
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Program to test Region methods
+ *
+ * @author Amelia Saldino
+ */
+public class RegionTest {
+
+    /** Width of the test image */
+    private static final int WIDTH = 23;
+
+    /** Height of the test image */
+    private static final int HEIGHT = 17;
+
+    /** Directory for test files */
+    @TempDir
+    Path dir;
+
+    /**
+     * Creates a test image
+     * @return image with varied samples
+     */
+    private static PixelBuffer image() {
+        PixelBuffer image = new PixelBuffer(WIDTH, HEIGHT);
+        byte[] data = image.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 37 + i / 11);
+        }
+        return image;
+    }
+
+    /**
+     * Filters the whole image and keeps the result only inside a rectangle
+     * @param chain the transformations
+     * @param x column of the left edge
+     * @param y row of the top edge
+     * @param w number of pixel columns
+     * @param h number of pixel rows
+     * @return expected image
+     */
+    private static PixelBuffer expected(FilterChain chain, int x, int y, int w, int h) {
+        PixelBuffer original = image();
+        PixelBuffer filtered = image();
+        chain.apply(filtered, 0, HEIGHT);
+        for (int i = y; i < y + h; i++) {
+            System.arraycopy(filtered.getData(), filtered.getOffset(i) + x * 3,
+                             original.getData(), original.getOffset(i) + x * 3, w * 3);
+        }
+        return original;
+    }
+
+    /**
+     * Tests that a region matches filtering the whole image, for per-pixel
+     * and neighborhood filters, at edges and in the middle
+     */
+    @Test
+    public void testMatchesWholeImage() {
+        int[][] rectangles = {{0, 0, WIDTH, HEIGHT}, {0, 0, 3, 2}, {5, 4, 7, 6},
+                              {WIDTH - 1, HEIGHT - 1, 1, 1}, {1, 10, WIDTH - 2, 7}};
+        for (List<String> flags : List.of(List.of("-I"), List.of("-blur", "-H"),
+                                          List.of("-gauss", "-I", "-edge"))) {
+            FilterChain chain = FilterChain.compile(flags, null);
+            for (int[] r : rectangles) {
+                PixelBuffer image = image();
+                new Region(r[0], r[1], r[2], r[3]).apply(image, chain);
+                assertArrayEquals(expected(chain, r[0], r[1], r[2], r[3]).getData(),
+                                  image.getData(),
+                                  flags + " over " + List.of(r[0], r[1], r[2], r[3]));
+            }
+        }
+    }
+
+    /**
+     * Tests patching a P6 file in place against filtering in memory
+     * @throws IOException if the file can not be read or written
+     */
+    @Test
+    public void testPatch() throws IOException {
+        byte[] header = ("P6\n" + WIDTH + " " + HEIGHT + "\n255\n").getBytes();
+        PixelBuffer image = image();
+        byte[] contents = new byte[header.length + image.getData().length];
+        System.arraycopy(header, 0, contents, 0, header.length);
+        System.arraycopy(image.getData(), 0, contents, header.length, image.getData().length);
+        Path file = dir.resolve("patch.ppm");
+        Files.write(file, contents);
+
+        FilterChain chain = FilterChain.compile(List.of("-sharpen", "-G"), null);
+        Region region = new Region(4, 3, 9, 5);
+        Stats stats = new Stats();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            assertTrue(region.patch(channel, header.length, WIDTH, HEIGHT, chain, stats),
+                       "Patched");
+        }
+        region.apply(image, chain);
+        byte[] patched = Files.readAllBytes(file);
+        assertEquals(contents.length, patched.length, "Same length");
+        assertArrayEquals(image.getData(), java.util.Arrays.copyOfRange(patched, header.length,
+                          patched.length), "Matches in memory");
+        assertEquals(9 * 5 * 3, stats.getBytes(Stats.WRITE), "Only the region is written");
+
+        Files.write(file, java.util.Arrays.copyOf(contents, contents.length - 1));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            assertFalse(region.patch(channel, header.length, WIDTH, HEIGHT, chain, new Stats()),
+                        "Tests file too short");
+        }
+    }
+
+    /**
+     * Tests parsing and checking regions
+     */
+    @Test
+    public void testParse() {
+        assertEquals("1,2,3,4", Region.parse("1,2,3,4").toString(), "Region");
+        assertNull(Region.parse("1,2,3"), "Three numbers");
+        assertNull(Region.parse("1,2,0,4"), "Zero width");
+        assertNull(Region.parse(null), "Null");
+        assertTrue(new Region(1, 2, 3, 4).fits(4, 6), "Fits exactly");
+        assertFalse(new Region(1, 2, 3, 4).fits(3, 6), "Too wide");
+        assertFalse(new Region(1, 2, 3, 4).fits(4, 5), "Too tall");
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> new Region(0, 0, 30, 1).apply(image(), FilterChain.compile(List.of("-I"), null)),
+            "Region outside image");
+        assertEquals("Invalid region", exception.getMessage(),
+                     "Region outside image - exception message");
+    }
+}
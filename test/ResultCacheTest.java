@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test ResultCache methods
+ *
+ * @author Amelia Saldino
+ */
+public class ResultCacheTest {
+
+    /** Temporary directory written by the tests */
+    private static final String DIR = "test-files/obscureCacheDir";
+
+    /** Cache directory inside DIR */
+    private static final String CACHE = DIR + "/cache";
+
+    /**
+     * Deletes the temporary directory
+     * @throws IOException if a file can not be deleted
+     */
+    private static void cleanUp() throws IOException {
+        Path dir = Paths.get(DIR);
+        if (Files.exists(dir)) {
+            List<Path> paths = new ArrayList<>();
+            try (java.util.stream.Stream<Path> walk = Files.walk(dir)) {
+                walk.forEach(paths::add);
+            }
+            Collections.reverse(paths);
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Tests that keys depend on the input bytes and the operations
+     */
+    @Test
+    public void testKey() throws IOException {
+        String key = ResultCache.key("test-files/test1.ppm", List.of("-I"), null);
+        assertEquals(64, key.length(), "SHA-256 in hex");
+        assertEquals(key, ResultCache.key("test-files/test1.ppm", List.of("-I"), null),
+                     "Same input and operations");
+        assertNotEquals(key, ResultCache.key("test-files/test2.ppm", List.of("-I"), null),
+                        "Different input");
+        assertNotEquals(key, ResultCache.key("test-files/test1.ppm", List.of("-I", "-G"), null),
+                        "Different operations");
+        assertNotEquals(key, ResultCache.key("test-files/test1.ppm", List.of("-I"), "P6"),
+                        "Different format");
+    }
+
+    /**
+     * Returns the remembered hashes in the cache directory
+     * @return paths of the .sum files
+     * @throws IOException if the directory can not be listed
+     */
+    private static List<Path> sums() throws IOException {
+        List<Path> sums = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(CACHE), "*.sum")) {
+            stream.forEach(sums::add);
+        }
+        return sums;
+    }
+
+    /**
+     * Tests that an input is hashed once, and again only when its stamp
+     * changes or the remembered hash was taken too soon after it was written
+     */
+    @Test
+    public void testKeyFor() throws IOException {
+        try {
+            cleanUp();
+            Files.createDirectories(Paths.get(DIR));
+            Path input = Paths.get(DIR, "input.ppm");
+            Files.copy(Paths.get("test-files/test1.ppm"), input);
+            FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+            Files.setLastModifiedTime(input, old);
+            ResultCache cache = new ResultCache(CACHE, ResultCache.DEFAULT_SIZE);
+            String key = cache.keyFor(input.toString(), List.of("-I"), null);
+            assertEquals(ResultCache.key(input.toString(), List.of("-I"), null), key,
+                         "Same key as the content hash");
+
+            assertEquals(1, sums().size(), "Hash remembered");
+            Path sum = sums().get(0);
+            Files.writeString(sum, "0".repeat(64) + " " + System.currentTimeMillis());
+            assertNotEquals(key, cache.keyFor(input.toString(), List.of("-I"), null),
+                            "Remembered hash used without reading the input");
+
+            // Same size and modification time, different samples
+            byte[] contents = Files.readAllBytes(input);
+            contents[contents.length - 2] ^= 1;
+            Files.write(input, contents);
+            Files.setLastModifiedTime(input, old);
+            String changed = ResultCache.key(input.toString(), List.of("-I"), null);
+            assertNotEquals(key, changed, "Samples changed");
+            assertEquals(changed, cache.keyFor(input.toString(), List.of("-I"), null),
+                         "Rewritten with the same size and modification time");
+
+            Files.copy(Paths.get("test-files/test2.ppm"), input, StandardCopyOption.REPLACE_EXISTING);
+            String fresh = ResultCache.key(input.toString(), List.of("-I"), null);
+            assertEquals(fresh, cache.keyFor(input.toString(), List.of("-I"), null),
+                         "Changed input");
+            for (Path path : sums()) {
+                Files.writeString(path, "0".repeat(64) + " " + System.currentTimeMillis());
+            }
+            assertEquals(fresh, cache.keyFor(input.toString(), List.of("-I"), null),
+                         "Hash taken right after a write is not trusted");
+        }
+        finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests that a second run is served from the cache
+     */
+    @Test
+    public void testHit() throws IOException {
+        try {
+            cleanUp();
+            Files.createDirectories(Paths.get(DIR));
+            String[] args = {"-I", "-cache", CACHE, "test-files/test1.ppm", DIR + "/out1.ppm"};
+            assertNull(ImageEditor.process(Options.parse(args), false), "Miss");
+            String key = ResultCache.key("test-files/test1.ppm", List.of("-I"), null);
+            assertTrue(Files.exists(Paths.get(CACHE, key + ".ppm")), "Stored");
+
+            ResultCache cache = new ResultCache(CACHE, ResultCache.DEFAULT_SIZE);
+            assertTrue(cache.fetch(key, DIR + "/out2.ppm"), "Hit");
+            assertArrayEquals(Files.readAllBytes(Paths.get("test-files/exp_test1Inverted.ppm")),
+                              Files.readAllBytes(Paths.get(DIR, "out2.ppm")), "Cached output");
+            assertFalse(cache.fetch(ResultCache.key("test-files/test2.ppm", List.of("-I"), null),
+                                    DIR + "/out3.ppm"), "Miss");
+            assertFalse(Files.exists(Paths.get(DIR, "out3.ppm")), "Nothing written on a miss");
+        }
+        finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests that the least recently used entries are evicted over the size cap
+     */
+    @Test
+    public void testEviction() throws IOException {
+        try {
+            cleanUp();
+            Files.createDirectories(Paths.get(DIR));
+            Path file = Paths.get(DIR, "file.ppm");
+            Files.write(file, new byte[100]);
+            ResultCache cache = new ResultCache(CACHE, 250);
+            cache.store("a", file.toString());
+            cache.store("b", file.toString());
+            Files.setLastModifiedTime(Paths.get(CACHE, "a.ppm"), FileTime.fromMillis(1000));
+            Files.setLastModifiedTime(Paths.get(CACHE, "b.ppm"), FileTime.fromMillis(2000));
+            assertTrue(cache.fetch("a", DIR + "/copy.ppm"), "Use a");
+            cache.store("c", file.toString());
+            assertTrue(Files.exists(Paths.get(CACHE, "a.ppm")), "Recently used kept");
+            assertFalse(Files.exists(Paths.get(CACHE, "b.ppm")), "Least recently used evicted");
+            assertTrue(Files.exists(Paths.get(CACHE, "c.ppm")), "New entry kept");
+        }
+        finally {
+            cleanUp();
+        }
+    }
+
+    /**
+     * Tests that eviction deletes temporary files left by a crashed write
+     * and keeps those that may still be written
+     */
+    @Test
+    public void testStaleTemp() throws IOException {
+        try {
+            cleanUp();
+            Files.createDirectories(Paths.get(DIR));
+            Path file = Paths.get(DIR, "file.ppm");
+            Files.write(file, new byte[100]);
+            ResultCache cache = new ResultCache(CACHE, 250);
+            Path stale = Paths.get(CACHE, "stale.tmp");
+            Path fresh = Paths.get(CACHE, "fresh.tmp");
+            Files.write(stale, new byte[100]);
+            Files.write(fresh, new byte[100]);
+            Files.setLastModifiedTime(stale, FileTime.fromMillis(1000));
+            cache.store("a", file.toString());
+            assertFalse(Files.exists(stale), "Stale temporary file deleted");
+            assertTrue(Files.exists(fresh), "Fresh temporary file kept");
+            Files.setLastModifiedTime(Paths.get(CACHE, "a.ppm"), FileTime.fromMillis(2000));
+            cache.store("b", file.toString());
+            assertFalse(Files.exists(Paths.get(CACHE, "a.ppm")), "Fresh temporary file counted");
+            assertTrue(Files.exists(Paths.get(CACHE, "b.ppm")), "New entry kept");
+        }
+        finally {
+            cleanUp();
+        }
+    }
+}
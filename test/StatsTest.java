@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test Stats methods
+ *
+ * @author Amelia Saldino
+ */
+public class StatsTest {
+
+    /** Output file written by the tests */
+    private static final String OUTFILE = "test-files/obscureStatsOutput.ppm";
+
+    /**
+     * Runs a transformation and returns its measurements
+     * @param args command line
+     * @return the filled stats
+     */
+    private static Stats measure(String... args) throws IOException {
+        Stats stats = new Stats();
+        try {
+            assertNull(ImageEditor.process(Options.parse(args), false, stats), "Transformed");
+        }
+        finally {
+            Files.deleteIfExists(Paths.get(OUTFILE));
+        }
+        return stats;
+    }
+
+    /**
+     * Tests that each stage counts every pixel, in every processing mode
+     */
+    @Test
+    public void testStages() throws IOException {
+        String[][] modes = {{"-threads", "1"}, {"-threads", "2"}, {"-tiled", "-budget", "1k"},
+                            {"-pipelined", "-threads", "2"}};
+        for (String[] mode : modes) {
+            String[] args = new String[mode.length + 3];
+            args[0] = "-G";
+            System.arraycopy(mode, 0, args, 1, mode.length);
+            args[args.length - 2] = "test-files/ColorfulCSC116.ppm";
+            args[args.length - 1] = OUTFILE;
+            Stats stats = measure(args);
+            String label = String.join(" ", mode);
+            assertTrue(stats.getBytes(Stats.HEADER) > 0, "Header bytes " + label);
+            for (int stage : new int[] {Stats.READ, Stats.FILTER, Stats.WRITE}) {
+                assertEquals(57L * 17, stats.getPixels(stage), "Pixels " + label);
+                assertTrue(stats.getBytes(stage) > 0, "Bytes " + label);
+                assertTrue(stats.getNanos(stage) > 0, "Time " + label);
+            }
+            assertEquals(57L * 17 * 3, stats.getBytes(Stats.FILTER), "Samples " + label);
+        }
+    }
+
+    /**
+     * Tests the report and invalid stages
+     */
+    @Test
+    public void testReport() {
+        Stats stats = new Stats();
+        stats.begin();
+        stats.end(Stats.FILTER, 300, 100);
+        assertEquals(100, stats.getPixels(Stats.FILTER), "Pixels");
+        assertEquals(5, stats.toString().split(System.lineSeparator()).length,
+                     "Heading and one line per stage");
+        assertTrue(stats.toString().contains("filter"), "Stage name");
+        stats.begin();
+        assertThrows(IllegalArgumentException.class, () -> stats.end(4, 0, 0), "Invalid stage");
+    }
+
+    /**
+     * Tests adding the measurements of another thread
+     */
+    @Test
+    public void testAdd() {
+        Stats stats = new Stats();
+        Stats worker = new Stats();
+        stats.begin();
+        stats.end(Stats.READ, 30, 10);
+        worker.begin();
+        worker.end(Stats.READ, 60, 20);
+        stats.add(worker);
+        assertEquals(90, stats.getBytes(Stats.READ), "Bytes");
+        assertEquals(30, stats.getPixels(Stats.READ), "Pixels");
+        assertThrows(IllegalArgumentException.class, () -> stats.add(null), "Null stats");
+    }
+
+    /**
+     * Tests that a Stats that is not measuring keeps no figures but still
+     * checks the stage and keeps the plan
+     */
+    @Test
+    public void testNotMeasuring() {
+        Stats stats = new Stats(false);
+        assertFalse(stats.isMeasuring(), "Not measuring");
+        assertTrue(new Stats().isMeasuring(), "Measuring by default");
+        stats.begin();
+        stats.end(Stats.READ, 30, 10);
+        assertEquals(0, stats.getBytes(Stats.READ), "Bytes");
+        assertEquals(0, stats.getNanos(Stats.READ), "Time");
+        stats.begin();
+        assertThrows(IllegalArgumentException.class, () -> stats.end(4, 0, 0), "Invalid stage");
+        Options options = Options.parse(new String[] {"-I", "-dryrun", "test-files/test1.ppm",
+                                                      OUTFILE});
+        assertNull(ImageEditor.process(options, false, stats), "Dry run");
+        assertNotNull(stats.getPlan(), "Plan kept");
+    }
+}
@@ -0,0 +1,22 @@
+/**
+ * Images shared by the filter tests
+ *
+ * @author Amelia Saldino
+ */
+class TestImages {
+
+    /**
+     * Creates an image with a repeatable pattern of samples
+     * @param width number of pixel columns
+     * @param height number of pixel rows
+     * @return the image
+     */
+    static PixelBuffer pattern(int width, int height) {
+        PixelBuffer image = new PixelBuffer(width, height);
+        byte[] data = image.getData();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + i / 7);
+        }
+        return image;
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test TiledProcessor methods
+ *
+ * @author Amelia Saldino
+ */
+public class TiledProcessorTest {
+
+    /** Width of the test image */
+    private static final int WIDTH = 5;
+
+    /** Height of the test image */
+    private static final int HEIGHT = 7;
+
+    /**
+     * Creates a P6 test image
+     * @return contents of the file
+     */
+    private static byte[] image() {
+        byte[] header = ("P6\n" + WIDTH + " " + HEIGHT + "\n255\n").getBytes();
+        byte[] contents = new byte[header.length + WIDTH * HEIGHT * 3];
+        System.arraycopy(header, 0, contents, 0, header.length);
+        for (int i = header.length; i < contents.length; i++) {
+            contents[i] = (byte) (i * 37);
+        }
+        return contents;
+    }
+
+    /**
+     * Runs the tiled processor over the test image
+     * @param filter filter to apply
+     * @param budget tile budget in bytes
+     * @return the written P6 file
+     * @throws IOException if the image can not be processed
+     */
+    private static byte[] tiled(BandFilter filter, long budget) throws IOException {
+        PpmReader in = new PpmReader(new ByteArrayInputStream(image()));
+        assertTrue(in.readHeader(), "Header");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PpmWriter out = new PpmWriter(Channels.newChannel(bytes), "P6", WIDTH, HEIGHT);
+        assertTrue(TiledProcessor.process(in, out, filter, budget), "Valid image");
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Tests that small tiles give the same result as one tile
+     */
+    @Test
+    public void testMatchesWholeImage() throws IOException {
+        BandFilter invert = BandFilter.pointwise(Pipeline.compile("-I"));
+        byte[] expected = tiled(invert, 1L << 20);
+        assertArrayEquals(expected, tiled(invert, 1), "Budget below one row");
+        assertArrayEquals(expected, tiled(invert, 2 * WIDTH * 3), "Two rows per tile");
+        byte[] original = image();
+        assertEquals((byte) ~original[original.length - 1], expected[expected.length - 1],
+                     "Inverted");
+    }
+
+    /**
+     * Tests that tiles hold the context rows a filter asks for
+     */
+    @Test
+    public void testHalo() throws IOException {
+        BandFilter sumAbove = new BandFilter() {
+            @Override
+            public int getHalo() {
+                return 1;
+            }
+
+            @Override
+            public void apply(PixelBuffer band, int fromRow, int toRow) {
+                byte[] data = band.getData();
+                byte[] copy = data.clone();
+                for (int row = fromRow; row < toRow; row++) {
+                    int above = Math.max(0, row - 1);
+                    for (int j = 0; j < band.getRowLength(); j++) {
+                        data[band.getOffset(row) + j] = (byte) (copy[band.getOffset(row) + j]
+                            + copy[band.getOffset(above) + j]);
+                    }
+                }
+            }
+        };
+        assertArrayEquals(tiled(sumAbove, 1L << 20), tiled(sumAbove, 3 * WIDTH * 3),
+                          "Context rows from the previous tile");
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test VectorKernels methods
+ *
+ * @author Amelia Saldino
+ */
+public class VectorKernelsTest {
+
+    /**
+     * Creates every sample value in turn, followed by random samples
+     * @param length number of samples
+     * @return the samples
+     */
+    private static byte[] samples(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        for (int i = 0; i < Math.min(length, 256); i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    /**
+     * Tests that the vector kernels are in use when the module is present
+     */
+    @Test
+    public void testSimd() {
+        assertTrue(ImageEditor.isSimd(), "Vector kernels");
+    }
+
+    /**
+     * Tests invert against the scalar formula, for ranges that do not
+     * start or end on a vector boundary
+     */
+    @Test
+    public void testInvert() {
+        for (int length : new int[] {0, 1, 31, 256, 1000, 4099}) {
+            byte[] data = samples(length + 5);
+            byte[] expected = data.clone();
+            for (int i = 5; i < expected.length; i++) {
+                expected[i] = (byte) (255 - (expected[i] & 0xFF));
+            }
+            int end = VectorKernels.invert(data, 5, data.length);
+            assertTrue(end >= 5 && end <= data.length, "Scalar tail start");
+            ImageEditor.invert(data, end, data.length);
+            assertArrayEquals(expected, data, "Invert " + length);
+        }
+    }
+
+    /**
+     * Tests highContrast against the scalar formula, for ranges that do not
+     * start or end on a vector boundary
+     */
+    @Test
+    public void testHighContrast() {
+        for (int length : new int[] {0, 1, 31, 256, 1000, 4099}) {
+            byte[] data = samples(length + 5);
+            byte[] expected = data.clone();
+            for (int i = 5; i < expected.length; i++) {
+                expected[i] = (byte) ((expected[i] & 0xFF) >= 128 ? 255 : 0);
+            }
+            int end = VectorKernels.highContrast(data, 5, data.length);
+            assertTrue(end >= 5 && end <= data.length, "Scalar tail start");
+            ImageEditor.highContrast(data, end, data.length);
+            assertArrayEquals(expected, data, "High contrast " + length);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Program to test WidePipeline methods
+ *
+ * @author Amelia Saldino
+ */
+public class WidePipelineTest {
+
+    /**
+     * Applies a compiled pipeline to a copy of some samples
+     * @param samples samples to transform
+     * @param maxColorValue largest sample value
+     * @param luma luma weights, null for an average
+     * @param flags transformations in order
+     * @return transformed copy
+     */
+    private static char[] apply(char[] samples, int maxColorValue, String luma,
+                                String... flags) {
+        char[] copy = samples.clone();
+        WidePipeline.compile(List.of(flags), luma, maxColorValue).apply(copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Tests invert, high contrast and greyscale scaled to the max color value
+     */
+    @Test
+    public void testScaledToMax() {
+        char[] samples = {0, 32767, 32768, 65535, 1000, 2000};
+        assertArrayEquals(new char[] {65535, 32768, 32767, 0, 64535, 63535},
+                          apply(samples, 65535, null, "-I"), "Invert at 65535");
+        assertArrayEquals(new char[] {0, 0, 65535, 65535, 0, 0},
+                          apply(samples, 65535, null, "-H"), "High contrast at 65535");
+        assertArrayEquals(new char[] {21845, 21845, 21845, 22845, 22845, 22845},
+                          apply(samples, 65535, null, "-G"), "Greyscale at 65535");
+        assertArrayEquals(new char[] {65535, 65535, 65535},
+                          apply(new char[] {65535, 65535, 65535}, 65535, "601", "-G"),
+                          "Luma of white stays white");
+
+        char[] small = {0, 49, 50, 100, 7, 99};
+        assertArrayEquals(new char[] {100, 51, 50, 0, 93, 1}, apply(small, 100, null, "-I"),
+                          "Invert at 100");
+        assertArrayEquals(new char[] {0, 0, 100, 100, 0, 100}, apply(small, 100, null, "-H"),
+                          "High contrast at 100");
+    }
+
+    /**
+     * Tests that sequences at max 255 match the byte pipeline on every value
+     */
+    @Test
+    public void testMatchesBytePipeline() {
+        char[] samples = new char[256 * 3];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (char) (i * 7 % 256);
+        }
+        String[][] sequences = {{"-I"}, {"-H"}, {"-G"}, {"-I", "-G", "-H"}, {"-G", "-I"}};
+        for (String luma : new String[] {null, "709"}) {
+            for (String[] flags : sequences) {
+                byte[] bytes = new byte[samples.length];
+                for (int i = 0; i < samples.length; i++) {
+                    bytes[i] = (byte) samples[i];
+                }
+                Pipeline.compile(List.of(flags), luma).apply(bytes, 0, bytes.length);
+                char[] wide = apply(samples, 255, luma, flags);
+                for (int i = 0; i < bytes.length; i++) {
+                    assertEquals(bytes[i] & 0xFF, wide[i],
+                                 String.join(" ", flags) + " at sample " + i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests invalid arguments
+     */
+    @Test
+    public void testInvalid() {
+        assertTrue(WidePipeline.compile(List.of("-I", "-I"), null, 1000).isIdentity(),
+                   "Double invert");
+        Exception exception = assertThrows(IllegalArgumentException.class,
+            () -> WidePipeline.compile(List.of("-I"), null, 0), "Max 0");
+        assertEquals("Invalid max color value", exception.getMessage(),
+                     "Max 0 - exception message");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> WidePipeline.compile(List.of("-blur"), null, 1000), "-blur");
+        assertEquals("Invalid flag", exception.getMessage(), "-blur - exception message");
+        exception = assertThrows(IllegalArgumentException.class,
+            () -> WidePipeline.compile(null, null, 1000), "Null flags");
+        assertEquals("Null flag", exception.getMessage(), "Null flags - exception message");
+    }
+}